@@ -0,0 +1,86 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.*;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Channel which runs writes through its pipeline and discards them in the sink,
+ * so benchmarks measure framing and encoding without sockets.
+ * <p/>
+ * Encoded bytes reaching the sink are counted, closing the channel completes its close future
+ * as a socket channel would.
+ */
+public class BenchmarkChannel extends AbstractChannel {
+
+    private static final SocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 0);
+
+    private final ChannelConfig config = new DefaultChannelConfig();
+
+    private long writtenBytes;
+
+    public BenchmarkChannel(ChannelPipeline pipeline) {
+        super(null, null, pipeline, new DiscardingSink());
+    }
+
+    public static BenchmarkChannel create(ChannelHandler... handlers) {
+        ChannelPipeline pipeline = new DefaultChannelPipeline();
+        for (int i = 0; i < handlers.length; i++) {
+            pipeline.addLast(i == handlers.length - 1 ? "handler" : "handler" + i, handlers[i]);
+        }
+        return new BenchmarkChannel(pipeline);
+    }
+
+    /**
+     * @return bytes of the channel buffers written to the sink so far
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    @Override
+    public ChannelConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public boolean isBound() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+
+    private static class DiscardingSink extends AbstractChannelSink {
+        @Override
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e)
+                throws Exception {
+            BenchmarkChannel channel = (BenchmarkChannel) e.getChannel();
+            if (e instanceof MessageEvent && ((MessageEvent) e).getMessage() instanceof ChannelBuffer) {
+                channel.writtenBytes += ((ChannelBuffer) ((MessageEvent) e).getMessage()).readableBytes();
+            } else if (e instanceof ChannelStateEvent && ((ChannelStateEvent) e).getState() == ChannelState.OPEN
+                    && Boolean.FALSE.equals(((ChannelStateEvent) e).getValue())) {
+                channel.setClosed();
+            }
+            e.getFuture().setSuccess();
+        }
+    }
+}
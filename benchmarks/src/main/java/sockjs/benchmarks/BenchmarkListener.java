@@ -0,0 +1,26 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import sockjs.Connection;
+import sockjs.ConnectionListener;
+
+/**
+ * Listener which ignores every event, benchmarks need only endpoints to be registered.
+ */
+public class BenchmarkListener implements ConnectionListener {
+
+    @Override
+    public void onOpen(Connection connection) {
+    }
+
+    @Override
+    public void onClose(Connection connection) {
+    }
+
+    @Override
+    public void onMessage(Connection connection, String message) {
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import sockjs.Connection;
+import sockjs.ConnectionListener;
+import sockjs.EndpointInfo;
+import sockjs.ListenerDispatch;
+import sockjs.SockJs;
+import sockjs.netty.SockJsHandlerContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener making a blocking call for every message: messages handled per second with callbacks
+ * run inline on the threads delivering them and with a thread per session.
+ * <p/>
+ * Delivering threads play the I/O workers. Every session has at most one message in flight
+ * and gets the next one after the previous was handled, like a client waiting for a reply.
+ * This is not a JMH benchmark because inline dispatch of one message to every session would
+ * take minutes, so both modes run for the same wall time instead.
+ * <p/>
+ * Usage: {@code java -cp target/benchmarks.jar sockjs.benchmarks.BlockingListenerBenchmark
+ * [sessions] [blockMillis] [workers] [seconds]}
+ */
+public class BlockingListenerBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int blockMillis = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        for (ListenerDispatch dispatch : new ListenerDispatch[] {ListenerDispatch.INLINE, ListenerDispatch.SESSION_THREAD}) {
+            double rate = run(dispatch, sessions, blockMillis, workers, seconds);
+            System.out.printf("%-15s sessions=%d block=%dms workers=%d: %.0f msg/s%n",
+                    dispatch, sessions, blockMillis, workers, rate);
+        }
+    }
+
+    private static double run(ListenerDispatch dispatch, final int sessions, final int blockMillis, int workers,
+                              int seconds) throws InterruptedException {
+        final SockJs sockJs = new SockJs();
+        EndpointInfo info = new EndpointInfo();
+        info.setListenerDispatch(dispatch);
+        info.setMaxSessionThreads(4096);
+        sockJs.setEndpointInfo("/bench", info);
+
+        final AtomicIntegerArray inFlight = new AtomicIntegerArray(sessions);
+        final AtomicLong handled = new AtomicLong();
+        sockJs.addListener("/bench", new BenchmarkListener() {
+            @Override
+            public void onMessage(Connection connection, String message) {
+                try {
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.incrementAndGet();
+                inFlight.set(Integer.parseInt(connection.getSessionId()), 0);
+            }
+        });
+
+        final Connection[] connections = new Connection[sessions];
+        for (int i = 0; i < sessions; i++) {
+            SockJsHandlerContext context = new SockJsHandlerContext();
+            context.setBaseUrl("/bench");
+            context.setSessionId(String.valueOf(i));
+            connections[i] = sockJs.createConnection(context);
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] threads = new Thread[workers];
+        for (int w = 0; w < workers; w++) {
+            final int first = w;
+            final int step = workers;
+            threads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (System.nanoTime() < deadline) {
+                        for (int i = first; i < sessions && System.nanoTime() < deadline; i += step) {
+                            if (inFlight.compareAndSet(i, 0, 1)) {
+                                connections[i].sendToListeners("message", null);
+                            }
+                        }
+                    }
+                }
+            }, "worker-" + w);
+            threads[w].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double rate = handled.get() / (double) seconds;
+        sockJs.shutdown();
+        return rate;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import org.openjdk.jmh.annotations.*;
+import sockjs.Connection;
+import sockjs.ConnectionGroup;
+import sockjs.SockJs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One message to every subscriber: a sendToChannel call per connection versus
+ * an encode-once broadcast to the group and a publish to the topic all of them subscribed to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    private static final String MESSAGE = "{\"symbol\":\"ACME\",\"price\":101.25,\"note\":\"quoted \\\"text\\\"\"}";
+
+    private static final String TOPIC = "ticker";
+
+    @Param({"10000", "100000"})
+    public int subscribers;
+
+    @Param({"websocket", "xhr_streaming", "eventsource", "htmlfile"})
+    public String transport;
+
+    private SockJs sockJs;
+
+    private ConnectionGroup group;
+
+    private List<Connection> connections;
+
+    @Setup
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.setMaxStreamSize(Integer.MAX_VALUE);
+        group = new ConnectionGroup();
+        connections = new ArrayList<Connection>(subscribers);
+
+        ChannelHandler handler = (ChannelHandler) sockJs.getTransport(transport);
+        for (int i = 0; i < subscribers; i++) {
+            ChannelHandler encoder = transport.equals("websocket") ? new WebSocket13FrameEncoder(false)
+                                                                    : new HttpResponseEncoder();
+            Connection connection = new Connection(sockJs, "/bench", "session" + i);
+            connection.setJsonpCallback("callback");
+            connection.setChannel(BenchmarkChannel.create(encoder, handler));
+            connection.subscribe(TOPIC);
+            connections.add(connection);
+            group.add(connection);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Benchmark
+    public void sendToEachConnection() {
+        for (Connection connection : connections) {
+            connection.sendToChannel(MESSAGE);
+        }
+    }
+
+    @Benchmark
+    public void broadcast() {
+        sockJs.broadcast(group, MESSAGE);
+    }
+
+    @Benchmark
+    public int publish() {
+        return sockJs.publish(TOPIC, MESSAGE);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sockjs.transports.FrameDecoder;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client payload with a batch of messages turned into listener calls: the String and Jackson
+ * path transports used before and the streaming decoder over the received bytes, for
+ * xhr_send bodies and for JSONP form bodies which also need percent-decoding.
+ * <p/>
+ * Percent-decoding works in place, so the streaming JSONP case copies the form body into
+ * a reused buffer first, as the request decoder would have filled it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundDecodeBenchmark {
+
+    private static final String MESSAGE = "{\"symbol\":\"ACME\",\"price\":101.25,\"note\":\"caf\u00e9 \\\\ \u20ac\"}";
+
+    @Param({"1024", "65536"})
+    public int batchBytes;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private ChannelBuffer json;
+
+    private byte[] form;
+
+    private ChannelBuffer formBuffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<String> messages = new ArrayList<String>();
+        int size = 2;
+        while (size < batchBytes) {
+            messages.add(MESSAGE);
+            size += mapper.writeValueAsString(MESSAGE).length() + 1;
+        }
+        String payload = mapper.writeValueAsString(messages);
+        json = ChannelBuffers.copiedBuffer(payload, CharsetUtil.UTF_8);
+        form = ("d=" + URLEncoder.encode(payload, "UTF-8")).getBytes(CharsetUtil.UTF_8);
+        formBuffer = ChannelBuffers.buffer(form.length);
+    }
+
+    @Benchmark
+    public void xhrJackson(Blackhole blackhole) throws Exception {
+        String body = json.toString(CharsetUtil.UTF_8);
+        for (String message : mapper.readValue(body, String[].class)) {
+            blackhole.consume(message);
+        }
+    }
+
+    @Benchmark
+    public void xhrStreaming(final Blackhole blackhole) throws Exception {
+        FrameDecoder.decode(json, new FrameDecoder.Handler() {
+            @Override
+            public void onMessage(String message) {
+                blackhole.consume(message);
+            }
+        });
+    }
+
+    @Benchmark
+    public void jsonpJackson(Blackhole blackhole) throws Exception {
+        String body = new String(form, CharsetUtil.UTF_8);
+        String payload = URLDecoder.decode(body.substring(2), "UTF-8");
+        for (String message : mapper.readValue(payload, String[].class)) {
+            blackhole.consume(message);
+        }
+    }
+
+    @Benchmark
+    public void jsonpStreaming(final Blackhole blackhole) throws Exception {
+        formBuffer.clear();
+        formBuffer.writeBytes(form);
+        formBuffer.skipBytes(2);
+        FrameDecoder.percentDecode(formBuffer);
+        FrameDecoder.decode(formBuffer, new FrameDecoder.Handler() {
+            @Override
+            public void onMessage(String message) {
+                blackhole.consume(message);
+            }
+        });
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.openjdk.jmh.annotations.*;
+import sockjs.Connection;
+import sockjs.SockJs;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Several application threads calling sendToChannel on the same connections, the channels
+ * hand their tasks to one thread playing the I/O worker and discard the writes.
+ * <p/>
+ * Printed after every iteration: messages sent per channel write, which grows when
+ * sends made while a flush is pending are drained together, and messages dropped because
+ * producers outran the worker and filled the session queues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class MultiProducerSendBenchmark {
+
+    private static final String MESSAGE = "{\"symbol\":\"ACME\",\"price\":101.25}";
+
+    @Param({"1", "64"})
+    public int connectionCount;
+
+    private SockJs sockJs;
+
+    private ExecutorService worker;
+
+    private Connection[] connections;
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong writes = new AtomicLong();
+
+    private long dropped;
+
+    @Setup
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.setMaxStreamSize(Integer.MAX_VALUE);
+        worker = Executors.newSingleThreadExecutor();
+
+        ChannelHandler handler = (ChannelHandler) sockJs.getTransport("xhr_streaming");
+        connections = new Connection[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            ChannelPipeline pipeline = new DefaultChannelPipeline();
+            pipeline.addLast("encoder", new HttpResponseEncoder());
+            pipeline.addLast("handler", handler);
+            connections[i] = new Connection(sockJs, "/bench", "session" + i);
+            connections[i].setChannel(new WorkerChannel(pipeline, new WorkerSink(worker, writes)));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void printWrites() {
+        long currentWrites = writes.getAndSet(0);
+        long currentSent = sent.getAndSet(0) - (sockJs.getDroppedMessages() - dropped);
+        dropped = sockJs.getDroppedMessages();
+        System.out.printf("%n%.1f messages per write, %d dropped in total%n",
+                currentWrites == 0 ? 0 : currentSent / (double) currentWrites, dropped);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(10, TimeUnit.SECONDS);
+        sockJs.shutdown();
+    }
+
+    @Benchmark
+    public void sendToChannel() {
+        connections[ThreadLocalRandom.current().nextInt(connectionCount)].sendToChannel(MESSAGE);
+        sent.incrementAndGet();
+    }
+
+    private static class WorkerChannel extends AbstractChannel {
+
+        private static final SocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 0);
+
+        private final ChannelConfig config = new DefaultChannelConfig();
+
+        private WorkerChannel(ChannelPipeline pipeline, ChannelSink sink) {
+            super(null, null, pipeline, sink);
+        }
+
+        @Override
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        @Override
+        public boolean isBound() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return ADDRESS;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return ADDRESS;
+        }
+    }
+
+    /**
+     * Runs tasks on the executor standing for the I/O worker and counts the writes.
+     */
+    private static class WorkerSink extends AbstractChannelSink {
+
+        private final ExecutorService worker;
+
+        private final AtomicLong writes;
+
+        private WorkerSink(ExecutorService worker, AtomicLong writes) {
+            this.worker = worker;
+            this.writes = writes;
+        }
+
+        @Override
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e)
+                throws Exception {
+            if (e instanceof MessageEvent) {
+                writes.incrementAndGet();
+            }
+            e.getFuture().setSuccess();
+        }
+
+        @Override
+        public ChannelFuture execute(ChannelPipeline pipeline, Runnable task) {
+            worker.execute(task);
+            return Channels.succeededFuture(pipeline.getChannel());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+/**
+ * Messages of a given size and character mix for the codec and framing benchmarks.
+ */
+public class Payloads {
+
+    public enum CharMix {
+        /**
+         * Plain JSON-ish ASCII text, nothing to escape.
+         */
+        ASCII("{\"id\":42,\"name\":\"sockjs\",\"tags\":[\"a\",\"b\"],\"ok\":true} "),
+        /**
+         * Quotes, backslashes and control chars, most chars need an escape.
+         */
+        ESCAPED("\"quoted\\\"\t\\path\\to\r\n\u0001\u001f</script>"),
+        /**
+         * Surrogate pairs mixed with two and three byte sequences.
+         */
+        NON_BMP("\ud83d\ude00 caf\u00e9 \u20ac\ud834\udd1e \u0416\ud83d\ude80");
+
+        private final String sample;
+
+        private CharMix(String sample) {
+            this.sample = sample;
+        }
+    }
+
+    private Payloads() {
+    }
+
+    /**
+     * @return count messages of size chars each, differing in the first chars so nothing is
+     *         shared between them
+     */
+    public static String[] messages(int count, int size, CharMix mix) {
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder message = new StringBuilder(size + mix.sample.length());
+            message.append(i).append(':');
+            while (message.length() < size) {
+                message.append(mix.sample);
+            }
+            message.setLength(size);
+            // never cut a surrogate pair in half
+            if (Character.isHighSurrogate(message.charAt(size - 1))) {
+                message.setCharAt(size - 1, 'x');
+            }
+            messages[i] = message.toString();
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sockjs.Connection;
+import sockjs.SockJs;
+import sockjs.netty.PipelineFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second through the pipeline PipelineFactory builds, from raw request bytes
+ * to encoded response bytes: HttpRequestDecoder, HttpHandler routing, the transport the
+ * handler replaces itself with and HttpResponseEncoder. Every request gets a new pipeline
+ * on a {@link BenchmarkChannel}, as every accepted socket does, so no sockets are opened.
+ * <p/>
+ * Session opening requests close their session afterwards to keep the registry size stable,
+ * that cost is included. Polls are answered right away as a message is queued before each one.
+ * <p/>
+ * Run {@link #main(String[])}, or the jar with {@code -prof gc}, to get bytes allocated
+ * per request next to the throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final int SESSIONS = 1024;
+
+    private static final String MESSAGE = "{\"symbol\":\"ACME\",\"price\":101.25}";
+
+    private static final String WEB_SOCKET_KEY = "dGhlIHNhbXBsZSBub25jZQ==";
+
+    private SockJs sockJs;
+
+    private PipelineFactory pipelineFactory;
+
+    private byte[] info;
+
+    private byte[] iframe;
+
+    private String[] sessionIds;
+
+    private byte[][] xhrPolls;
+
+    private byte[][] xhrSends;
+
+    private byte[][] eventSourceOpens;
+
+    private byte[][] webSocketHandshakes;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        sockJs = new SockJs();
+        sockJs.addListener("/echo", new BenchmarkListener());
+        pipelineFactory = new PipelineFactory(sockJs);
+
+        info = request("GET /echo/info HTTP/1.1\r\n", "");
+        iframe = request("GET /echo/iframe.html HTTP/1.1\r\n", "");
+
+        String body = "[\"" + MESSAGE.replace("\"", "\\\"") + "\"]";
+        sessionIds = new String[SESSIONS];
+        xhrPolls = new byte[SESSIONS][];
+        xhrSends = new byte[SESSIONS][];
+        eventSourceOpens = new byte[SESSIONS][];
+        webSocketHandshakes = new byte[SESSIONS][];
+        for (int i = 0; i < SESSIONS; i++) {
+            String prefix = "/echo/" + (i % 1000) + "/";
+            sessionIds[i] = "session" + i;
+            xhrPolls[i] = request("POST " + prefix + sessionIds[i] + "/xhr HTTP/1.1\r\n", "");
+            xhrSends[i] = request("POST " + prefix + sessionIds[i] + "/xhr_send HTTP/1.1\r\n"
+                    + "Content-Type: text/plain\r\n", body);
+            eventSourceOpens[i] = request("GET " + prefix + "stream" + i + "/eventsource HTTP/1.1\r\n", "");
+            webSocketHandshakes[i] = request("GET " + prefix + "socket" + i + "/websocket HTTP/1.1\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Origin: http://localhost\r\n"
+                    + "Sec-WebSocket-Key: " + WEB_SOCKET_KEY + "\r\n"
+                    + "Sec-WebSocket-Version: 13\r\n", "");
+
+            // first poll opens the session polled and sent to later
+            if (send(xhrPolls[i]) == 0 || sockJs.getConnectionForSession(sessionIds[i]) == null) {
+                throw new IllegalStateException("xhr session was not opened");
+            }
+        }
+
+        // every request must come back with a response, or the numbers mean nothing
+        for (byte[] request : new byte[][] {info, iframe, xhrSends[0]}) {
+            if (send(request) == 0) {
+                throw new IllegalStateException("no response to " + new String(request, CharsetUtil.US_ASCII));
+            }
+        }
+        if (xhrPoll() == 0 || eventSourceOpen() == 0 || webSocketHandshake() == 0) {
+            throw new IllegalStateException("no response to a session request");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Benchmark
+    public long info() throws Exception {
+        return send(info);
+    }
+
+    @Benchmark
+    public long iframe() throws Exception {
+        return send(iframe);
+    }
+
+    @Benchmark
+    public long xhrPoll() throws Exception {
+        int i = nextSession();
+        sockJs.getConnectionForSession(sessionIds[i]).addMessageToBuffer(MESSAGE);
+        return send(xhrPolls[i]);
+    }
+
+    @Benchmark
+    public long xhrSend() throws Exception {
+        return send(xhrSends[nextSession()]);
+    }
+
+    @Benchmark
+    public long eventSourceOpen() throws Exception {
+        int i = nextSession();
+        return sendAndClose(eventSourceOpens[i], "stream" + i);
+    }
+
+    @Benchmark
+    public long webSocketHandshake() throws Exception {
+        int i = nextSession();
+        return sendAndClose(webSocketHandshakes[i], "socket" + i);
+    }
+
+    /**
+     * @return response bytes written
+     */
+    private long send(byte[] request) throws Exception {
+        BenchmarkChannel channel = new BenchmarkChannel(pipelineFactory.getPipeline());
+        Channels.fireMessageReceived(channel, ChannelBuffers.wrappedBuffer(request));
+        return channel.getWrittenBytes();
+    }
+
+    /**
+     * Sends request opening a streaming session, then closes the channel and the session.
+     */
+    private long sendAndClose(byte[] request, String sessionId) throws Exception {
+        BenchmarkChannel channel = new BenchmarkChannel(pipelineFactory.getPipeline());
+        Channels.fireMessageReceived(channel, ChannelBuffers.wrappedBuffer(request));
+        long written = channel.getWrittenBytes();
+        channel.close();
+        Connection connection = sockJs.getConnectionForSession(sessionId);
+        if (connection != null) {
+            sockJs.closeConnection(connection);
+        }
+        return written;
+    }
+
+    private int nextSession() {
+        return next++ & (SESSIONS - 1);
+    }
+
+    private static byte[] request(String requestLine, String body) {
+        byte[] content = body.getBytes(CharsetUtil.UTF_8);
+        String head = requestLine
+                + "Host: localhost:8080\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "\r\n";
+        byte[] request = new byte[head.length() + content.length];
+        System.arraycopy(head.getBytes(CharsetUtil.US_ASCII), 0, request, 0, head.length());
+        System.arraycopy(content, 0, request, head.length(), content.length);
+        return request;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PipelineBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
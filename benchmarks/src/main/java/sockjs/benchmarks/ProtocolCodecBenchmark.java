@@ -0,0 +1,94 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.codehaus.jackson.JsonParseException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sockjs.transports.Protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol encode and decode methods by payload size, messages per frame and character mix.
+ * <p/>
+ * Run {@link #main(String[])}, or the jar with {@code -prof gc}, to get allocation rate and
+ * bytes allocated per operation next to the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolCodecBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Messages {
+
+        @Param({"16", "1024", "16384"})
+        public int payloadSize;
+
+        @Param({"1", "16"})
+        public int messageCount;
+
+        @Param({"ASCII", "ESCAPED", "NON_BMP"})
+        public Payloads.CharMix charMix;
+
+        String[] messages;
+
+        String encoded;
+
+        @Setup
+        public void setUp() {
+            messages = Payloads.messages(messageCount, payloadSize, charMix);
+            // what clients send is the array frame without the frame type
+            encoded = Protocol.encodeMessageToString(messages).substring(1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CloseReasons {
+
+        private final Protocol.CloseReason[] reasons = Protocol.CloseReason.values();
+
+        private int next;
+
+        Protocol.CloseReason next() {
+            return reasons[next++ % reasons.length];
+        }
+    }
+
+    @Benchmark
+    public String encodeMessageToString(Messages messages) {
+        return Protocol.encodeMessageToString(messages.messages);
+    }
+
+    @Benchmark
+    public String encodeToJSONString(Messages messages) {
+        return Protocol.encodeToJSONString(messages.messages);
+    }
+
+    @Benchmark
+    public String[] decodeMessage(Messages messages) throws JsonParseException {
+        return Protocol.decodeMessage(messages.encoded);
+    }
+
+    @Benchmark
+    public String encodeJsonpClose(CloseReasons reasons) {
+        return Protocol.encodeJsonpClose(reasons.next(), "callback");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProtocolCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import sockjs.Connection;
+import sockjs.EndpointInfo;
+import sockjs.ListenerDispatch;
+import sockjs.RingStats;
+import sockjs.RingWaitStrategy;
+import sockjs.SockJs;
+import sockjs.netty.SockJsHandlerContext;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency from the moment a transport passes a decoded message to the session until
+ * {@code onMessage} starts, for the ordered pool and the ring with every wait strategy,
+ * with 1 to 8 threads playing the I/O workers.
+ * <p/>
+ * Usage: {@code java -cp target/benchmarks.jar sockjs.benchmarks.RingLatencyBenchmark [messagesPerWorker] [pauseMicros]}
+ */
+public class RingLatencyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int pauseMicros = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (int workers : new int[] {1, 2, 4, 8}) {
+            run(workers, messages, pauseMicros, ListenerDispatch.ORDERED_POOL, null);
+            for (RingWaitStrategy strategy : RingWaitStrategy.values()) {
+                run(workers, messages, pauseMicros, ListenerDispatch.RING, strategy);
+            }
+        }
+    }
+
+    private static void run(int workers, final int messages, final int pauseMicros, ListenerDispatch dispatch,
+                            RingWaitStrategy strategy) throws InterruptedException {
+        SockJs sockJs = new SockJs();
+        EndpointInfo info = new EndpointInfo();
+        info.setListenerDispatch(dispatch);
+        if (strategy != null) {
+            info.setRingWaitStrategy(strategy);
+        }
+        sockJs.setEndpointInfo("/bench", info);
+
+        final long[] latencies = new long[workers * messages];
+        final AtomicInteger recorded = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(latencies.length);
+        sockJs.addListener("/bench", new BenchmarkListener() {
+            @Override
+            public void onMessage(Connection connection, String message) {
+                latencies[recorded.getAndIncrement()] = System.nanoTime() - Long.parseLong(message);
+                done.countDown();
+            }
+        });
+
+        Thread[] threads = new Thread[workers];
+        for (int w = 0; w < workers; w++) {
+            SockJsHandlerContext context = new SockJsHandlerContext();
+            context.setBaseUrl("/bench");
+            context.setSessionId("session" + w);
+            final Connection connection = sockJs.createConnection(context);
+            threads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        connection.sendToListeners(Long.toString(System.nanoTime()), null);
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(pauseMicros));
+                    }
+                }
+            }, "worker-" + w);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        done.await();
+
+        RingStats stats = sockJs.getRingStats("/bench");
+        sockJs.shutdown();
+
+        // the first tenth is warm up
+        long[] measured = Arrays.copyOfRange(latencies, latencies.length / 10, latencies.length);
+        Arrays.sort(measured);
+        System.out.printf("workers=%d %-12s %-9s p50=%6.1fus p99=%7.1fus p999=%8.1fus%s%n",
+                workers, dispatch, strategy == null ? "" : strategy,
+                percentile(measured, 0.5), percentile(measured, 0.99), percentile(measured, 0.999),
+                stats == null ? "" : String.format(" avgBatch=%.2f maxBatch=%d",
+                        stats.getAverageBatchSize(), stats.getMaxBatchSize()));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[(int) ((sorted.length - 1) * percentile)] / 1000.0;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import sockjs.Route;
+import sockjs.Router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Endpoint lookup for a session URI: the prefix scan over every base url SockJs used before
+ * and the radix tree router. The router result also carries the parsed session id and transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int endpoints;
+
+    private List<String> baseUrls;
+
+    private Router router;
+
+    private String[] uris;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        baseUrls = new ArrayList<String>();
+        for (int i = 0; i < endpoints; i++) {
+            baseUrls.add("/app/service" + i + "/sockjs");
+        }
+        router = Router.compile(baseUrls);
+
+        uris = new String[1024];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = baseUrls.get(i % endpoints) + "/000/" + Integer.toHexString(i * 7919) + "/xhr_streaming?t=1";
+        }
+    }
+
+    @Benchmark
+    public String linearScan() {
+        return linearBaseUrl(nextUri());
+    }
+
+    @Benchmark
+    public Route radixTree() {
+        return router.route(nextUri());
+    }
+
+    private String nextUri() {
+        return uris[next++ & (uris.length - 1)];
+    }
+
+    private String linearBaseUrl(String url) {
+        for (String baseUrl : baseUrls) {
+            if (url.indexOf(baseUrl) == 0) {
+                if (url.length() == baseUrl.length() || url.charAt(baseUrl.length()) == '/') {
+                    return baseUrl;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sockjs.Connection;
+import sockjs.SessionRegistry;
+import sockjs.SockJs;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session lookup under contention: the plain map SockJs used before and the sharded registry.
+ * Every tenth operation replaces a session to model reconnect churn.
+ * <p/>
+ * Run {@link #main(String[])} to get results for 1, 8 and 32 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionRegistryBenchmark {
+
+    @Param({"100000"})
+    public int sessions;
+
+    private String[] sessionIds;
+
+    private Connection[] connections;
+
+    private ConcurrentHashMap<String, Connection> map;
+
+    private SessionRegistry registry;
+
+    @Setup
+    public void setUp() {
+        SockJs sockJs = new SockJs();
+        sessionIds = new String[sessions];
+        connections = new Connection[sessions];
+        map = new ConcurrentHashMap<String, Connection>();
+        registry = new SessionRegistry();
+
+        for (int i = 0; i < sessions; i++) {
+            sessionIds[i] = UUID.randomUUID().toString();
+            connections[i] = new Connection(sockJs, "/echo", sessionIds[i]);
+            map.put(sessionIds[i], connections[i]);
+            registry.put(sessionIds[i], connections[i]);
+        }
+    }
+
+    @Benchmark
+    public Connection concurrentHashMap() {
+        int i = ThreadLocalRandom.current().nextInt(sessions);
+        if ((i & 15) == 0) {
+            map.remove(sessionIds[i], connections[i]);
+            return map.put(sessionIds[i], connections[i]);
+        }
+        return map.get(sessionIds[i]);
+    }
+
+    @Benchmark
+    public Connection sessionRegistry() {
+        int i = ThreadLocalRandom.current().nextInt(sessions);
+        if ((i & 15) == 0) {
+            registry.remove(sessionIds[i], connections[i]);
+            return registry.put(sessionIds[i], connections[i]);
+        }
+        return registry.get(sessionIds[i]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] {1, 8, 32}) {
+            Options options = new OptionsBuilder()
+                    .include(SessionRegistryBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import org.jboss.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sockjs.Connection;
+import sockjs.SockJs;
+import sockjs.Transport;
+import sockjs.transports.Protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport framing down to the encoder in front of the socket: sendMessage with a frame
+ * encoded beforehand, and flushMessages draining queued messages into the transport envelope.
+ * <p/>
+ * Polling transports give the channel up after every response, it is attached again before
+ * each operation as the next poll would do.
+ * <p/>
+ * Run {@link #main(String[])}, or the jar with {@code -prof gc}, to get allocation rate and
+ * bytes allocated per operation next to the timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportFramingBenchmark {
+
+    @Param({"xhr_streaming", "eventsource", "htmlfile", "jsonp", "websocket"})
+    public String transport;
+
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    @Param({"1", "16"})
+    public int messageCount;
+
+    @Param({"ASCII", "ESCAPED", "NON_BMP"})
+    public Payloads.CharMix charMix;
+
+    private SockJs sockJs;
+
+    private Transport handler;
+
+    private Connection connection;
+
+    private Channel channel;
+
+    private String[] messages;
+
+    private ChannelBuffer frame;
+
+    @Setup
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.setMaxStreamSize(Integer.MAX_VALUE);
+        handler = sockJs.getTransport(transport);
+
+        ChannelHandler encoder = transport.equals(SockJs.WEBSOCKET_TRANSPORT) ? new WebSocket13FrameEncoder(false)
+                                                                              : new HttpResponseEncoder();
+        channel = BenchmarkChannel.create(encoder, (ChannelHandler) handler);
+        connection = new Connection(sockJs, "/bench", "session");
+        connection.setJsonpCallback("callback");
+
+        messages = Payloads.messages(messageCount, payloadSize, charMix);
+        frame = ChannelBuffers.copiedBuffer(Protocol.encodeMessageToString(messages), CharsetUtil.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Benchmark
+    public void sendMessage() {
+        attach();
+        handler.sendMessage(connection, frame.duplicate());
+    }
+
+    @Benchmark
+    public void flushMessages() {
+        attach();
+        for (String message : messages) {
+            connection.addMessageToBuffer(message);
+        }
+        handler.flushMessages(connection);
+    }
+
+    private void attach() {
+        if (connection.getChannel() == null) {
+            connection.setChannel(channel);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TransportFramingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import sockjs.Connection;
+import sockjs.Route;
+import sockjs.SockJs;
+import sockjs.Transport;
+import sockjs.netty.SockJsHandlerContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second HttpHandler can route for xhr polling: the regex, split and substring
+ * parsing it used before and the single pass tokenizer filling a reused route.
+ * Both resolve the transport and look the session up like HttpHandler does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XhrPollingRouteBenchmark {
+
+    private static final int SESSIONS = 1024;
+
+    private SockJs sockJs;
+
+    private String[] uris;
+
+    private final Route route = new Route();
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.addListener("/echo", new BenchmarkListener());
+        sockJs.addListener("/chat", new BenchmarkListener());
+        sockJs.addListener("/app/updates", new BenchmarkListener());
+
+        uris = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            String sessionId = "session" + i;
+            SockJsHandlerContext context = new SockJsHandlerContext();
+            context.setBaseUrl("/echo");
+            context.setSessionId(sessionId);
+            sockJs.createConnection(context);
+            uris[i] = "/echo/" + (i % 1000) + "/" + sessionId + "/xhr";
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Benchmark
+    public Connection legacyParser() {
+        String uri = nextUri();
+        if (!sockJs.hasListenerForRoute(uri) || sockJs.isRootOfBaseUrl(uri)) {
+            return null;
+        }
+
+        String baseUrl = sockJs.getBaseUrl(uri);
+        if (uri.endsWith("/info") || uri.matches(".*/iframe[\\d\\w\\.\\-_]*.html.*")) {
+            return null;
+        }
+
+        int lastSlashIndex = uri.lastIndexOf("/");
+        int paramQSignIndex = uri.indexOf("?", lastSlashIndex);
+        String transportName = uri.substring(lastSlashIndex + 1, paramQSignIndex != -1 ? paramQSignIndex : uri.length());
+        String suffix = uri.substring(baseUrl.length(), lastSlashIndex);
+        if (!transportName.equals("websocket") && (suffix.contains(".") || !suffix.matches("/.+/.+"))) {
+            return null;
+        }
+
+        Transport transport = sockJs.getTransport(transportName);
+        if (transport == null) {
+            return null;
+        }
+
+        String[] parsedUri = uri.substring(baseUrl.length() + 1).split("/");
+        String sessionId = parsedUri.length > 2 ? parsedUri[parsedUri.length - 2] : null;
+        return sockJs.getConnectionForSession(sessionId);
+    }
+
+    @Benchmark
+    public Connection tokenizer() {
+        String uri = nextUri();
+        if (!sockJs.route(uri, route) || route.isRoot() || route.isInfo() || route.isIframe()) {
+            return null;
+        }
+
+        if (!route.isTransport(SockJs.WEBSOCKET_TRANSPORT) && !route.isSessionPath()) {
+            return null;
+        }
+
+        Transport transport = sockJs.getTransport(route);
+        if (transport == null) {
+            return null;
+        }
+
+        return sockJs.getConnectionForSession(route.getSessionId());
+    }
+
+    private String nextUri() {
+        return uris[next++ & (SESSIONS - 1)];
+    }
+}
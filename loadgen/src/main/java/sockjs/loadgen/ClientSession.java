@@ -0,0 +1,139 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One SockJS session opened by the load generator. Frames are read here, transports only
+ * move them: 'o' opens the session, 'a' carries messages, 'c' closes it and 'h' is ignored.
+ * <p/>
+ * Listener callbacks come from Netty I/O threads.
+ */
+public abstract class ClientSession {
+
+    public interface Listener {
+
+        void onOpen(ClientSession session, long connectMicros);
+
+        void onMessage(ClientSession session, String message);
+
+        /**
+         * Called once, when the session is closed by either side or could not be opened.
+         *
+         * @param cause failure which closed the session or null on a normal close
+         */
+        void onClose(ClientSession session, Throwable cause);
+    }
+
+    protected final LoadClient client;
+
+    protected final ClientTransport transport;
+
+    protected final String baseUrl;
+
+    protected final String sessionPath;
+
+    private final Listener listener;
+
+    private final long connectStart = System.nanoTime();
+
+    private volatile boolean open;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    protected ClientSession(LoadClient client, ClientTransport transport, String baseUrl, String sessionId,
+                            Listener listener) {
+        this.client = client;
+        this.transport = transport;
+        this.baseUrl = baseUrl;
+        this.sessionPath = baseUrl + "/" + (sessionId.hashCode() & Integer.MAX_VALUE) % 1000 + "/" + sessionId;
+        this.listener = listener;
+    }
+
+    public ClientTransport getTransport() {
+        return transport;
+    }
+
+    public boolean isOpen() {
+        return open && !closed.get();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public abstract void connect();
+
+    public abstract void send(String message);
+
+    /**
+     * Closes the session from the client side, listener gets onClose without a cause.
+     */
+    public abstract void close();
+
+    protected void onFrame(String frame) {
+        if (frame.isEmpty() || closed.get()) {
+            return;
+        }
+        switch (frame.charAt(0)) {
+            case 'o':
+                onOpen();
+                break;
+            case 'a':
+                String[] messages;
+                try {
+                    messages = client.getMapper().readValue(frame.substring(1), String[].class);
+                } catch (IOException ex) {
+                    onClose(ex);
+                    return;
+                }
+                for (String message : messages) {
+                    onMessage(message);
+                }
+                break;
+            case 'c':
+                onClose(new IOException("closed by server: " + frame.substring(1)));
+                break;
+            case 'h':
+                break;
+            default:
+                onClose(new IOException("unknown frame: " + frame));
+        }
+    }
+
+    protected void onOpen() {
+        if (!open) {
+            open = true;
+            listener.onOpen(this, (System.nanoTime() - connectStart) / 1000);
+        }
+    }
+
+    protected void onMessage(String message) {
+        if (!closed.get()) {
+            listener.onMessage(this, message);
+        }
+    }
+
+    /**
+     * @return true if the session was closed by this call
+     */
+    protected boolean onClose(Throwable cause) {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        listener.onClose(this, cause);
+        return true;
+    }
+
+    protected String encodeMessages(String message) {
+        try {
+            return client.getMapper().writeValueAsString(new String[] {message});
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+}
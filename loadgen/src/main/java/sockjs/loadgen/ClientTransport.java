@@ -0,0 +1,112 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+
+import java.io.IOException;
+
+/**
+ * Transports the client speaks, with the way each of them receives frames over HTTP.
+ */
+public enum ClientTransport {
+
+    WEBSOCKET("websocket", null, null, false),
+
+    /**
+     * Plain websocket at the endpoint root, messages are sent and received without SockJS framing.
+     */
+    RAW_WEBSOCKET("raw_websocket", null, null, false),
+
+    XHR("xhr", HttpMethod.POST, "", false),
+
+    XHR_STREAMING("xhr_streaming", HttpMethod.POST, "", true),
+
+    EVENTSOURCE("eventsource", HttpMethod.GET, "", true) {
+        @Override
+        String frameFromLine(String line, ObjectMapper mapper) {
+            return line.startsWith("data: ") ? line.substring(6) : null;
+        }
+    },
+
+    HTMLFILE("htmlfile", HttpMethod.GET, "?c=p", true) {
+        @Override
+        String frameFromLine(String line, ObjectMapper mapper) throws IOException {
+            // <script>\np("frame");\n</script>
+            return line.startsWith("p(") && line.endsWith(");")
+                   ? mapper.readValue(line.substring(2, line.length() - 2), String.class) : null;
+        }
+    },
+
+    JSONP("jsonp", HttpMethod.GET, "?c=callback", false) {
+        @Override
+        String frameFromLine(String line, ObjectMapper mapper) throws IOException {
+            return line.startsWith("callback(") && line.endsWith(");")
+                   ? mapper.readValue(line.substring(9, line.length() - 2), String.class) : null;
+        }
+    };
+
+    private final String name;
+
+    private final HttpMethod receiveMethod;
+
+    private final String receiveQuery;
+
+    private final boolean streaming;
+
+    private ClientTransport(String name, HttpMethod receiveMethod, String receiveQuery, boolean streaming) {
+        this.name = name;
+        this.receiveMethod = receiveMethod;
+        this.receiveQuery = receiveQuery;
+        this.streaming = streaming;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isWebSocket() {
+        return receiveMethod == null;
+    }
+
+    /**
+     * @return true if one response carries many frames, false for polling transports
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    HttpMethod getReceiveMethod() {
+        return receiveMethod;
+    }
+
+    String getReceiveUri(String sessionPath) {
+        return sessionPath + "/" + name + receiveQuery;
+    }
+
+    /**
+     * @return SockJS frame carried by the response line or null if the line is transport padding
+     */
+    String frameFromLine(String line, ObjectMapper mapper) throws IOException {
+        return line;
+    }
+
+    ClientSession newSession(LoadClient client, String baseUrl, String sessionId, ClientSession.Listener listener) {
+        if (isWebSocket()) {
+            return new WebSocketSession(client, this, baseUrl, sessionId, listener);
+        }
+        return new HttpSession(client, this, baseUrl, sessionId, listener);
+    }
+
+    public static ClientTransport forName(String name) {
+        for (ClientTransport transport : values()) {
+            if (transport.name.equals(name)) {
+                return transport;
+            }
+        }
+        throw new IllegalArgumentException("Unknown transport: " + name);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Session over the HTTP transports. Frames come from one receiving request at a time, polled
+ * again as soon as it ends: after every response for xhr and jsonp, after the server
+ * recycles the stream for the streaming ones. Messages go out with xhr_send, or jsonp_send for
+ * jsonp, each on its own connection.
+ */
+public class HttpSession extends ClientSession {
+
+    private volatile boolean stopped;
+
+    private volatile Channel receiving;
+
+    public HttpSession(LoadClient client, ClientTransport transport, String baseUrl, String sessionId,
+                       Listener listener) {
+        super(client, transport, baseUrl, sessionId, listener);
+    }
+
+    @Override
+    public void connect() {
+        receive();
+    }
+
+    @Override
+    public void send(String message) {
+        HttpRequest request;
+        if (transport == ClientTransport.JSONP) {
+            request = LoadClient.newRequest(HttpMethod.POST, sessionPath + "/jsonp_send",
+                    "application/x-www-form-urlencoded", "d=" + urlEncode(encodeMessages(message)));
+        } else {
+            request = LoadClient.newRequest(HttpMethod.POST, sessionPath + "/xhr_send",
+                    "text/plain", encodeMessages(message));
+        }
+        client.request(request, new LoadClient.ResponseHandler() {
+            @Override
+            public void onLine(String line) {
+            }
+
+            @Override
+            public void onEnd() {
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                onClose(cause);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        stopped = true;
+        onClose(null);
+        Channel channel = receiving;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void receive() {
+        HttpRequest request = LoadClient.newRequest(transport.getReceiveMethod(),
+                transport.getReceiveUri(sessionPath), null, null);
+        receiving = client.request(request, new LoadClient.ResponseHandler() {
+            @Override
+            public void onLine(String line) {
+                String frame;
+                try {
+                    frame = transport.frameFromLine(line, client.getMapper());
+                } catch (IOException ex) {
+                    onClose(ex);
+                    return;
+                }
+                if (frame != null) {
+                    onFrame(frame);
+                }
+            }
+
+            @Override
+            public void onEnd() {
+                if (!stopped && !isClosed()) {
+                    receive();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                onClose(cause);
+            }
+        });
+    }
+
+    private static String urlEncode(String text) {
+        try {
+            return URLEncoder.encode(text, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of microsecond values recorded from many I/O threads.
+ * <p/>
+ * Values below 128 get a bucket each, above that every power of two is split into 64 buckets,
+ * so reported percentiles are within 1.6% of the recorded values.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 64;
+
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    private static final int BUCKETS = LINEAR_LIMIT + 57 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(index(micros));
+        total.incrementAndGet();
+        sum.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return value at the given percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return count, mean, p50, p99, p999 and max in milliseconds
+     */
+    public Map<String, Object> toMillis() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        long count = total.get();
+        result.put("count", count);
+        result.put("mean", count == 0 ? 0 : millis(sum.get() / count));
+        result.put("p50", millis(getPercentile(50)));
+        result.put("p99", millis(getPercentile(99)));
+        result.put("p999", millis(getPercentile(99.9)));
+        result.put("max", millis(max.get()));
+        return result;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        // value >> shift falls into [64, 128)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        int index = LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    private static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.*;
+import org.jboss.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections to the server shared by all client sessions: one NIO channel factory, optional
+ * round robin over several local addresses so loopback runs are not limited by the ephemeral
+ * ports of a single address, and plain HTTP requests with line by line response reading.
+ */
+public class LoadClient {
+
+    /**
+     * Receives response body split into lines, '\r' before '\n' is stripped.
+     */
+    public interface ResponseHandler {
+
+        void onLine(String line);
+
+        /**
+         * Called once after the whole response was read or the server closed the connection.
+         */
+        void onEnd();
+
+        /**
+         * Called instead of {@link #onEnd()} if connection failed or response status is an error.
+         */
+        void onFailure(Throwable cause);
+    }
+
+    private final ChannelFactory channelFactory;
+
+    private final InetSocketAddress remoteAddress;
+
+    private final InetSocketAddress[] localAddresses;
+
+    private final AtomicInteger nextLocalAddress = new AtomicInteger();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public LoadClient(String host, int port, int localAddressCount) throws UnknownHostException {
+        channelFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                Executors.newCachedThreadPool());
+        remoteAddress = new InetSocketAddress(host, port);
+        localAddresses = new InetSocketAddress[localAddressCount];
+        for (int i = 0; i < localAddressCount; i++) {
+            // 127.0.0.1, 127.0.0.2 and so on, all of them are loopback on Linux
+            localAddresses[i] = new InetSocketAddress(InetAddress.getByAddress(
+                    new byte[] {127, (byte) ((i + 1) >> 16), (byte) ((i + 1) >> 8), (byte) (i + 1)}), 0);
+        }
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public String getHostHeader() {
+        return remoteAddress.getHostName() + ":" + remoteAddress.getPort();
+    }
+
+    /**
+     * Opens a connection with the given pipeline, from the next local address if there are several.
+     */
+    public ChannelFuture connect(ChannelPipeline pipeline) {
+        final Channel channel = channelFactory.newChannel(pipeline);
+        channel.getConfig().setOption("tcpNoDelay", true);
+        if (localAddresses.length == 0) {
+            return channel.connect(remoteAddress);
+        }
+
+        final ChannelFuture connected = Channels.future(channel, true);
+        InetSocketAddress localAddress = localAddresses[(nextLocalAddress.getAndIncrement() & Integer.MAX_VALUE)
+                % localAddresses.length];
+        channel.bind(localAddress).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    connected.setFailure(future.getCause());
+                    channel.close();
+                    return;
+                }
+                channel.connect(remoteAddress).addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (future.isSuccess()) {
+                            connected.setSuccess();
+                        } else {
+                            connected.setFailure(future.getCause());
+                        }
+                    }
+                });
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * Sends request on a new connection and reads the response, the connection is closed after it.
+     *
+     * @return channel the request goes over
+     */
+    public Channel request(final HttpRequest request, final ResponseHandler handler) {
+        request.setHeader(HttpHeaders.Names.HOST, getHostHeader());
+        request.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        request.setHeader(HttpHeaders.Names.CONTENT_LENGTH, request.getContent().readableBytes());
+
+        ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("codec", new HttpClientCodec());
+        pipeline.addLast("handler", new LineReader(handler));
+        ChannelFuture connected = connect(pipeline);
+        connected.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    future.getChannel().write(request);
+                } else {
+                    handler.onFailure(future.getCause());
+                }
+            }
+        });
+        return connected.getChannel();
+    }
+
+    public static HttpRequest newRequest(HttpMethod method, String uri, String contentType, String body) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+        if (body != null) {
+            request.setHeader(HttpHeaders.Names.CONTENT_TYPE, contentType);
+            request.setContent(ChannelBuffers.copiedBuffer(body, CharsetUtil.UTF_8));
+        }
+        return request;
+    }
+
+    public void shutdown() {
+        channelFactory.releaseExternalResources();
+    }
+
+    /**
+     * Splits response content into lines and reports the end of the response exactly once.
+     */
+    private static class LineReader extends SimpleChannelUpstreamHandler {
+
+        private final ResponseHandler handler;
+
+        private final ChannelBuffer pending = ChannelBuffers.dynamicBuffer(256);
+
+        private boolean finished;
+
+        LineReader(ResponseHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            Object message = e.getMessage();
+            if (message instanceof HttpResponse) {
+                HttpResponse response = (HttpResponse) message;
+                int status = response.getStatus().getCode();
+                if (status >= 400) {
+                    fail(ctx.getChannel(), new IOException("HTTP " + response.getStatus() + ": "
+                            + response.getContent().toString(CharsetUtil.UTF_8).trim()));
+                    return;
+                }
+                read(response.getContent());
+                if (!response.isChunked()) {
+                    end(ctx.getChannel());
+                }
+            } else if (message instanceof HttpChunk) {
+                HttpChunk chunk = (HttpChunk) message;
+                read(chunk.getContent());
+                if (chunk.isLast()) {
+                    end(ctx.getChannel());
+                }
+            }
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            if (!finished && pending.readable()) {
+                readLine(pending.readableBytes());
+            }
+            end(ctx.getChannel());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+            fail(ctx.getChannel(), e.getCause());
+        }
+
+        private void read(ChannelBuffer content) {
+            if (finished) {
+                return;
+            }
+            pending.writeBytes(content);
+            int newLine;
+            while ((newLine = pending.indexOf(pending.readerIndex(), pending.writerIndex(), (byte) '\n')) >= 0) {
+                readLine(newLine - pending.readerIndex());
+                pending.skipBytes(1);
+            }
+            pending.discardReadBytes();
+        }
+
+        private void readLine(int length) {
+            int end = length > 0 && pending.getByte(pending.readerIndex() + length - 1) == '\r' ? length - 1 : length;
+            String line = pending.toString(pending.readerIndex(), end, CharsetUtil.UTF_8);
+            pending.skipBytes(length);
+            handler.onLine(line);
+        }
+
+        private void end(Channel channel) {
+            if (!finished) {
+                finished = true;
+                handler.onEnd();
+            }
+            channel.close();
+        }
+
+        private void fail(Channel channel, Throwable cause) {
+            if (!finished) {
+                finished = true;
+                handler.onFailure(cause);
+            }
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many SockJS sessions against a server on loopback, one transport after another, and
+ * reports connect time and round trip latency percentiles per transport as JSON.
+ * <p/>
+ * Scenarios:
+ * <ul>
+ * <li>echo - every session sends a message every interval to {@code /echo} and waits for it
+ * to come back, the interval 0 sends the next one as soon as the echo arrives;</li>
+ * <li>broadcast - one random session per interval sends to {@code /broadcast}, latency is
+ * recorded by every session the server fans the message out to;</li>
+ * <li>churn - every session opens, echoes one message and closes, a new one takes its place.</li>
+ * </ul>
+ * Messages carry the client's send time, so latency is measured within this process.
+ * <p/>
+ * Options, with defaults: {@code --host 127.0.0.1 --port 3002 --embedded --scenario echo
+ * --transports websocket,raw_websocket,xhr,xhr_streaming,eventsource,jsonp,htmlfile
+ * --sessions 10000 --duration 30 --interval 1000 --message-size 64 --connect-concurrency 1000
+ * --local-addresses 0 --output -}. {@code --embedded} runs {@link LoadServer} in this process,
+ * {@code --local-addresses N} spreads connections over 127.0.0.1 to 127.0.0.N for runs beyond
+ * the ephemeral ports of one address, {@code --output -} prints results to stdout. With
+ * {@code --embedded} results also have the server side latency of messages from the session
+ * queue to the socket.
+ */
+public class LoadGenerator {
+
+    public static final int DEFAULT_PORT = 3002;
+
+    private static final String ALL_TRANSPORTS = "websocket,raw_websocket,xhr,xhr_streaming,eventsource,jsonp,htmlfile";
+
+    public enum Scenario {
+        ECHO, BROADCAST, CHURN
+    }
+
+    private final LoadClient client;
+
+    private final Scenario scenario;
+
+    private final int sessions;
+
+    private final long durationMillis;
+
+    private final long intervalMillis;
+
+    private final String padding;
+
+    private final int connectConcurrency;
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+
+    private final Random random = new Random();
+
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong sessionIds = new AtomicLong();
+
+    public LoadGenerator(LoadClient client, Scenario scenario, int sessions, long durationMillis,
+                         long intervalMillis, int messageSize, int connectConcurrency) {
+        this.client = client;
+        this.scenario = scenario;
+        this.sessions = sessions;
+        this.durationMillis = durationMillis;
+        this.intervalMillis = intervalMillis;
+        this.connectConcurrency = connectConcurrency;
+        char[] chars = new char[Math.max(0, messageSize - 21)];
+        Arrays.fill(chars, 'x');
+        this.padding = new String(chars);
+    }
+
+    /**
+     * Runs the scenario for every transport in turn.
+     */
+    public Map<String, Object> run(List<ClientTransport> transports) throws InterruptedException {
+        Map<String, Object> results = new LinkedHashMap<String, Object>();
+        for (ClientTransport transport : transports) {
+            System.err.println("running " + scenario.name().toLowerCase() + " over " + transport.getName()
+                    + " with " + sessions + " sessions");
+            results.put(transport.getName(), run(transport).toMap());
+        }
+        return results;
+    }
+
+    public TransportReport run(ClientTransport transport) throws InterruptedException {
+        Run run = new Run(transport);
+
+        long rampStart = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++) {
+            run.open(true);
+        }
+        // every ramp session has opened or failed once all permits are back
+        run.connecting.acquire(connectConcurrency);
+        run.connecting.release(connectConcurrency);
+        run.report.setRampMillis(System.currentTimeMillis() - rampStart);
+
+        long runStart = System.currentTimeMillis();
+        long end = runStart + durationMillis;
+        if (scenario == Scenario.BROADCAST) {
+            List<ClientSession> publishers = new ArrayList<ClientSession>(run.sessions);
+            while (System.currentTimeMillis() < end && !publishers.isEmpty()) {
+                ClientSession publisher = publishers.get(random.nextInt(publishers.size()));
+                if (publisher.isOpen()) {
+                    run.send(publisher);
+                }
+                Thread.sleep(Math.max(1, intervalMillis));
+            }
+        }
+        Thread.sleep(Math.max(0, end - System.currentTimeMillis()));
+        run.running = false;
+        run.report.setRunMillis(System.currentTimeMillis() - runStart);
+
+        for (ClientSession session : run.sessions) {
+            session.close();
+        }
+        // let the closes reach the server before the next transport starts
+        Thread.sleep(1000);
+        return run.report;
+    }
+
+    public void shutdown() {
+        timer.stop();
+        client.shutdown();
+    }
+
+    private String newSessionId() {
+        return runId + "-" + sessionIds.incrementAndGet();
+    }
+
+    /**
+     * Sessions of one transport and what happens to them in the scenario.
+     */
+    private class Run implements ClientSession.Listener {
+
+        final ClientTransport transport;
+
+        final TransportReport report = new TransportReport();
+
+        final Semaphore connecting = new Semaphore(connectConcurrency);
+
+        final Set<ClientSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<ClientSession, Boolean>());
+
+        /**
+         * Sessions holding a connecting permit until they open or fail.
+         */
+        final Set<ClientSession> ramping = Collections.newSetFromMap(new ConcurrentHashMap<ClientSession, Boolean>());
+
+        volatile boolean running = true;
+
+        Run(ClientTransport transport) {
+            this.transport = transport;
+        }
+
+        void open(boolean ramp) throws InterruptedException {
+            String baseUrl = scenario == Scenario.BROADCAST ? LoadServer.BROADCAST : LoadServer.ECHO;
+            ClientSession session = transport.newSession(client, baseUrl, newSessionId(), this);
+            if (ramp) {
+                connecting.acquire();
+                ramping.add(session);
+            }
+            sessions.add(session);
+            session.connect();
+        }
+
+        void send(ClientSession session) {
+            report.sent.incrementAndGet();
+            session.send(System.nanoTime() + ":" + padding);
+        }
+
+        void sendLater(final ClientSession session, long delayMillis) {
+            if (delayMillis <= 0) {
+                send(session);
+                return;
+            }
+            timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) throws Exception {
+                    if (running && session.isOpen()) {
+                        send(session);
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onOpen(ClientSession session, long connectMicros) {
+            report.opened.incrementAndGet();
+            report.connect.record(connectMicros);
+            if (ramping.remove(session)) {
+                connecting.release();
+            }
+            if (!running) {
+                session.close();
+            } else if (scenario == Scenario.ECHO) {
+                // spread the first messages over the interval
+                sendLater(session, intervalMillis > 0 ? random.nextInt((int) intervalMillis) : 0);
+            } else if (scenario == Scenario.CHURN) {
+                send(session);
+            }
+        }
+
+        @Override
+        public void onMessage(ClientSession session, String message) {
+            int separator = message.indexOf(':');
+            if (separator > 0) {
+                report.roundTrip.record((System.nanoTime() - Long.parseLong(message.substring(0, separator))) / 1000);
+            }
+            report.received.incrementAndGet();
+
+            if (!running) {
+                return;
+            }
+            if (scenario == Scenario.ECHO) {
+                sendLater(session, intervalMillis);
+            } else if (scenario == Scenario.CHURN) {
+                session.close();
+            }
+        }
+
+        @Override
+        public void onClose(ClientSession session, Throwable cause) {
+            sessions.remove(session);
+            if (ramping.remove(session)) {
+                connecting.release();
+                report.connectFailures.incrementAndGet();
+            } else if (cause != null && running) {
+                report.closedByServer.incrementAndGet();
+            }
+
+            if (scenario == Scenario.CHURN && running) {
+                try {
+                    open(false);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String host = option(options, "host", "127.0.0.1");
+        int port = Integer.parseInt(option(options, "port", String.valueOf(DEFAULT_PORT)));
+        Scenario scenario = Scenario.valueOf(option(options, "scenario", "echo").toUpperCase());
+        int sessions = Integer.parseInt(option(options, "sessions", "10000"));
+        long duration = Long.parseLong(option(options, "duration", "30"));
+        long interval = Long.parseLong(option(options, "interval", "1000"));
+        int messageSize = Integer.parseInt(option(options, "message-size", "64"));
+        int connectConcurrency = Integer.parseInt(option(options, "connect-concurrency", "1000"));
+        int localAddresses = Integer.parseInt(option(options, "local-addresses", "0"));
+        String output = option(options, "output", "-");
+
+        List<ClientTransport> transports = new ArrayList<ClientTransport>();
+        for (String name : option(options, "transports", ALL_TRANSPORTS).split(",")) {
+            transports.add(ClientTransport.forName(name.trim()));
+        }
+
+        LoadServer server = null;
+        if (options.containsKey("embedded")) {
+            server = new LoadServer(port);
+            server.start();
+        }
+
+        LoadGenerator generator = new LoadGenerator(new LoadClient(host, port, localAddresses), scenario,
+                sessions, TimeUnit.SECONDS.toMillis(duration), interval, messageSize, connectConcurrency);
+        Map<String, Object> results = new LinkedHashMap<String, Object>();
+        results.put("startedAt", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        results.put("scenario", scenario.name().toLowerCase());
+        results.put("host", host);
+        results.put("port", port);
+        results.put("embedded", server != null);
+        results.put("sessions", sessions);
+        results.put("durationSeconds", duration);
+        results.put("intervalMillis", interval);
+        results.put("messageSize", messageSize);
+        try {
+            results.put("transports", generator.run(transports));
+            if (server != null) {
+                results.put("serverLatency", server.getLatencyReport());
+            }
+        } finally {
+            generator.shutdown();
+            if (server != null) {
+                server.stop();
+            }
+        }
+
+        writeResults(results, output);
+    }
+
+    private static void writeResults(Map<String, Object> results, String output) throws IOException {
+        ObjectWriter writer = new ObjectMapper().writerWithDefaultPrettyPrinter();
+        if (output.equals("-")) {
+            System.out.println(writer.writeValueAsString(results));
+        } else {
+            writer.writeValue(new File(output), results);
+            System.err.println("results written to " + output);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "");
+            }
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import sockjs.Connection;
+import sockjs.ConnectionListener;
+import sockjs.MessageLatency;
+import sockjs.SockJs;
+import sockjs.metrics.LatencySnapshot;
+import sockjs.netty.StandaloneServer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server the load generator runs against: {@code /echo} sends every message back to its
+ * session, {@code /broadcast} sends it to every session of the endpoint.
+ */
+public class LoadServer {
+
+    public static final String ECHO = "/echo";
+
+    public static final String BROADCAST = "/broadcast";
+
+    private final SockJs sockJs = new SockJs();
+
+    private final StandaloneServer server;
+
+    public LoadServer(int port) {
+        sockJs.addListener(ECHO, new ConnectionListener() {
+            @Override
+            public void onOpen(Connection connection) {
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+            }
+
+            @Override
+            public void onMessage(Connection connection, String message) {
+                connection.sendToChannel(message);
+            }
+        });
+        sockJs.addListener(BROADCAST, new ConnectionListener() {
+            @Override
+            public void onOpen(Connection connection) {
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+            }
+
+            @Override
+            public void onMessage(Connection connection, String message) {
+                sockJs.broadcast(BROADCAST, message);
+            }
+        });
+        server = new StandaloneServer(sockJs, port);
+    }
+
+    public SockJs getSockJs() {
+        return sockJs;
+    }
+
+    /**
+     * @return server side latency of outbound messages per endpoint, transport and stage
+     *         with count, mean, p50, p99, p999 and max in milliseconds
+     */
+    public Map<String, Object> getLatencyReport() {
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        for (String endpoint : new String[]{ECHO, BROADCAST}) {
+            Map<String, Object> transports = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, MessageLatency> entry : sockJs.getMessageLatencies(endpoint).entrySet()) {
+                MessageLatency latency = entry.getValue();
+                Map<String, Object> stages = new LinkedHashMap<String, Object>();
+                stages.put("queue", toMillis(latency.getQueue()));
+                stages.put("encode", toMillis(latency.getEncode()));
+                stages.put("wire", toMillis(latency.getWire()));
+                stages.put("total", toMillis(latency.getTotal()));
+                transports.put(entry.getKey(), stages);
+            }
+            if (!transports.isEmpty()) {
+                report.put(endpoint, transports);
+            }
+        }
+        return report;
+    }
+
+    private static Map<String, Object> toMillis(LatencySnapshot snapshot) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("count", snapshot.getCount());
+        result.put("mean", snapshot.getMeanMicros() / 1000);
+        result.put("p50", snapshot.getPercentileMicros(50) / 1000.0);
+        result.put("p99", snapshot.getPercentileMicros(99) / 1000.0);
+        result.put("p999", snapshot.getPercentileMicros(99.9) / 1000.0);
+        result.put("max", snapshot.getMaxMicros() / 1000.0);
+        return result;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop();
+        sockJs.shutdown();
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : LoadGenerator.DEFAULT_PORT;
+        new LoadServer(port).start();
+        System.out.println("SockJS load server listening on port " + port);
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of one transport run, updated from I/O threads.
+ */
+public class TransportReport {
+
+    final AtomicLong opened = new AtomicLong();
+
+    final AtomicLong connectFailures = new AtomicLong();
+
+    final AtomicLong closedByServer = new AtomicLong();
+
+    final AtomicLong sent = new AtomicLong();
+
+    final AtomicLong received = new AtomicLong();
+
+    final LatencyHistogram connect = new LatencyHistogram();
+
+    final LatencyHistogram roundTrip = new LatencyHistogram();
+
+    private long rampMillis;
+
+    private long runMillis;
+
+    void setRampMillis(long rampMillis) {
+        this.rampMillis = rampMillis;
+    }
+
+    void setRunMillis(long runMillis) {
+        this.runMillis = runMillis;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("sessionsOpened", opened.get());
+        result.put("connectFailures", connectFailures.get());
+        result.put("closedByServer", closedByServer.get());
+        result.put("messagesSent", sent.get());
+        result.put("messagesReceived", received.get());
+        result.put("rampSeconds", rampMillis / 1000.0);
+        result.put("runSeconds", runMillis / 1000.0);
+        result.put("receivedPerSecond", runMillis == 0 ? 0 : received.get() * 1000 / runMillis);
+        result.put("connectMillis", connect.toMillis());
+        result.put("roundTripMillis", roundTrip.toMillis());
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.loadgen;
+
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpRequestEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseDecoder;
+import org.jboss.netty.handler.codec.http.websocketx.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+
+/**
+ * Session over a websocket, with SockJS framing at {@code /base/server/session/websocket} or
+ * plain text messages at {@code /base/websocket}. A raw session is open once the handshake is done.
+ */
+public class WebSocketSession extends ClientSession {
+
+    private volatile Channel channel;
+
+    public WebSocketSession(LoadClient client, ClientTransport transport, String baseUrl, String sessionId,
+                            Listener listener) {
+        super(client, transport, baseUrl, sessionId, listener);
+    }
+
+    private boolean isRaw() {
+        return transport == ClientTransport.RAW_WEBSOCKET;
+    }
+
+    @Override
+    public void connect() {
+        String path = isRaw() ? baseUrl + "/websocket" : sessionPath + "/websocket";
+        final WebSocketClientHandshaker handshaker = new WebSocketClientHandshakerFactory().newHandshaker(
+                URI.create("ws://" + client.getHostHeader() + path), WebSocketVersion.V13, null, false,
+                Collections.<String, String>emptyMap());
+
+        // the handshaker swaps these two for websocket frame codecs, looking them up by class
+        ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("decoder", new HttpResponseDecoder());
+        pipeline.addLast("encoder", new HttpRequestEncoder());
+        pipeline.addLast("handler", new FrameHandler(handshaker));
+
+        client.connect(pipeline).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    onClose(future.getCause());
+                    return;
+                }
+                channel = future.getChannel();
+                handshaker.handshake(channel);
+            }
+        });
+    }
+
+    @Override
+    public void send(String message) {
+        Channel current = channel;
+        if (current != null) {
+            current.write(new TextWebSocketFrame(isRaw() ? message : encodeMessages(message)));
+        }
+    }
+
+    @Override
+    public void close() {
+        // closed first, so the channel closing below is not taken for a server side close
+        onClose(null);
+        Channel current = channel;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private class FrameHandler extends SimpleChannelUpstreamHandler {
+
+        private final WebSocketClientHandshaker handshaker;
+
+        FrameHandler(WebSocketClientHandshaker handshaker) {
+            this.handshaker = handshaker;
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            Object message = e.getMessage();
+            if (!handshaker.isHandshakeComplete()) {
+                handshaker.finishHandshake(ctx.getChannel(), (HttpResponse) message);
+                if (isRaw()) {
+                    onOpen();
+                }
+            } else if (message instanceof TextWebSocketFrame) {
+                String text = ((TextWebSocketFrame) message).getText();
+                if (isRaw()) {
+                    onMessage(text);
+                } else {
+                    onFrame(text);
+                }
+            } else if (message instanceof PingWebSocketFrame) {
+                ctx.getChannel().write(new PongWebSocketFrame(((PingWebSocketFrame) message).getBinaryData()));
+            } else if (message instanceof CloseWebSocketFrame) {
+                onClose(new IOException("closed by server: " + ((CloseWebSocketFrame) message).getReasonText()));
+                ctx.getChannel().close();
+            }
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            onClose(isOpen() ? new IOException("connection closed") : new IOException("handshake failed"));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+            onClose(e.getCause());
+            ctx.getChannel().close();
+        }
+    }
+}
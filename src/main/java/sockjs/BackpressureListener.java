@@ -0,0 +1,23 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * Implemented by a {@link ConnectionListener} which wants to know when sessions of its endpoint
+ * fall behind. Called on the thread which crossed the watermark: the one sending a message
+ * for the high watermark and the I/O thread for the low one.
+ */
+public interface BackpressureListener {
+
+    /**
+     * Bytes waiting for the client reached the endpoint high watermark.
+     */
+    void onHighWaterMark(Connection connection);
+
+    /**
+     * Bytes waiting for the client fell to the endpoint low watermark after being above the high one.
+     */
+    void onLowWaterMark(Connection connection);
+}
@@ -0,0 +1,86 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import sockjs.metrics.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of messages sent to the clients in one frame, counted in power of two buckets:
+ * 1, 2, 3-4, 5-8 and so on up to {@value #MAX_BOUND}, the last bucket takes everything larger.
+ */
+public class BatchSizeHistogram implements Histogram {
+
+    public static final int MAX_BOUND = 1024;
+
+    private static final int BUCKETS = Integer.numberOfTrailingZeros(MAX_BOUND) + 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong sum = new AtomicLong();
+
+    public void record(int messages) {
+        if (messages > 0) {
+            counts.incrementAndGet(bucketOf(messages));
+            sum.addAndGet(messages);
+        }
+    }
+
+    @Override
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * @return largest batch size counted in the bucket, {@link Integer#MAX_VALUE} for the last one
+     */
+    @Override
+    public long getUpperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Integer.MAX_VALUE : 1 << bucket;
+    }
+
+    @Override
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * @return number of messages sent in all counted frames
+     */
+    @Override
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    private static int bucketOf(int messages) {
+        if (messages > MAX_BOUND) {
+            return BUCKETS - 1;
+        }
+        // index of the smallest power of two not less than messages
+        return 32 - Integer.numberOfLeadingZeros(messages - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < BUCKETS; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(i == BUCKETS - 1 ? ">" + MAX_BOUND : "<=" + getUpperBound(i)).append(": ").append(counts.get(i));
+        }
+        return sb.append('}').toString();
+    }
+}
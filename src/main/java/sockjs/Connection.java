@@ -4,107 +4,780 @@
  */
 package sockjs;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.DefaultChannelFuture;
 import org.jboss.netty.channel.UpstreamMessageEvent;
-import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.channel.socket.nio.NioChannelConfig;
 import org.jboss.netty.util.Timeout;
 import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sockjs.jfr.EventSink;
 import sockjs.netty.events.SockJsCloseEvent;
-import sockjs.netty.events.SockJsSendEvent;
+import sockjs.netty.EventLoops;
 import sockjs.transports.AbstractTransport;
+import sockjs.transports.EncodedFrame;
+import sockjs.transports.FrameEnvelope;
 import sockjs.transports.Protocol;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Connection {
 
-    private Channel channel;
+    private static final Logger log = LoggerFactory.getLogger(Connection.class);
 
-    private static HashedWheelTimer heartbeatTimer = new HashedWheelTimer();
-
-    private boolean keepSendingHeartbeat = false;
-
-    private volatile int heartbeatIntervalSec = 25;
+    private volatile Channel channel;
 
     private String id;
 
+    private final String sessionId;
+
     private final SockJs sockJs;
 
     private final String baseUrl;
 
+    private final String transportName;
+
+    private final SockJsMetrics.SessionMetrics metrics;
+
     private AtomicInteger sentBytes;
 
     private String jsonpCallback = null;
 
-    private ConcurrentLinkedQueue<String> messages;
+    private final MessageQueue messages;
 
     private Protocol.CloseReason closeReason;
 
     private String JSESSIONID;
 
-    private static final String[] EMTPY_MESSAGE_ARRAY = new String[] {};
+    private volatile long lastActivity;
+
+    private volatile long detachedSince;
+
+    private volatile long lastWrite;
+
+    private volatile long lastRead;
+
+    private final AtomicLong messagesIn = new AtomicLong();
+
+    private final AtomicLong messagesOut = new AtomicLong();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final AtomicInteger streamRecycles = new AtomicInteger();
+
+    private volatile long rttProbeStarted;
+
+    private volatile long smoothedRtt = -1;
+
+    private final long heartbeatDelay;
+
+    private volatile HeartbeatScheduler.Shard heartbeatShard;
+
+    private static final int FLUSH_IDLE = 0;
+
+    private static final int FLUSH_DELAYED = 1;
+
+    private static final int FLUSH_SCHEDULED = 2;
+
+    private final AtomicInteger flushState = new AtomicInteger(FLUSH_IDLE);
+
+    private final long batchMaxDelay;
+
+    private final int batchMaxMessages;
+
+    private final int batchMaxBytes;
+
+    private volatile Channel flushChannel;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final Set<String> topics = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+
+    private volatile SerialExecutor listenerExecutor;
+
+    private final int highWaterMark;
 
-    public Connection(SockJs sockJs, String baseUrl) {
+    private final int lowWaterMark;
+
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    private volatile boolean aboveHighWaterMark;
+
+    private DefaultChannelFuture writableFuture;
+
+    /**
+     * Latency of the messages taken for the next write, set and taken on the I/O thread.
+     */
+    private WriteLatency pendingWrite;
+
+    /**
+     * Futures of queued messages sent with {@link #sendWithFuture(String)}, oldest first,
+     * guarded by the queue lock.
+     */
+    private ArrayDeque<SendBatch> sendBatches;
+
+    /**
+     * Newest batch, joined by further sends until messages are taken from the queue.
+     */
+    private SendBatch openBatch;
+
+    /**
+     * Frame queued by a fan-out whose encoded form may be written instead of draining the queue,
+     * as long as it is the only queued message, guarded by the queue lock.
+     */
+    private EncodedFrame directFrame;
+
+    private long directFrameSeq;
+
+    private final ChannelFutureListener markDetached = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future)
+                throws Exception {
+            if (future.getChannel() == channel) {
+                detachedSince = System.currentTimeMillis();
+            }
+        }
+    };
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            Channel scheduledChannel = flushChannel;
+            // cleared before draining: a message queued after the drain schedules the task again
+            flushState.set(FLUSH_IDLE);
+
+            Channel currentChannel = getChannel();
+            if (currentChannel == null || !currentChannel.isWritable() || !hasMessages()) {
+                return;
+            }
+            if (currentChannel != scheduledChannel) {
+                // session was moved to another channel meanwhile, which may belong to another worker
+                scheduleFlush(currentChannel);
+                return;
+            }
+            Transport transport = AbstractTransport.getTransport(currentChannel);
+            if (transport != null) {
+                transport.flushMessages(Connection.this);
+            }
+        }
+    };
+
+    /**
+     * Ends the batching delay, runs on the batch timer thread.
+     */
+    private final TimerTask delayedFlush = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+            Channel channel = flushChannel;
+            if (flushState.compareAndSet(FLUSH_DELAYED, FLUSH_SCHEDULED)) {
+                EventLoops.execute(channel, flushTask);
+            }
+        }
+    };
+
+    public Connection(SockJs sockJs, String baseUrl, String sessionId) {
+        this(sockJs, baseUrl, sessionId, null);
+    }
+
+    /**
+     * @param transportName name of the transport which opened the session, null if not known
+     */
+    public Connection(SockJs sockJs, String baseUrl, String sessionId, String transportName) {
         this.sockJs = sockJs;
         this.baseUrl = baseUrl;
+        this.sessionId = sessionId;
+        this.transportName = transportName;
+        this.metrics = sockJs.getMetrics().forSession(baseUrl, transportName);
+        metrics.opened.increment();
         this.id = UUID.randomUUID().toString();
         this.sentBytes = new AtomicInteger();
-        this.messages = new ConcurrentLinkedQueue<String>();
+        EndpointInfo info = sockJs.getEndpointInfoOrDefault(baseUrl);
+        this.messages = new MessageQueue(info.getMaxQueueSize());
+        this.highWaterMark = info.getHighWaterMark();
+        this.lowWaterMark = info.getLowWaterMark();
+        this.slowConsumerPolicy = info.getSlowConsumerPolicy();
+        this.heartbeatDelay = info.getHeartbeatDelay();
+        this.batchMaxDelay = info.getBatchMaxDelay();
+        this.batchMaxMessages = info.getBatchMaxMessages();
+        this.batchMaxBytes = info.getBatchMaxBytes();
+        this.lastActivity = System.currentTimeMillis();
+        this.detachedSince = lastActivity;
+        this.lastWrite = lastActivity;
+        this.lastRead = lastActivity;
     }
 
     public void setChannel(Channel channel) {
         this.channel = channel;
+        touch();
+        if (channel != null) {
+            long probeStarted = rttProbeStarted;
+            if (probeStarted != 0) {
+                rttProbeStarted = 0;
+                recordRtt(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - probeStarted));
+            }
+            channel.getCloseFuture().addListener(markDetached);
+            applyWaterMarks(channel.getConfig());
+            sockJs.attachHeartbeat(this, channel);
+        } else {
+            detachedSince = lastActivity;
+        }
+    }
+
+    /**
+     * Makes NIO channel report itself unwritable at the same watermarks the session queue uses.
+     */
+    private void applyWaterMarks(ChannelConfig config) {
+        if (!(config instanceof NioChannelConfig)) {
+            return;
+        }
+        NioChannelConfig nioConfig = (NioChannelConfig) config;
+        if (highWaterMark < nioConfig.getWriteBufferLowWaterMark()) {
+            nioConfig.setWriteBufferLowWaterMark(lowWaterMark);
+            nioConfig.setWriteBufferHighWaterMark(highWaterMark);
+        } else {
+            nioConfig.setWriteBufferHighWaterMark(highWaterMark);
+            nioConfig.setWriteBufferLowWaterMark(lowWaterMark);
+        }
     }
 
     public Channel getChannel() {
         return channel;
     }
 
-    public boolean isKeepSendingHeartbeat() {
-        return keepSendingHeartbeat;
+    /**
+     * @return time in milliseconds without writes after which the session gets a heartbeat
+     */
+    public long getHeartbeatDelay() {
+        return heartbeatDelay;
+    }
+
+    /**
+     * @return time of the last write to the client
+     */
+    public long getLastWrite() {
+        return lastWrite;
+    }
+
+    void markWritten(long now) {
+        lastWrite = now;
     }
 
-    public void setKeepSendingHeartbeat(boolean keepSendingHeartbeat) {
-        this.keepSendingHeartbeat = keepSendingHeartbeat;
+    HeartbeatScheduler.Shard getHeartbeatShard() {
+        return heartbeatShard;
     }
 
-    public int getHeartbeatIntervalSec() {
-        return heartbeatIntervalSec;
+    void setHeartbeatShard(HeartbeatScheduler.Shard heartbeatShard) {
+        this.heartbeatShard = heartbeatShard;
     }
 
     public String getId() {
         return id;
     }
 
+    public String getSessionId() {
+        return sessionId;
+    }
+
     public String getBaseUrl() {
         return baseUrl;
     }
 
-    public void setHeartbeatIntervalSec(int heartbeatIntervalSec) {
-        this.heartbeatIntervalSec = heartbeatIntervalSec;
+    /**
+     * @return name of the transport which opened the session or null if not known
+     */
+    public String getTransportName() {
+        return transportName;
     }
 
-    public void startHeartbeat() {
-        setKeepSendingHeartbeat(true);
-        startHeartbeat(this);
+    /**
+     * @return true if the session currently has an open channel to the client
+     */
+    public boolean isAttached() {
+        Channel currentChannel = channel;
+        return currentChannel != null && currentChannel.isOpen();
     }
 
-    public void addMessageToBuffer(String message) {
-        messages.add(message);
+    public long getDetachedSince() {
+        return detachedSince;
     }
 
-    public void sendToChannel(String message) {
-        addMessageToBuffer(message);
-        if (getChannel() != null && getChannel().isWritable()) {
-            AbstractTransport.sendUpstream(getChannel(), new SockJsSendEvent(this));
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * @return false if the message was dropped because the outbound queue is full or
+     *         by the slow consumer policy of the endpoint
+     */
+    public boolean addMessageToBuffer(String message) {
+        if (!admitMessage()) {
+            return false;
+        }
+        if (!messages.offer(message)) {
+            dropMessage();
+            return false;
         }
+        checkHighWaterMark();
+        EventSink.INSTANCE.messageEnqueued(this, message.length());
+        return true;
+    }
+
+    /**
+     * @return false if the message was dropped because the outbound queue is full or
+     *         by the slow consumer policy of the endpoint
+     */
+    public boolean addMessageToBuffer(ChannelBuffer message) {
+        if (!admitMessage()) {
+            return false;
+        }
+        if (!messages.offer(message)) {
+            dropMessage();
+            return false;
+        }
+        checkHighWaterMark();
+        EventSink.INSTANCE.messageEnqueued(this, message.readableBytes());
+        return true;
+    }
+
+    /**
+     * @return true if the session has reached the high watermark and has not fallen to the low one yet
+     */
+    public boolean isAboveHighWaterMark() {
+        return aboveHighWaterMark;
+    }
+
+    /**
+     * @return future completed when the bytes waiting for the client fall to the low watermark,
+     *         already completed if the session is not above the high watermark,
+     *         failed if the session is closed meanwhile
+     */
+    public ChannelFuture getWritableFuture() {
+        synchronized (this) {
+            if (aboveHighWaterMark && !isClosed()) {
+                if (writableFuture == null) {
+                    writableFuture = new DefaultChannelFuture(channel, false);
+                }
+                return writableFuture;
+            }
+        }
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        future.setSuccess();
+        return future;
+    }
+
+    /**
+     * Applies slow consumer policy when the session is above the high watermark.
+     *
+     * @return false if the new message must not be queued
+     */
+    private boolean admitMessage() {
+        if (messages.bytes() < highWaterMark) {
+            return true;
+        }
+
+        switch (slowConsumerPolicy) {
+            case DROP_OLDEST:
+                while (messages.bytes() >= highWaterMark && dropOldest()) {
+                    sockJs.onMessageDropped(this);
+                }
+                return true;
+            case DROP_NEWEST:
+                sockJs.onMessageDropped(this);
+                return false;
+            case DISCONNECT:
+                disconnectSlowConsumer();
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private boolean dropOldest() {
+        SendBatch dropped = null;
+        synchronized (messages) {
+            if (!messages.dropOldest()) {
+                return false;
+            }
+            // the oldest batch holds the dropped message if it starts before the next one queued,
+            // it fails even if more of its messages are still queued
+            if (sendBatches != null && !sendBatches.isEmpty()
+                    && sendBatches.peek().firstSeq <= messages.getTakenCount()) {
+                dropped = sendBatches.poll();
+                if (dropped == openBatch) {
+                    openBatch = null;
+                }
+            }
+        }
+        if (dropped != null) {
+            dropped.setFailure(new MessageDroppedException("message dropped by the slow consumer policy"));
+        }
+        return true;
+    }
+
+    private void dropMessage() {
+        log.warn("Outbound queue of session " + sessionId + " is full, message dropped");
+        sockJs.onMessageDropped(this);
+    }
+
+    private void checkHighWaterMark() {
+        if (aboveHighWaterMark || messages.bytes() < highWaterMark) {
+            return;
+        }
+        synchronized (this) {
+            if (aboveHighWaterMark) {
+                return;
+            }
+            aboveHighWaterMark = true;
+        }
+        sockJs.onHighWaterMark(this);
+    }
+
+    private void checkLowWaterMark() {
+        if (!aboveHighWaterMark || messages.bytes() > lowWaterMark) {
+            return;
+        }
+        DefaultChannelFuture future;
+        synchronized (this) {
+            if (!aboveHighWaterMark) {
+                return;
+            }
+            aboveHighWaterMark = false;
+            future = writableFuture;
+            writableFuture = null;
+        }
+        if (future != null) {
+            future.setSuccess();
+        }
+        sockJs.onLowWaterMark(this);
+    }
+
+    private void disconnectSlowConsumer() {
+        final Channel currentChannel = getChannel();
+        if (isClosed()) {
+            return;
+        }
+        closeReason = Protocol.CloseReason.SLOW_CONSUMER;
+        if (sockJs.closeConnection(this)) {
+            log.warn("Session " + sessionId + " is disconnected as a slow consumer");
+            sockJs.onSlowConsumerDisconnected(this);
+            if (currentChannel != null && currentChannel.isOpen()) {
+                currentChannel.getPipeline().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        AbstractTransport.sendUpstream(currentChannel,
+                                new SockJsCloseEvent(Connection.this, Protocol.CloseReason.SLOW_CONSUMER));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Sends message encoded once for many connections. Like {@link #sendToChannel(String)} it is
+     * queued right away, so it keeps its place among other messages sent by the same thread.
+     */
+    public void sendFrame(EncodedFrame frame) {
+        if (!queueFrame(frame, false)) {
+            return;
+        }
+        Channel currentChannel = getChannel();
+        if (currentChannel != null && currentChannel.isWritable()) {
+            requestFlush(currentChannel);
+        }
+    }
+
+    /**
+     * Queues the frame payload, with direct set {@link #writeFrame(EncodedFrame)} is expected to
+     * follow on the I/O thread of the channel.
+     *
+     * @return false if the message was dropped
+     */
+    boolean queueFrame(EncodedFrame frame, boolean direct) {
+        if (!admitMessage()) {
+            return false;
+        }
+        ChannelBuffer payload = frame.getPayload();
+        boolean queued;
+        synchronized (messages) {
+            queued = messages.offer(payload);
+            if (queued && direct && batchMaxDelay == 0) {
+                directFrame = frame;
+                directFrameSeq = messages.getOfferedCount();
+            }
+        }
+        if (!queued) {
+            dropMessage();
+            return false;
+        }
+        checkHighWaterMark();
+        EventSink.INSTANCE.messageEnqueued(this, payload.readableBytes());
+        return true;
+    }
+
+    /**
+     * Sends a frame queued with {@link #queueFrame(EncodedFrame, boolean)}, must be called on the
+     * I/O thread of the channel. Encoded frame is written as is if nothing was queued around it,
+     * otherwise the whole queue is drained in order.
+     */
+    void writeFrame(EncodedFrame frame) {
+        Channel currentChannel = getChannel();
+        if (currentChannel == null || !currentChannel.isOpen() || !currentChannel.isWritable()) {
+            // stays queued until the channel is writable or the session is attached again
+            return;
+        }
+        if (batchMaxDelay > 0) {
+            requestFlush(currentChannel);
+            return;
+        }
+        Transport transport = AbstractTransport.getTransport(currentChannel);
+        if (transport == null) {
+            return;
+        }
+
+        int enqueuedAt = 0;
+        List<SendBatch> sends = null;
+        boolean single;
+        synchronized (messages) {
+            single = directFrame == frame && messages.size() == 1
+                    && messages.getOfferedCount() == directFrameSeq;
+            directFrame = null;
+            if (single) {
+                enqueuedAt = messages.getOldestEnqueuedAt();
+                messages.dropOldest();
+                sends = takeSendBatches();
+            }
+        }
+        if (!single) {
+            transport.flushMessages(this);
+            return;
+        }
+        markWritten(System.currentTimeMillis());
+        setPendingWrite(new WriteLatency(metrics, new int[]{enqueuedAt}, 1, MessageQueue.micros(), sends));
+        countWritten(1, frame.getFrame().readableBytes());
+        transport.sendFrame(this, frame);
+        checkLowWaterMark();
+    }
+
+    /**
+     * Queues the message and asks the I/O thread of the channel to send the queue, so listeners
+     * running on other threads never write to the channel themselves.
+     *
+     * @return false if the message was dropped, either by the slow consumer policy or because
+     *         the queue holds {@link EndpointInfo#getMaxQueueSize()} bytes already, which happens
+     *         with the default policy too
+     */
+    public boolean sendToChannel(String message) {
+        if (!addMessageToBuffer(message)) {
+            return false;
+        }
+        Channel currentChannel = getChannel();
+        if (currentChannel != null && currentChannel.isWritable()) {
+            requestFlush(currentChannel);
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #sendToChannel(String)} but tells when the message is written.
+     * <p/>
+     * Messages sent before the session queue is drained share one future, done once the write
+     * carrying them is. Listeners of the future are notified on the I/O thread and must not block.
+     * <p/>
+     * The slow consumer policy drops single messages, a shared future fails as soon as any of its
+     * messages is dropped even though the rest of them stay queued and are written later.
+     *
+     * @return future completed when the message is written to the socket, failed with
+     *         {@link MessageDroppedException} if the message is not queued or at least one message
+     *         sharing the future is dropped from the queue, and with {@link ClosedChannelException}
+     *         if the session is closed first
+     */
+    public ChannelFuture sendWithFuture(String message) {
+        if (!admitMessage()) {
+            return failedFuture(isClosed() ? new ClosedChannelException()
+                    : new MessageDroppedException("message dropped by the slow consumer policy"));
+        }
+        SendBatch batch;
+        synchronized (messages) {
+            if (isClosed()) {
+                return failedFuture(new ClosedChannelException());
+            }
+            batch = messages.offer(message) ? joinSendBatch() : null;
+        }
+        if (batch == null) {
+            dropMessage();
+            return failedFuture(new MessageDroppedException("outbound queue is full"));
+        }
+        checkHighWaterMark();
+        EventSink.INSTANCE.messageEnqueued(this, message.length());
+
+        Channel currentChannel = getChannel();
+        if (currentChannel != null && currentChannel.isWritable()) {
+            requestFlush(currentChannel);
+        }
+        return batch;
+    }
+
+    /**
+     * Must be called holding the queue lock right after the message is queued.
+     */
+    private SendBatch joinSendBatch() {
+        long seq = messages.getOfferedCount();
+        SendBatch batch = openBatch;
+        if (batch == null) {
+            batch = new SendBatch(channel, seq);
+            if (sendBatches == null) {
+                sendBatches = new ArrayDeque<SendBatch>(4);
+            }
+            sendBatches.add(batch);
+            openBatch = batch;
+        }
+        batch.lastSeq = seq;
+        return batch;
+    }
+
+    /**
+     * Must be called holding the queue lock right after messages are taken for a write.
+     *
+     * @return batches whose messages have all been taken or null if there are none
+     */
+    private List<SendBatch> takeSendBatches() {
+        openBatch = null;
+        if (sendBatches == null || sendBatches.isEmpty()) {
+            return null;
+        }
+        long taken = messages.getTakenCount();
+        List<SendBatch> done = null;
+        while (!sendBatches.isEmpty() && sendBatches.peek().lastSeq <= taken) {
+            if (done == null) {
+                done = new ArrayList<SendBatch>(2);
+            }
+            done.add(sendBatches.poll());
+        }
+        return done;
+    }
+
+    private ChannelFuture failedFuture(Throwable cause) {
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        future.setFailure(cause);
+        return future;
+    }
+
+    /**
+     * Asks the I/O thread of the channel to send everything queued so far.
+     */
+    void flush() {
+        Channel currentChannel = getChannel();
+        if (currentChannel != null && currentChannel.isWritable() && hasMessages()) {
+            scheduleFlush(currentChannel);
+        }
+    }
+
+    /**
+     * Hands the flush task to the I/O thread of the channel unless it is already pending there,
+     * so any number of sends made meanwhile end up in a single drain of the queue.
+     */
+    private void scheduleFlush(Channel channel) {
+        while (true) {
+            int state = flushState.get();
+            if (state == FLUSH_SCHEDULED) {
+                return;
+            }
+            // takes over a delayed flush, its timer may only send a later batch a bit early
+            if (flushState.compareAndSet(state, FLUSH_SCHEDULED)) {
+                flushChannel = channel;
+                EventLoops.execute(channel, flushTask);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flushes right away unless the endpoint batches messages, then the flush waits for the batch
+     * delay to pass or for the batch to fill up.
+     */
+    private void requestFlush(Channel channel) {
+        if (batchMaxDelay == 0 || messages.size() >= batchMaxMessages || messages.bytes() >= batchMaxBytes) {
+            scheduleFlush(channel);
+        } else if (flushState.compareAndSet(FLUSH_IDLE, FLUSH_DELAYED)) {
+            flushChannel = channel;
+            sockJs.getBatchTimer().newTimeout(delayedFlush, batchMaxDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Subscribes the session to messages published to the topic with {@link SockJs#publish(String, String)}.
+     * Subscriptions are dropped when the session is closed.
+     *
+     * @return false if the session is already subscribed or closed
+     */
+    public boolean subscribe(String topic) {
+        if (isClosed() || !topics.add(topic)) {
+            return false;
+        }
+        sockJs.subscribe(this, topic);
+        if (isClosed()) {
+            // raced with close which could have missed this topic
+            unsubscribe(topic);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the session was not subscribed to the topic
+     */
+    public boolean unsubscribe(String topic) {
+        if (!topics.remove(topic)) {
+            return false;
+        }
+        sockJs.unsubscribe(this, topic);
+        return true;
+    }
+
+    public Set<String> getTopics() {
+        return Collections.unmodifiableSet(topics);
     }
 
     public void sendToListeners(String message) {
-        sockJs.notifyListeners(this, message);
+        sendToListeners(message, getChannel());
+    }
+
+    /**
+     * @param source channel the message was read from, its reading can be suspended
+     *               when listeners of the endpoint fall behind
+     */
+    public void sendToListeners(String message, Channel source) {
+        touch();
+        metrics.messagesIn.increment();
+        messagesIn.incrementAndGet();
+        sockJs.notifyListeners(this, message, source);
     }
 
     public int getSentBytes() {
@@ -115,8 +788,65 @@ public class Connection {
         sentBytes.addAndGet(byValue);
     }
 
+    /**
+     * Called by streaming transports ending the response after {@link SockJs#getMaxStreamSize()} bytes.
+     */
     public void resetSentBytes() {
-        sentBytes.set(0);
+        int bytes = sentBytes.getAndSet(0);
+        metrics.streamRecycles.increment();
+        streamRecycles.incrementAndGet();
+        EventSink.INSTANCE.streamRecycled(this, bytes);
+    }
+
+    /**
+     * Counts bytes of a client frame or request body carrying messages to the listeners.
+     */
+    public void incReceivedBytes(int byValue) {
+        lastRead = System.currentTimeMillis();
+        metrics.bytesIn.add(byValue);
+        bytesIn.addAndGet(byValue);
+    }
+
+    private void countWritten(int messageCount, int byteCount) {
+        metrics.messagesOut.add(messageCount);
+        metrics.bytesOut.add(byteCount);
+        messagesOut.addAndGet(messageCount);
+        bytesOut.addAndGet(byteCount);
+    }
+
+    /**
+     * Called by polling transports answering the poll with a heartbeat. The client polls again
+     * right after it, so the time until the next poll arrives is taken as a round trip.
+     */
+    public void startRttProbe() {
+        rttProbeStarted = System.nanoTime();
+    }
+
+    /**
+     * Adds a round trip sample to the smoothed RTT, weighted by 1/8 as TCP does.
+     */
+    public void recordRtt(long micros) {
+        if (micros < 0) {
+            return;
+        }
+        long rtt = smoothedRtt;
+        smoothedRtt = rtt < 0 ? micros : rtt + (micros - rtt) / 8;
+    }
+
+    /**
+     * @return smoothed round trip time in microseconds, -1 if there are no samples yet
+     */
+    public long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    /**
+     * @return snapshot of the session counters, which unlike {@link #getSentBytes()} are not
+     *         reset when the stream is recycled
+     */
+    public ConnectionStats getStats() {
+        return new ConnectionStats(transportName, messagesIn.get(), messagesOut.get(), bytesIn.get(), bytesOut.get(),
+                messages.size(), messages.bytes(), lastRead, lastWrite, streamRecycles.get(), smoothedRtt);
     }
 
     public String getJsonpCallback() {
@@ -127,22 +857,162 @@ public class Connection {
         this.jsonpCallback = jsonpCallback;
     }
 
-    public String pollMessage() {
-        return messages.poll();
+    /**
+     * @return raw UTF-8 bytes of the oldest queued message or null if there is nothing to send
+     */
+    public ChannelBuffer pollMessage() {
+        ChannelBuffer message;
+        int enqueuedAt = 0;
+        List<SendBatch> sends = null;
+        synchronized (messages) {
+            if (!messages.isEmpty()) {
+                enqueuedAt = messages.getOldestEnqueuedAt();
+            }
+            message = messages.poll();
+            if (message != null) {
+                directFrame = null;
+                sends = takeSendBatches();
+            }
+        }
+        if (message != null) {
+            setPendingWrite(new WriteLatency(metrics, new int[]{enqueuedAt}, 1, MessageQueue.micros(), sends));
+            markWritten(System.currentTimeMillis());
+            countWritten(1, message.readableBytes());
+        }
+        checkLowWaterMark();
+        return message;
+    }
+
+    /**
+     * Takes all queued messages encoded as one SockJS array frame.
+     *
+     * @return frame or null if there is nothing to send
+     */
+    public ChannelBuffer drainMessages() {
+        return drainMessages(FrameEnvelope.NONE);
+    }
+
+    /**
+     * Takes all queued messages encoded as one SockJS array frame already wrapped into
+     * the transport envelope.
+     *
+     * @return enveloped frame or null if there is nothing to send
+     */
+    public ChannelBuffer drainMessages(FrameEnvelope envelope) {
+        Object flushEvent = EventSink.INSTANCE.beginFlush();
+        int count;
+        int[] enqueuedAt;
+        int drained = MessageQueue.micros();
+        ChannelBuffer frame;
+        List<SendBatch> sends = null;
+        synchronized (messages) {
+            count = messages.size();
+            enqueuedAt = new int[count];
+            frame = messages.drainFrame(envelope, this, enqueuedAt);
+            if (frame != null) {
+                directFrame = null;
+                sends = takeSendBatches();
+            }
+        }
+        if (frame != null) {
+            setPendingWrite(new WriteLatency(metrics, enqueuedAt, count, drained, sends));
+            markWritten(System.currentTimeMillis());
+            sockJs.getBatchSizes().record(count);
+            countWritten(count, frame.readableBytes());
+            EventSink.INSTANCE.endFlush(flushEvent, this, count, frame.readableBytes());
+        }
+        checkLowWaterMark();
+        return frame;
+    }
+
+    private void setPendingWrite(WriteLatency latency) {
+        WriteLatency previous = pendingWrite;
+        if (previous != null) {
+            latency.takeSends(previous);
+        }
+        pendingWrite = latency;
+    }
+
+    /**
+     * Called for every write to the session channel, passes the latency of the messages taken
+     * for this write and their send futures to its future.
+     *
+     * @return listener recording latency of the drained messages or null if none were drained
+     */
+    public ChannelFutureListener takeWriteListener() {
+        WriteLatency latency = pendingWrite;
+        if (latency != null) {
+            pendingWrite = null;
+        }
+        return latency;
+    }
+
+    public boolean hasMessages() {
+        return !messages.isEmpty();
+    }
+
+    public int getQueuedMessages() {
+        return messages.size();
+    }
+
+    public int getQueuedBytes() {
+        return messages.bytes();
     }
 
-    public String[] pollAllMessages() {
-        if (messages.isEmpty()) {
-            return EMTPY_MESSAGE_ARRAY;
+    /**
+     * Marks the session closed and drops everything still queued for the client.
+     * Only the first call has any effect.
+     *
+     * @param reason why the session is closed if no close reason is sent to the client, may be null
+     * @return true if this call closed the session
+     */
+    boolean markClosed(String reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        EventSink.INSTANCE.sessionClosed(this, closeReason != null ? closeReason.name() : reason);
+        ArrayDeque<SendBatch> pendingSends;
+        synchronized (messages) {
+            messages.clear();
+            directFrame = null;
+            pendingSends = sendBatches;
+            sendBatches = null;
+            openBatch = null;
+        }
+        metrics.closed.increment();
+        if (pendingSends != null) {
+            for (SendBatch send : pendingSends) {
+                send.setFailure(new ClosedChannelException());
+            }
         }
 
-        int numOfMessages = messages.size();
-        String[] polledMessages = new String[numOfMessages];
-        for (int i = 0; i < numOfMessages; i++) {
-            polledMessages[i] = messages.poll();
+        DefaultChannelFuture future;
+        synchronized (this) {
+            future = writableFuture;
+            writableFuture = null;
+        }
+        if (future != null) {
+            future.setFailure(new ClosedChannelException());
         }
+        return true;
+    }
 
-        return polledMessages;
+    /**
+     * @return executor running listener callbacks of the session one by one on the given pool,
+     *         created on the first call
+     */
+    SerialExecutor getListenerExecutor(Executor pool) {
+        SerialExecutor executor = listenerExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = listenerExecutor;
+                if (executor == null) {
+                    executor = new SerialExecutor(pool);
+                    listenerExecutor = executor;
+                }
+            }
+        }
+        return executor;
     }
 
     public Protocol.CloseReason getCloseReason() {
@@ -165,21 +1035,4 @@ public class Connection {
     public void setJSESSIONID(String JSESSIONID) {
         this.JSESSIONID = JSESSIONID;
     }
-
-    private static void startHeartbeat(final Connection connection) {
-
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run(Timeout timeout)
-                    throws Exception {
-                if (connection.isKeepSendingHeartbeat() && connection.getChannel().isWritable()) {
-                    // TODO: send heartbeat event
-                    heartbeatTimer.newTimeout(this, connection
-                            .getHeartbeatIntervalSec(), TimeUnit.SECONDS);
-                }
-            }
-        };
-
-        heartbeatTimer.newTimeout(timerTask, connection.getHeartbeatIntervalSec(), TimeUnit.SECONDS);
-    }
 }
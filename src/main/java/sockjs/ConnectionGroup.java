@@ -0,0 +1,41 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of connections which receive the same messages, see {@link SockJs#broadcast(ConnectionGroup, String)}.
+ * Closed connections are dropped from the group on the next broadcast.
+ */
+public class ConnectionGroup implements Iterable<Connection> {
+
+    private final Set<Connection> connections =
+            Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+    public boolean add(Connection connection) {
+        return connections.add(connection);
+    }
+
+    public boolean remove(Connection connection) {
+        return connections.remove(connection);
+    }
+
+    public boolean contains(Connection connection) {
+        return connections.contains(connection);
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    @Override
+    public Iterator<Connection> iterator() {
+        return connections.iterator();
+    }
+}
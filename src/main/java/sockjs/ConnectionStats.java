@@ -0,0 +1,129 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * Snapshot of the counters of one session, counted since the session was opened.
+ */
+public class ConnectionStats {
+
+    private final String transport;
+
+    private final long messagesIn;
+
+    private final long messagesOut;
+
+    private final long bytesIn;
+
+    private final long bytesOut;
+
+    private final int queuedMessages;
+
+    private final int queuedBytes;
+
+    private final long lastRead;
+
+    private final long lastWrite;
+
+    private final int streamRecycles;
+
+    private final long smoothedRtt;
+
+    ConnectionStats(String transport, long messagesIn, long messagesOut, long bytesIn, long bytesOut,
+                    int queuedMessages, int queuedBytes, long lastRead, long lastWrite, int streamRecycles,
+                    long smoothedRtt) {
+        this.transport = transport;
+        this.messagesIn = messagesIn;
+        this.messagesOut = messagesOut;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.queuedMessages = queuedMessages;
+        this.queuedBytes = queuedBytes;
+        this.lastRead = lastRead;
+        this.lastWrite = lastWrite;
+        this.streamRecycles = streamRecycles;
+        this.smoothedRtt = smoothedRtt;
+    }
+
+    /**
+     * @return name of the transport which opened the session, null if not known
+     */
+    public String getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return messages received from the client and passed to the listeners
+     */
+    public long getMessagesIn() {
+        return messagesIn;
+    }
+
+    /**
+     * @return messages written to the client
+     */
+    public long getMessagesOut() {
+        return messagesOut;
+    }
+
+    /**
+     * @return bytes of client frames carrying messages
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return bytes of frames carrying messages to the client
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public int getQueuedMessages() {
+        return queuedMessages;
+    }
+
+    public int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return time of the last frame with messages from the client, or of opening the session
+     */
+    public long getLastRead() {
+        return lastRead;
+    }
+
+    /**
+     * @return time of the last write to the client, heartbeats included
+     */
+    public long getLastWrite() {
+        return lastWrite;
+    }
+
+    /**
+     * @return streaming responses ended after reaching the max stream size
+     */
+    public int getStreamRecycles() {
+        return streamRecycles;
+    }
+
+    /**
+     * @return smoothed round trip time in microseconds, from websocket pings or from polls
+     *         answered with a heartbeat, -1 if not measured yet
+     */
+    public long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    @Override
+    public String toString() {
+        return "{transport: " + transport + ", messagesIn: " + messagesIn + ", messagesOut: " + messagesOut
+                + ", bytesIn: " + bytesIn + ", bytesOut: " + bytesOut + ", queuedMessages: " + queuedMessages
+                + ", queuedBytes: " + queuedBytes + ", lastRead: " + lastRead + ", lastWrite: " + lastWrite
+                + ", streamRecycles: " + streamRecycles + ", rtt: " + smoothedRtt + "us}";
+    }
+}
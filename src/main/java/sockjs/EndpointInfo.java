@@ -16,6 +16,38 @@ public class EndpointInfo {
 
     private boolean cookiesNeeded = false;
 
+    private long disconnectDelay = 5000;
+
+    private long idleTimeout = 0;
+
+    private long heartbeatDelay = 25000;
+
+    private int maxQueueSize = 1024 * 1024; // 1MiB
+
+    private int highWaterMark = 256 * 1024; // 256KiB
+
+    private int lowWaterMark = 64 * 1024; // 64KiB
+
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.BLOCK;
+
+    private ListenerDispatch listenerDispatch = ListenerDispatch.INLINE;
+
+    private int listenerThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    private int maxSessionThreads = 512;
+
+    private long maxPendingInboundBytes = 16 * 1024 * 1024; // 16MiB
+
+    private int ringSize = 8192;
+
+    private RingWaitStrategy ringWaitStrategy = RingWaitStrategy.PARK;
+
+    private long batchMaxDelay = 0;
+
+    private int batchMaxMessages = 256;
+
+    private int batchMaxBytes = 64 * 1024; // 64KiB
+
     public boolean isWebSocketEnabled() {
         return webSocketEnabled;
     }
@@ -32,6 +64,222 @@ public class EndpointInfo {
         this.cookiesNeeded = cookiesNeeded;
     }
 
+    /**
+     * @return time in milliseconds a session without an open channel is kept before it expires
+     */
+    public long getDisconnectDelay() {
+        return disconnectDelay;
+    }
+
+    public void setDisconnectDelay(long disconnectDelay) {
+        if (disconnectDelay < 0) {
+            throw new IllegalArgumentException("disconnect delay can not be negative");
+        }
+        this.disconnectDelay = disconnectDelay;
+    }
+
+    /**
+     * @return time in milliseconds a session without any activity is kept before it expires,
+     *         0 means that only the disconnect delay is applied
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("idle timeout can not be negative");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return time in milliseconds a session may stay without writes before it gets a heartbeat frame
+     */
+    public long getHeartbeatDelay() {
+        return heartbeatDelay;
+    }
+
+    public void setHeartbeatDelay(long heartbeatDelay) {
+        if (heartbeatDelay < 1000) {
+            throw new IllegalArgumentException("heartbeat delay can not be smaller 1 second");
+        }
+        this.heartbeatDelay = heartbeatDelay;
+    }
+
+    /**
+     * @return maximum number of bytes queued for a single session, messages over it are dropped
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 1024) {
+            throw new IllegalArgumentException("max queue size can not be smaller 1KiB");
+        }
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * @return number of bytes waiting for the client which makes the session a slow consumer,
+     *         also used as the write buffer high watermark of NIO channels
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Sets both watermarks, a session stops being a slow consumer when its pending bytes fall
+     * to the low watermark.
+     */
+    public void setWaterMarks(int lowWaterMark, int highWaterMark) {
+        if (lowWaterMark < 0 || highWaterMark <= lowWaterMark) {
+            throw new IllegalArgumentException("low watermark must be positive and less than the high one");
+        }
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        setWaterMarks(lowWaterMark, highWaterMark);
+    }
+
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    public void setLowWaterMark(int lowWaterMark) {
+        setWaterMarks(lowWaterMark, highWaterMark);
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        if (slowConsumerPolicy == null) {
+            throw new IllegalArgumentException("slow consumer policy can not be null");
+        }
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public ListenerDispatch getListenerDispatch() {
+        return listenerDispatch;
+    }
+
+    /**
+     * Sets where listener callbacks of the endpoint run. Takes effect only if set before
+     * the first event of the endpoint is dispatched.
+     */
+    public void setListenerDispatch(ListenerDispatch listenerDispatch) {
+        if (listenerDispatch == null) {
+            throw new IllegalArgumentException("listener dispatch can not be null");
+        }
+        this.listenerDispatch = listenerDispatch;
+    }
+
+    /**
+     * @return number of pool threads running listener callbacks in {@link ListenerDispatch#ORDERED_POOL} mode
+     */
+    public int getListenerThreads() {
+        return listenerThreads;
+    }
+
+    public void setListenerThreads(int listenerThreads) {
+        if (listenerThreads < 1) {
+            throw new IllegalArgumentException("listener threads can not be less than 1");
+        }
+        this.listenerThreads = listenerThreads;
+    }
+
+    /**
+     * @return maximum number of platform threads in {@link ListenerDispatch#SESSION_THREAD} mode
+     *         on runtimes without virtual threads
+     */
+    public int getMaxSessionThreads() {
+        return maxSessionThreads;
+    }
+
+    public void setMaxSessionThreads(int maxSessionThreads) {
+        if (maxSessionThreads < 1) {
+            throw new IllegalArgumentException("max session threads can not be less than 1");
+        }
+        this.maxSessionThreads = maxSessionThreads;
+    }
+
+    /**
+     * @return memory in bytes inbound messages waiting for listeners may hold before reading
+     *         from the clients is suspended, applies to dispatch modes other than inline
+     */
+    public long getMaxPendingInboundBytes() {
+        return maxPendingInboundBytes;
+    }
+
+    public void setMaxPendingInboundBytes(long maxPendingInboundBytes) {
+        if (maxPendingInboundBytes < 1024) {
+            throw new IllegalArgumentException("max pending inbound bytes can not be smaller 1KiB");
+        }
+        this.maxPendingInboundBytes = maxPendingInboundBytes;
+    }
+
+    /**
+     * @return number of slots of the rings in {@link ListenerDispatch#RING} mode
+     */
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    public void setRingSize(int ringSize) {
+        if (ringSize < 2 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("ring size must be a power of two");
+        }
+        this.ringSize = ringSize;
+    }
+
+    public RingWaitStrategy getRingWaitStrategy() {
+        return ringWaitStrategy;
+    }
+
+    public void setRingWaitStrategy(RingWaitStrategy ringWaitStrategy) {
+        if (ringWaitStrategy == null) {
+            throw new IllegalArgumentException("ring wait strategy can not be null");
+        }
+        this.ringWaitStrategy = ringWaitStrategy;
+    }
+
+    /**
+     * @return time in milliseconds outbound messages may be held to be sent together in one frame,
+     *         0 if every message is flushed right away
+     */
+    public long getBatchMaxDelay() {
+        return batchMaxDelay;
+    }
+
+    public int getBatchMaxMessages() {
+        return batchMaxMessages;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * Holds outbound messages of a session for at most maxDelay milliseconds, the batch is sent
+     * earlier once it has maxMessages messages or maxBytes bytes. Zero delay turns batching off.
+     */
+    public void setBatching(long maxDelay, int maxMessages, int maxBytes) {
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("batch delay can not be negative");
+        }
+        if (maxMessages < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("batch limits must be positive");
+        }
+        this.batchMaxDelay = maxDelay;
+        this.batchMaxMessages = maxMessages;
+        this.batchMaxBytes = maxBytes;
+    }
+
     @Override
     public String toString() {
         return String.format(INFO_FMT_STRING, isWebSocketEnabled(), isCookiesNeeded(), Math
@@ -0,0 +1,115 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.Worker;
+import sockjs.netty.EventLoops;
+import sockjs.transports.EncodedFrame;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one encoded frame to many connections. Connections are grouped by the I/O worker
+ * serving their channel and every worker gets a single task writing to its own channels,
+ * so the caller thread only queues the payload and sorts connections and the writes run in
+ * parallel. Queuing on the caller thread keeps the frame ordered with other messages sent by
+ * that thread, a connection which has nothing else queued still gets the frame encoded once.
+ */
+class FanOut {
+
+    private final EncodedFrame frame;
+
+    private final Map<Worker, List<Connection>> connectionsByWorker =
+            new IdentityHashMap<Worker, List<Connection>>();
+
+    FanOut(EncodedFrame frame) {
+        this.frame = frame;
+    }
+
+    static void send(Iterable<Connection> connections, EncodedFrame frame) {
+        FanOut fanOut = new FanOut(frame);
+        Iterator<Connection> iterator = connections.iterator();
+        while (iterator.hasNext()) {
+            if (!fanOut.add(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        fanOut.run();
+    }
+
+    static void send(Connection[] connections, EncodedFrame frame) {
+        FanOut fanOut = new FanOut(frame);
+        for (Connection connection : connections) {
+            fanOut.add(connection);
+        }
+        fanOut.run();
+    }
+
+    /**
+     * @return false if the connection is closed and was skipped
+     */
+    boolean add(Connection connection) {
+        if (connection.isClosed()) {
+            return false;
+        }
+
+        Channel channel = connection.getChannel();
+        Worker worker = channel != null && channel.isOpen() ? EventLoops.workerOf(channel) : null;
+        if (worker == null) {
+            // nothing to write to, message is only queued
+            connection.sendFrame(frame);
+            return true;
+        }
+        if (!connection.queueFrame(frame, true)) {
+            return true;
+        }
+
+        List<Connection> workerConnections = connectionsByWorker.get(worker);
+        if (workerConnections == null) {
+            workerConnections = new ArrayList<Connection>();
+            connectionsByWorker.put(worker, workerConnections);
+        }
+        workerConnections.add(connection);
+        return true;
+    }
+
+    void run() {
+        for (Map.Entry<Worker, List<Connection>> entry : connectionsByWorker.entrySet()) {
+            entry.getKey().executeInIoThread(new SendTask(entry.getKey(), entry.getValue(), frame));
+        }
+    }
+
+    private static class SendTask implements Runnable {
+
+        private final Worker worker;
+
+        private final List<Connection> connections;
+
+        private final EncodedFrame frame;
+
+        private SendTask(Worker worker, List<Connection> connections, EncodedFrame frame) {
+            this.worker = worker;
+            this.connections = connections;
+            this.frame = frame;
+        }
+
+        @Override
+        public void run() {
+            for (Connection connection : connections) {
+                if (EventLoops.workerOf(connection.getChannel()) == worker) {
+                    connection.writeFrame(frame);
+                } else {
+                    // session was moved to a channel of another worker after it was grouped
+                    connection.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import sockjs.netty.EventLoops;
+import sockjs.transports.AbstractTransport;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends heartbeats to sessions which wrote nothing for the endpoint heartbeat delay.
+ * <p/>
+ * Sessions are grouped by the I/O worker of their current channel. Every worker has a single
+ * timer entry which once per sweep period hands the worker one task going over all of its
+ * sessions, so the number of timer entries does not depend on the number of sessions and
+ * heartbeats are written by the thread owning the channel.
+ */
+public class HeartbeatScheduler {
+
+    private static final long SWEEP_PERIOD_MS = 1000;
+
+    private final HashedWheelTimer timer;
+
+    private final Map<Worker, Shard> shards = new ConcurrentHashMap<Worker, Shard>();
+
+    private final AtomicLong sentHeartbeats = new AtomicLong();
+
+    private volatile boolean stopped;
+
+    public HeartbeatScheduler() {
+        this.timer = new HashedWheelTimer(100, TimeUnit.MILLISECONDS, 64);
+    }
+
+    /**
+     * Moves the session to the sweep of the worker serving its new channel.
+     * Channels not served by NIO workers get no heartbeats.
+     */
+    void attach(Connection connection, Channel channel) {
+        Worker worker = EventLoops.workerOf(channel);
+        Shard shard = worker == null ? null : getShard(worker);
+
+        Shard oldShard = connection.getHeartbeatShard();
+        if (oldShard == shard) {
+            return;
+        }
+        if (oldShard != null) {
+            oldShard.connections.remove(connection);
+        }
+        connection.setHeartbeatShard(shard);
+        if (shard != null) {
+            shard.connections.add(connection);
+        }
+    }
+
+    void detach(Connection connection) {
+        Shard shard = connection.getHeartbeatShard();
+        if (shard != null) {
+            shard.connections.remove(connection);
+            connection.setHeartbeatShard(null);
+        }
+    }
+
+    public long getSentHeartbeats() {
+        return sentHeartbeats.get();
+    }
+
+    public void stop() {
+        stopped = true;
+        timer.stop();
+    }
+
+    private Shard getShard(Worker worker) {
+        Shard shard = shards.get(worker);
+        if (shard == null) {
+            synchronized (shards) {
+                shard = shards.get(worker);
+                if (shard == null) {
+                    shard = new Shard(worker);
+                    shards.put(worker, shard);
+                    shard.schedule();
+                }
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Sessions of one worker.
+     */
+    class Shard implements TimerTask, Runnable {
+
+        private final Worker worker;
+
+        private final Set<Connection> connections =
+                Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+        private Shard(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            worker.executeInIoThread(this);
+        }
+
+        /**
+         * Sweep, runs on the worker thread.
+         */
+        @Override
+        public void run() {
+            try {
+                long now = System.currentTimeMillis();
+                for (Connection connection : connections) {
+                    if (connection.isClosed()) {
+                        connections.remove(connection);
+                    } else if (now - connection.getLastWrite() >= connection.getHeartbeatDelay()) {
+                        sendHeartbeat(connection, now);
+                    }
+                }
+            } finally {
+                schedule();
+            }
+        }
+
+        private void sendHeartbeat(Connection connection, long now) {
+            Channel channel = connection.getChannel();
+            if (channel == null || !channel.isOpen() || !channel.isWritable()) {
+                return;
+            }
+            Transport transport = AbstractTransport.getTransport(channel);
+            if (transport != null) {
+                connection.markWritten(now);
+                transport.sendHeartbeat(connection);
+                sentHeartbeats.incrementAndGet();
+            }
+        }
+
+        private void schedule() {
+            if (stopped) {
+                return;
+            }
+            try {
+                timer.newTimeout(this, SWEEP_PERIOD_MS, TimeUnit.MILLISECONDS);
+            } catch (IllegalStateException e) {
+                // stopped meanwhile
+            }
+        }
+    }
+}
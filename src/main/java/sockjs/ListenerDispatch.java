@@ -0,0 +1,43 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * Where {@link ConnectionListener} callbacks of an endpoint are executed.
+ *
+ * @see EndpointInfo#setListenerDispatch(ListenerDispatch)
+ */
+public enum ListenerDispatch {
+
+    /**
+     * Callbacks run on the I/O thread which received the message, a slow listener stalls
+     * every channel served by that thread.
+     */
+    INLINE,
+
+    /**
+     * Callbacks run on a thread pool of the endpoint. Callbacks of one session run one at a time
+     * in the order events arrived, different sessions run in parallel.
+     */
+    ORDERED_POOL,
+
+    /**
+     * Every session drains its events on a thread of its own, a virtual thread when the runtime
+     * has them, so listeners can make blocking calls. Callbacks of one session keep their order.
+     * Without virtual threads a pool of at most {@link EndpointInfo#getMaxSessionThreads()}
+     * platform threads is used.
+     */
+    SESSION_THREAD,
+
+    /**
+     * Events of all sessions are put into a preallocated ring and handled in batches by a single
+     * thread of the endpoint, in the order they were published. Replies sent with
+     * {@link SockJs#sendReply(Connection, String)} are handed to the I/O threads through a second ring.
+     *
+     * @see EndpointInfo#setRingSize(int)
+     * @see EndpointInfo#setRingWaitStrategy(RingWaitStrategy)
+     */
+    RING
+}
@@ -0,0 +1,103 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes listener callbacks of one endpoint off the I/O threads.
+ * <p/>
+ * Inbound messages waiting for the listeners are accounted, once they hold more memory than
+ * allowed the channels delivering new messages stop being read. Reading is resumed for all of
+ * them when the pending memory drops to a half of the limit.
+ */
+abstract class ListenerDispatcher {
+
+    private final long maxPendingBytes;
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final Queue<Channel> suspendedChannels = new ConcurrentLinkedQueue<Channel>();
+
+    private final AtomicLong suspendedReads = new AtomicLong();
+
+    ListenerDispatcher(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * @param source channel the event was read from or null if it does not come from the client
+     * @param bytes  memory held by the event until it is handled
+     */
+    abstract void execute(Connection connection, Channel source, int bytes, Runnable callback);
+
+    abstract void shutdown();
+
+    /**
+     * @return memory held by events waiting to be handled
+     */
+    long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * @return how many times reading from a channel was suspended
+     */
+    long getSuspendedReads() {
+        return suspendedReads.get();
+    }
+
+    /**
+     * Accounts memory of an event handed to the listeners, suspends reading from the source
+     * if too much is pending.
+     */
+    void hold(Channel source, int bytes) {
+        if (pendingBytes.addAndGet(bytes) > maxPendingBytes && source != null) {
+            suspend(source);
+        }
+    }
+
+    /**
+     * Releases memory of a handled event.
+     */
+    void release(int bytes) {
+        pendingBytes.addAndGet(-bytes);
+        resumeIfDrained();
+    }
+
+    /**
+     * @return true if few enough events are pending to read from suspended channels again
+     */
+    boolean isDrained() {
+        return pendingBytes.get() <= maxPendingBytes / 2;
+    }
+
+    void suspend(Channel channel) {
+        if (!channel.isReadable()) {
+            return;
+        }
+        channel.setReadable(false);
+        suspendedChannels.offer(channel);
+        suspendedReads.incrementAndGet();
+
+        // events could have been handled while suspending, nobody would resume the channel then
+        resumeIfDrained();
+    }
+
+    void resumeIfDrained() {
+        if (!suspendedChannels.isEmpty() && isDrained()) {
+            Channel channel;
+            while ((channel = suspendedChannels.poll()) != null) {
+                if (channel.isOpen()) {
+                    channel.setReadable(true);
+                }
+            }
+        }
+    }
+}
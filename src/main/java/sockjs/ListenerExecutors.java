@@ -0,0 +1,78 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors running listener callbacks.
+ */
+final class ListenerExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerExecutors.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private ListenerExecutors() {
+    }
+
+    static ExecutorService newFixedPool(String baseUrl, int threads) {
+        return Executors.newFixedThreadPool(threads, newThreadFactory("sockjs-listener" + baseUrl));
+    }
+
+    /**
+     * Creates executor starting a virtual thread per task. Runtimes without virtual threads
+     * get a pool of platform threads growing up to maxThreads and queueing tasks after that.
+     */
+    static ExecutorService newThreadPerTask(String baseUrl, int maxThreads) {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                log.warn("Can not create virtual thread executor, platform threads are used", e);
+            }
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), newThreadFactory("sockjs-session" + baseUrl));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    static boolean isVirtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    private static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import java.io.IOException;
+
+/**
+ * Cause of a failed send future: the message was not queued because the outbound queue was
+ * full, or it was dropped by the slow consumer policy of the endpoint.
+ */
+public class MessageDroppedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MessageDroppedException(String message) {
+        super(message);
+    }
+}
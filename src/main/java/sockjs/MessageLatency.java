@@ -0,0 +1,63 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import sockjs.metrics.LatencySnapshot;
+
+/**
+ * Snapshot of how long outbound messages of one endpoint and transport took to reach the socket,
+ * split into stages.
+ */
+public class MessageLatency {
+
+    private final LatencySnapshot queue;
+
+    private final LatencySnapshot encode;
+
+    private final LatencySnapshot wire;
+
+    private final LatencySnapshot total;
+
+    MessageLatency(LatencySnapshot queue, LatencySnapshot encode, LatencySnapshot wire, LatencySnapshot total) {
+        this.queue = queue;
+        this.encode = encode;
+        this.wire = wire;
+        this.total = total;
+    }
+
+    /**
+     * @return time from queueing a message to taking it for a write, per message; on polling
+     *         transports this is mostly the wait for the next poll request
+     */
+    public LatencySnapshot getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return time spent encoding drained messages into a frame, per write
+     */
+    public LatencySnapshot getEncode() {
+        return encode;
+    }
+
+    /**
+     * @return time from the write call to the bytes handed to the socket, per write
+     */
+    public LatencySnapshot getWire() {
+        return wire;
+    }
+
+    /**
+     * @return time from queueing a message to its bytes handed to the socket, per message
+     */
+    public LatencySnapshot getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "{queue: " + queue + ", encode: " + encode + ", wire: " + wire + ", total: " + total + "}";
+    }
+}
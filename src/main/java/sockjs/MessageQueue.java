@@ -0,0 +1,320 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import sockjs.transports.FrameEncoder;
+import sockjs.transports.FrameEnvelope;
+import sockjs.transports.Protocol;
+
+import java.util.Arrays;
+
+/**
+ * Bounded queue of outbound messages kept UTF-8 encoded in direct memory.
+ * <p/>
+ * Messages are stored back to back as {@code [length][utf-8 bytes]} records in a single buffer
+ * taken from Netty's preallocating direct buffer factory. Any thread may add messages, the
+ * channel worker drains all of them at once straight into a SockJS array frame. After a full
+ * drain the buffer is rewound and reused, buffers which grew large are returned instead.
+ * Messages taken one by one are discarded from the buffer once they fill half of it, so a queue
+ * which never empties does not keep growing.
+ * <p/>
+ * Enqueue time of every message is kept aside in microseconds, outside of the byte budget,
+ * so the drain can tell how long each message waited.
+ */
+public class MessageQueue {
+
+    private static final ChannelBufferFactory BUFFER_FACTORY = DirectChannelBufferFactory.getInstance();
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final int RETAINED_CAPACITY = 16 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    private static final int INITIAL_STAMPS = 16;
+
+    private static final int RETAINED_STAMPS = 1024;
+
+    private final int maxBytes;
+
+    private ChannelBuffer buffer;
+
+    private int count;
+
+    private int[] stamps;
+
+    private int stampHead;
+
+    private long taken;
+
+    public MessageQueue(int maxBytes) {
+        if (maxBytes <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("max queue size is too small: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return false if the message does not fit into the queue and was not added
+     */
+    public synchronized boolean offer(String message) {
+        // every char takes at least one byte, reject what surely does not fit before encoding
+        if (bytes() + RECORD_HEADER_SIZE + message.length() > maxBytes) {
+            return false;
+        }
+        if (buffer == null) {
+            buffer = ChannelBuffers.dynamicBuffer(INITIAL_CAPACITY, BUFFER_FACTORY);
+        }
+
+        int recordStart = buffer.writerIndex();
+        buffer.writeInt(0);
+        int length = Protocol.writeUtf8(buffer, message);
+        if (buffer.readableBytes() > maxBytes) {
+            buffer.writerIndex(recordStart);
+            return false;
+        }
+
+        buffer.setInt(recordStart, length);
+        stamp();
+        count++;
+        return true;
+    }
+
+    /**
+     * Adds message which is already UTF-8 encoded, bytes are copied.
+     *
+     * @return false if the message does not fit into the queue and was not added
+     */
+    public synchronized boolean offer(ChannelBuffer message) {
+        int length = message.readableBytes();
+        if (bytes() + RECORD_HEADER_SIZE + length > maxBytes) {
+            return false;
+        }
+        if (buffer == null) {
+            buffer = ChannelBuffers.dynamicBuffer(Math.max(INITIAL_CAPACITY, length + RECORD_HEADER_SIZE),
+                    BUFFER_FACTORY);
+        }
+
+        buffer.writeInt(length);
+        buffer.writeBytes(message, message.readerIndex(), length);
+        stamp();
+        count++;
+        return true;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return number of bytes taken by queued messages
+     */
+    public synchronized int bytes() {
+        return buffer == null ? 0 : buffer.readableBytes();
+    }
+
+    /**
+     * @return number of messages ever added, so the latest message is the one with this sequence number
+     */
+    public synchronized long getOfferedCount() {
+        return taken + count;
+    }
+
+    /**
+     * @return number of messages ever removed, drained, polled, dropped or cleared, so every
+     *         message with a sequence number up to this one has left the queue
+     */
+    public synchronized long getTakenCount() {
+        return taken;
+    }
+
+    /**
+     * @return capacity of the buffer holding the messages, queued or already taken
+     */
+    synchronized int capacity() {
+        return buffer == null ? 0 : buffer.capacity();
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Removes all queued messages and encodes them as a single SockJS array frame
+     * ({@code a["msg1","msg2"]}).
+     *
+     * @return frame or null if the queue is empty
+     */
+    public synchronized ChannelBuffer drainFrame() {
+        return drainFrame(FrameEnvelope.NONE, null);
+    }
+
+    /**
+     * Same as {@link #drainFrame()} but the frame is written into the transport envelope
+     * right away, escaped as JSON string if the envelope requires.
+     *
+     * @return enveloped frame or null if the queue is empty
+     */
+    public synchronized ChannelBuffer drainFrame(FrameEnvelope envelope, Connection connection) {
+        return drainFrame(envelope, connection, null);
+    }
+
+    /**
+     * Same as {@link #drainFrame(FrameEnvelope, Connection)}, also copies enqueue times of the
+     * drained messages, as returned by {@link #micros()}, oldest first.
+     *
+     * @param enqueuedAt array of at least {@link #size()} elements or null
+     */
+    public synchronized ChannelBuffer drainFrame(FrameEnvelope envelope, Connection connection, int[] enqueuedAt) {
+        if (count == 0) {
+            return null;
+        }
+        if (enqueuedAt != null) {
+            System.arraycopy(stamps, stampHead, enqueuedAt, 0, count);
+        }
+
+        // payload, quotes, separators and envelope, escaping may grow it further
+        int estimatedSize = buffer.readableBytes() - count * RECORD_HEADER_SIZE + count * 3 + 4
+                + envelope.getOverhead(connection);
+        boolean jsonString = envelope.isJsonString();
+        ChannelBuffer frame = ChannelBuffers.dynamicBuffer(estimatedSize, BUFFER_FACTORY);
+        envelope.writePrefix(frame, connection);
+        if (jsonString) {
+            frame.writeByte('"');
+        }
+        frame.writeByte(Protocol.DATA_FRAME.charAt(0));
+        frame.writeByte('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                frame.writeByte(',');
+            }
+            int length = buffer.readInt();
+            FrameEncoder.writeJsonString(frame, buffer, buffer.readerIndex(), length, jsonString);
+            buffer.skipBytes(length);
+        }
+        frame.writeByte(']');
+        if (jsonString) {
+            frame.writeByte('"');
+        }
+        envelope.writeSuffix(frame, connection);
+
+        taken += count;
+        reset();
+        return frame;
+    }
+
+    /**
+     * @return raw UTF-8 bytes of the oldest message or null if the queue is empty
+     */
+    public synchronized ChannelBuffer poll() {
+        if (count == 0) {
+            return null;
+        }
+
+        int length = buffer.readInt();
+        ChannelBuffer message = ChannelBuffers.buffer(length);
+        buffer.readBytes(message, length);
+        stampHead++;
+        taken++;
+        if (--count == 0) {
+            reset();
+        } else {
+            compact();
+        }
+        return message;
+    }
+
+    /**
+     * Removes the oldest message without copying it.
+     *
+     * @return false if the queue is empty
+     */
+    public synchronized boolean dropOldest() {
+        if (count == 0) {
+            return false;
+        }
+
+        buffer.skipBytes(buffer.readInt());
+        stampHead++;
+        taken++;
+        if (--count == 0) {
+            reset();
+        } else {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * @return enqueue time of the oldest message, as returned by {@link #micros()}
+     * @throws IllegalStateException if the queue is empty
+     */
+    public synchronized int getOldestEnqueuedAt() {
+        if (count == 0) {
+            throw new IllegalStateException("queue is empty");
+        }
+        return stamps[stampHead];
+    }
+
+    public synchronized void clear() {
+        taken += count;
+        count = 0;
+        buffer = null;
+        stamps = null;
+        stampHead = 0;
+    }
+
+    /**
+     * @return current time in microseconds, wrapping around every 71 minutes, so only differences
+     *         of close enough values taken as int make sense
+     */
+    public static int micros() {
+        return (int) (System.nanoTime() / 1000);
+    }
+
+    private void stamp() {
+        if (stamps == null) {
+            stamps = new int[INITIAL_STAMPS];
+        }
+        int tail = stampHead + count;
+        if (tail == stamps.length) {
+            if (stampHead > 0) {
+                System.arraycopy(stamps, stampHead, stamps, 0, count);
+                stampHead = 0;
+                tail = count;
+            } else {
+                stamps = Arrays.copyOf(stamps, stamps.length * 2);
+            }
+        }
+        stamps[tail] = micros();
+    }
+
+    private void compact() {
+        if (buffer.readerIndex() > buffer.capacity() / 2) {
+            buffer.discardReadBytes();
+        }
+    }
+
+    private void reset() {
+        count = 0;
+        stampHead = 0;
+        if (buffer.capacity() > RETAINED_CAPACITY) {
+            buffer = null;
+        } else {
+            buffer.clear();
+        }
+        if (stamps.length > RETAINED_STAMPS) {
+            stamps = null;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs callbacks on a pool keeping the order of every session with its own
+ * {@link SerialExecutor}. With a thread per task pool the serial executor works as a session
+ * mailbox drained by a thread of its own.
+ */
+class OrderedDispatcher extends ListenerDispatcher {
+
+    private final ExecutorService pool;
+
+    OrderedDispatcher(ExecutorService pool, long maxPendingBytes) {
+        super(maxPendingBytes);
+        this.pool = pool;
+    }
+
+    @Override
+    void execute(Connection connection, Channel source, final int bytes, final Runnable callback) {
+        Runnable task = callback;
+        if (bytes > 0) {
+            hold(source, bytes);
+            task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callback.run();
+                    } finally {
+                        release(bytes);
+                    }
+                }
+            };
+        }
+        connection.getListenerExecutor(pool).execute(task);
+    }
+
+    @Override
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer, single-consumer ring of preallocated slots.
+ * <p/>
+ * Producers claim a sequence with one atomic increment, fill the slot and mark it published.
+ * The consumer thread takes every published slot in a row as one batch and moves its
+ * sequence once per batch. Producers wait for a free slot when the ring is full, the way the
+ * consumer waits for events. Events published by the consumer thread itself never wait, they
+ * are kept aside and handled at the end of the current batch.
+ */
+class RingBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(RingBuffer.class);
+
+    private static final int SPINS_BEFORE_PARK = 100;
+
+    /**
+     * Consumes slots on the consumer thread.
+     */
+    interface Handler {
+
+        void onEvent(Slot slot);
+
+        void onBatchEnd();
+    }
+
+    static final class Slot {
+
+        Object first;
+
+        Object second;
+
+        int bytes;
+
+        void clear() {
+            first = null;
+            second = null;
+            bytes = 0;
+        }
+    }
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private final RingWaitStrategy waitStrategy;
+
+    private final Handler handler;
+
+    private final Thread consumer;
+
+    /**
+     * Events published by the consumer thread, touched by that thread only.
+     */
+    private final ArrayDeque<Slot> backlog = new ArrayDeque<Slot>();
+
+    private volatile boolean sleeping;
+
+    private volatile boolean running = true;
+
+    private volatile long events;
+
+    private volatile long batches;
+
+    private volatile int maxBatchSize;
+
+    RingBuffer(String name, int size, RingWaitStrategy waitStrategy, Handler handler) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("ring size must be a power of two");
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+        this.handler = handler;
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Publishes event, waits for a free slot if the ring is full.
+     *
+     * @param bytes memory held by the event, passed to the handler as is
+     */
+    void publish(Object first, Object second, int bytes) {
+        if (Thread.currentThread() == consumer) {
+            // waiting for the consumer to free a slot would wait forever
+            Slot slot = new Slot();
+            slot.first = first;
+            slot.second = second;
+            slot.bytes = bytes;
+            backlog.add(slot);
+            return;
+        }
+
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+        int idle = 0;
+        while (wrapPoint > consumed.get()) {
+            if (!running) {
+                return;
+            }
+            idle = waitForSlot(idle);
+        }
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.first = first;
+        slot.second = second;
+        slot.bytes = bytes;
+        published.lazySet((int) sequence & mask, sequence);
+
+        if (sleeping) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    RingStats getStats() {
+        return new RingStats(events, batches, maxBatchSize, getPending());
+    }
+
+    /**
+     * @return number of events claimed or published and not handled yet
+     */
+    int getPending() {
+        return (int) Math.max(0, claimed.get() - consumed.get());
+    }
+
+    int getSize() {
+        return slots.length;
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+    }
+
+    private void consume() {
+        long next = 0;
+        int idle = 0;
+        while (running) {
+            long available = next - 1;
+            while (available - next + 1 < slots.length
+                    && published.get((int) (available + 1) & mask) == available + 1) {
+                available++;
+            }
+
+            if (available < next) {
+                idle = waitForEvents(next, idle);
+                continue;
+            }
+
+            idle = 0;
+            for (long sequence = next; sequence <= available; sequence++) {
+                Slot slot = slots[(int) sequence & mask];
+                try {
+                    handler.onEvent(slot);
+                } catch (Throwable e) {
+                    log.error("Exception in ring handler: ", e);
+                }
+                slot.clear();
+            }
+            int backlogSize = 0;
+            Slot slot;
+            while ((slot = backlog.poll()) != null) {
+                try {
+                    handler.onEvent(slot);
+                } catch (Throwable e) {
+                    log.error("Exception in ring handler: ", e);
+                }
+                backlogSize++;
+            }
+            // slots are free now, the batch end may check how full the ring is
+            consumed.lazySet(available);
+            try {
+                handler.onBatchEnd();
+            } catch (Throwable e) {
+                log.error("Exception in ring handler: ", e);
+            }
+
+            int batchSize = (int) (available - next + 1);
+            next = available + 1;
+            // only the consumer thread writes the counters
+            events += batchSize + backlogSize;
+            batches++;
+            if (batchSize > maxBatchSize) {
+                maxBatchSize = batchSize;
+            }
+        }
+    }
+
+    /**
+     * Waits for the consumer to free a slot, with the strategy the consumer waits for events.
+     * The consumer does not wake producers up, parked ones sleep for a short while.
+     */
+    private int waitForSlot(int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return idle;
+            case YIELD:
+                Thread.yield();
+                return idle;
+            default:
+                if (idle < SPINS_BEFORE_PARK) {
+                    Thread.yield();
+                    return idle + 1;
+                }
+                LockSupport.parkNanos(this, 100000);
+                return idle;
+        }
+    }
+
+    private int waitForEvents(long next, int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return idle;
+            case YIELD:
+                Thread.yield();
+                return idle;
+            default:
+                if (idle < SPINS_BEFORE_PARK) {
+                    return idle + 1;
+                }
+                sleeping = true;
+                // a producer could have published before it saw the flag
+                if (published.get((int) next & mask) != next && running) {
+                    LockSupport.parkNanos(this, 1000000);
+                }
+                sleeping = false;
+                return idle;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Funnels callbacks of the endpoint from every I/O thread into one ring consumed by a single
+ * application thread, so listeners see all events of the endpoint in one order and need no
+ * locking. Replies sent with {@link SockJs#sendReply(Connection, String)} go through a second
+ * ring, its thread queues a batch of replies and then asks each touched session to flush once.
+ * <p/>
+ * Besides the pending memory limit, reading from a channel is suspended while the ring is more
+ * than half full and resumed once it is down to a quarter, so I/O threads rarely have to wait
+ * for a free slot.
+ */
+class RingDispatcher extends ListenerDispatcher {
+
+    private final RingBuffer inbound;
+
+    private final String baseUrl;
+
+    private final int size;
+
+    private final RingWaitStrategy waitStrategy;
+
+    private volatile RingBuffer replies;
+
+    RingDispatcher(String baseUrl, int size, RingWaitStrategy waitStrategy, long maxPendingBytes) {
+        super(maxPendingBytes);
+        this.baseUrl = baseUrl;
+        this.size = size;
+        this.waitStrategy = waitStrategy;
+        inbound = new RingBuffer("sockjs-ring" + baseUrl, size, waitStrategy, new RingBuffer.Handler() {
+            @Override
+            public void onEvent(RingBuffer.Slot slot) {
+                try {
+                    ((Runnable) slot.first).run();
+                } finally {
+                    if (slot.bytes > 0) {
+                        release(slot.bytes);
+                    }
+                }
+            }
+
+            @Override
+            public void onBatchEnd() {
+                resumeIfDrained();
+            }
+        });
+    }
+
+    @Override
+    void execute(Connection connection, Channel source, int bytes, Runnable callback) {
+        if (bytes > 0) {
+            hold(source, bytes);
+        }
+        inbound.publish(callback, null, bytes);
+        if (source != null && inbound.getPending() > inbound.getSize() / 2) {
+            suspend(source);
+        }
+    }
+
+    void reply(Connection connection, String message) {
+        getReplies().publish(connection, message, 0);
+    }
+
+    @Override
+    boolean isDrained() {
+        return super.isDrained() && inbound.getPending() <= inbound.getSize() / 4;
+    }
+
+    RingStats getStats() {
+        return inbound.getStats();
+    }
+
+    /**
+     * @return counters of the reply ring or null if nothing was replied yet
+     */
+    RingStats getReplyStats() {
+        RingBuffer currentReplies = replies;
+        return currentReplies == null ? null : currentReplies.getStats();
+    }
+
+    @Override
+    synchronized void shutdown() {
+        inbound.stop();
+        if (replies != null) {
+            replies.stop();
+        }
+    }
+
+    /**
+     * Reply ring with its thread is started on the first reply, endpoints which reply with
+     * {@link Connection#sendToChannel(String)} do not keep a second thread busy.
+     */
+    private RingBuffer getReplies() {
+        RingBuffer currentReplies = replies;
+        if (currentReplies == null) {
+            synchronized (this) {
+                currentReplies = replies;
+                if (currentReplies == null) {
+                    currentReplies = new RingBuffer("sockjs-replies" + baseUrl, size, waitStrategy, new ReplyHandler());
+                    replies = currentReplies;
+                }
+            }
+        }
+        return currentReplies;
+    }
+
+    private static class ReplyHandler implements RingBuffer.Handler {
+
+        private final Set<Connection> touched =
+                Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+
+        private Connection last;
+
+        @Override
+        public void onEvent(RingBuffer.Slot slot) {
+            Connection connection = (Connection) slot.first;
+            connection.addMessageToBuffer((String) slot.second);
+            if (connection != last) {
+                touched.add(connection);
+                last = connection;
+            }
+        }
+
+        @Override
+        public void onBatchEnd() {
+            for (Connection connection : touched) {
+                connection.flush();
+            }
+            touched.clear();
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * Snapshot of ring buffer counters.
+ */
+public class RingStats {
+
+    private final long events;
+
+    private final long batches;
+
+    private final int maxBatchSize;
+
+    private final int pending;
+
+    RingStats(long events, long batches, int maxBatchSize, int pending) {
+        this.events = events;
+        this.batches = batches;
+        this.maxBatchSize = maxBatchSize;
+        this.pending = pending;
+    }
+
+    /**
+     * @return number of events consumed
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return number of batches events were consumed in
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : events / (double) batches;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return number of events published but not consumed yet
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("events=%d, batches=%d, avgBatch=%.2f, maxBatch=%d, pending=%d",
+                events, batches, getAverageBatchSize(), maxBatchSize, pending);
+    }
+}
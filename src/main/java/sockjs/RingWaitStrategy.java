@@ -0,0 +1,26 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * What the consumer thread of a {@link ListenerDispatch#RING} endpoint does while the ring is empty.
+ */
+public enum RingWaitStrategy {
+
+    /**
+     * Keeps polling, lowest latency at the cost of a fully busy core.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Polls yielding the core to other threads between attempts.
+     */
+    YIELD,
+
+    /**
+     * Sleeps until a producer wakes it up, cheapest for the CPU with the highest latency.
+     */
+    PARK
+}
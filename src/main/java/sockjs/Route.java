@@ -0,0 +1,172 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * Request URI split into SockJS parts: {@code <baseUrl>/<serverId>/<sessionId>/<transport>?<query>}.
+ * Shorter paths, like {@code <baseUrl>/info} or {@code <baseUrl>/websocket}, have only the
+ * transport part set.
+ * <p/>
+ * Route keeps offsets into the URI and can be refilled by {@link Router#route(String, Route)}
+ * for every request, parts are turned into strings only when their getters are called.
+ * Instances are not thread safe.
+ */
+public class Route {
+
+    private static final String IFRAME_PREFIX = "iframe";
+
+    private static final String IFRAME_SUFFIX = ".html";
+
+    private String uri;
+
+    private String baseUrl;
+
+    private int segments;
+
+    private int serverStart, serverEnd;
+
+    private int sessionStart, sessionEnd;
+
+    private int transportStart, transportEnd;
+
+    private int queryStart;
+
+    private String serverId;
+
+    private String sessionId;
+
+    private String transport;
+
+    private String query;
+
+    public Route() {
+    }
+
+    void set(String uri, String baseUrl, int segments, int serverStart, int serverEnd,
+             int sessionStart, int sessionEnd, int transportStart, int transportEnd, int queryStart) {
+        this.uri = uri;
+        this.baseUrl = baseUrl;
+        this.segments = segments;
+        this.serverStart = serverStart;
+        this.serverEnd = serverEnd;
+        this.sessionStart = sessionStart;
+        this.sessionEnd = sessionEnd;
+        this.transportStart = transportStart;
+        this.transportEnd = transportEnd;
+        this.queryStart = queryStart;
+        serverId = null;
+        sessionId = null;
+        transport = null;
+        query = null;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getServerId() {
+        if (serverId == null && segments > 2) {
+            serverId = uri.substring(serverStart, serverEnd);
+        }
+        return serverId;
+    }
+
+    public String getSessionId() {
+        if (sessionId == null && segments > 2) {
+            sessionId = uri.substring(sessionStart, sessionEnd);
+        }
+        return sessionId;
+    }
+
+    /**
+     * @return last path segment after the base url or null if there is none
+     */
+    public String getTransport() {
+        if (transport == null && segments > 0) {
+            transport = uri.substring(transportStart, transportEnd);
+        }
+        return transport;
+    }
+
+    /**
+     * @return query string without '?' or null if there is none
+     */
+    public String getQuery() {
+        if (query == null && queryStart >= 0) {
+            query = uri.substring(queryStart);
+        }
+        return query;
+    }
+
+    /**
+     * @return number of path segments after the base url
+     */
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return true if the last path segment equals to the name, compared without creating strings
+     */
+    public boolean isTransport(String name) {
+        return segments > 0 && transportEnd - transportStart == name.length()
+                && uri.regionMatches(transportStart, name, 0, name.length());
+    }
+
+    /**
+     * @return true if URI points to the base url itself
+     */
+    public boolean isRoot() {
+        return segments == 0;
+    }
+
+    public boolean isInfo() {
+        return segments == 1 && isTransport("info");
+    }
+
+    /**
+     * @return true if the last path segment looks like {@code iframe[-_.a-zA-Z0-9]*.html}
+     */
+    public boolean isIframe() {
+        int length = transportEnd - transportStart;
+        if (segments == 0 || length < IFRAME_PREFIX.length() + IFRAME_SUFFIX.length()
+                || !uri.startsWith(IFRAME_PREFIX, transportStart)
+                || !uri.startsWith(IFRAME_SUFFIX, transportEnd - IFRAME_SUFFIX.length())) {
+            return false;
+        }
+
+        for (int i = transportStart + IFRAME_PREFIX.length(); i < transportEnd - IFRAME_SUFFIX.length(); i++) {
+            char c = uri.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if URI has valid server id, session id and transport parts
+     */
+    public boolean isSessionPath() {
+        return segments == 3 && isValidId(serverStart, serverEnd) && isValidId(sessionStart, sessionEnd)
+                && transportEnd > transportStart;
+    }
+
+    private boolean isValidId(int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (uri.charAt(i) == '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
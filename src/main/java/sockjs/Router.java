@@ -0,0 +1,199 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable radix tree of endpoint base urls.
+ * <p/>
+ * Routing walks the tree along the URI, remembers the longest base url followed by '/', '?'
+ * or the end of the URI, and continues from there splitting the rest of the path into
+ * SockJS parts. Every char of the URI is looked at once regardless of the number of endpoints.
+ */
+public class Router {
+
+    private static final Router EMPTY = new Router(new Node("", null, new char[0], new Node[0]));
+
+    private final Node root;
+
+    private Router(Node root) {
+        this.root = root;
+    }
+
+    public static Router compile(Collection<String> baseUrls) {
+        if (baseUrls.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<String> sortedUrls = new ArrayList<String>(baseUrls);
+        Collections.sort(sortedUrls);
+        for (int i = sortedUrls.size() - 1; i > 0; i--) {
+            if (sortedUrls.get(i).equals(sortedUrls.get(i - 1))) {
+                sortedUrls.remove(i);
+            }
+        }
+
+        return new Router(build(sortedUrls, 0, 0, sortedUrls.size()));
+    }
+
+    /**
+     * @return route or null if URI does not belong to any endpoint
+     */
+    public Route route(String uri) {
+        Route route = new Route();
+        return route(uri, route) ? route : null;
+    }
+
+    /**
+     * Fills given route with the URI parts, nothing is allocated.
+     *
+     * @return false if URI does not belong to any endpoint, route is left untouched then
+     */
+    public boolean route(String uri, Route route) {
+        int length = uri.length();
+        String baseUrl = null;
+        int baseUrlEnd = 0;
+
+        Node node = root;
+        int pos = 0;
+        while (node != null) {
+            String label = node.label;
+            if (!uri.regionMatches(pos, label, 0, label.length())) {
+                break;
+            }
+            pos += label.length();
+
+            if (node.baseUrl != null && isSegmentEnd(uri, pos)) {
+                baseUrl = node.baseUrl;
+                baseUrlEnd = pos;
+            }
+
+            node = pos < length ? node.child(uri.charAt(pos)) : null;
+        }
+
+        if (baseUrl == null) {
+            return false;
+        }
+
+        parsePath(uri, baseUrl, baseUrlEnd, route);
+        return true;
+    }
+
+    private static void parsePath(String uri, String baseUrl, int pos, Route route) {
+        int length = uri.length();
+        int segments = 0;
+        int firstStart = 0, firstEnd = 0, secondStart = 0, secondEnd = 0, lastStart = 0, lastEnd = 0;
+
+        while (pos < length && uri.charAt(pos) == '/') {
+            int start = pos + 1;
+            int end = start;
+            char c = 0;
+            while (end < length && (c = uri.charAt(end)) != '/' && c != '?') {
+                end++;
+            }
+
+            if (end > start || (end < length && c == '/')) {
+                segments++;
+                firstStart = secondStart;
+                firstEnd = secondEnd;
+                secondStart = lastStart;
+                secondEnd = lastEnd;
+                lastStart = start;
+                lastEnd = end;
+            }
+            pos = end;
+        }
+
+        int queryStart = pos < length && uri.charAt(pos) == '?' ? pos + 1 : -1;
+        route.set(uri, baseUrl, segments, firstStart, firstEnd, secondStart, secondEnd, lastStart, lastEnd,
+                queryStart);
+    }
+
+    private static boolean isSegmentEnd(String uri, int pos) {
+        return pos == uri.length() || uri.charAt(pos) == '/' || uri.charAt(pos) == '?';
+    }
+
+    /**
+     * Builds node for sorted urls [from, to) sharing first depth chars, the node label is
+     * their common prefix after that.
+     */
+    private static Node build(List<String> urls, int depth, int from, int to) {
+        String first = urls.get(from);
+        int prefixEnd = commonPrefixLength(first, urls.get(to - 1));
+        String label = first.substring(depth, prefixEnd);
+
+        String baseUrl = null;
+        if (first.length() == prefixEnd) {
+            baseUrl = first;
+            from++;
+        }
+
+        List<Node> children = new ArrayList<Node>();
+        while (from < to) {
+            char c = urls.get(from).charAt(prefixEnd);
+            int groupEnd = from + 1;
+            while (groupEnd < to && urls.get(groupEnd).charAt(prefixEnd) == c) {
+                groupEnd++;
+            }
+            children.add(build(urls, prefixEnd, from, groupEnd));
+            from = groupEnd;
+        }
+
+        char[] firstChars = new char[children.size()];
+        for (int i = 0; i < firstChars.length; i++) {
+            firstChars[i] = children.get(i).label.charAt(0);
+        }
+
+        return new Node(label, baseUrl, firstChars, children.toArray(new Node[children.size()]));
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class Node {
+
+        private final String label;
+
+        private final String baseUrl;
+
+        private final char[] firstChars;
+
+        private final Node[] children;
+
+        private Node(String label, String baseUrl, char[] firstChars, Node[] children) {
+            this.label = label;
+            this.baseUrl = baseUrl;
+            this.firstChars = firstChars;
+            this.children = children;
+        }
+
+        private Node child(char c) {
+            // children are sorted by their first char
+            int low = 0;
+            int high = firstChars.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (firstChars[mid] < c) {
+                    low = mid + 1;
+                } else if (firstChars[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.DefaultChannelFuture;
+
+/**
+ * Future shared by the messages sent with {@link Connection#sendWithFuture(String)} between two
+ * takes from the session queue. Messages are told apart by their sequence numbers in
+ * the queue, the batch is done once the write carrying its last message is.
+ */
+class SendBatch extends DefaultChannelFuture {
+
+    final long firstSeq;
+
+    long lastSeq;
+
+    SendBatch(Channel channel, long seq) {
+        super(channel, false);
+        this.firstSeq = seq;
+        this.lastSeq = seq;
+    }
+}
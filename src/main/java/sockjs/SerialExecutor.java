@@ -0,0 +1,71 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time in submission order on top of a shared executor. At most one
+ * drain task is submitted at a time and it gives the thread back after a batch of tasks,
+ * so a busy session does not starve others sharing the pool.
+ */
+class SerialExecutor implements Executor, Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        schedule();
+    }
+
+    @Override
+    public void run() {
+        try {
+            Runnable task;
+            for (int i = 0; i < BATCH_SIZE && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.error("Exception in listener: ", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                log.warn("Listener executor is shut down, " + tasks.size() + " events dropped");
+                tasks.clear();
+                scheduled.set(false);
+            }
+        }
+    }
+}
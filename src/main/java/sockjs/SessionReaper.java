@@ -0,0 +1,116 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sockjs.jfr.EventSink;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expires sessions which lost their channel for longer than the endpoint disconnect delay
+ * or which had no activity for longer than the endpoint idle timeout.
+ * <p/>
+ * Every session owns exactly one timeout in a hashed timing wheel, so scheduling and
+ * expiring are O(1) regardless of the number of live sessions. A timeout which fires for a
+ * session that is still alive is simply re-armed for the remaining time.
+ */
+public class SessionReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionReaper.class);
+
+    private static final long TICK_DURATION_MS = 100;
+
+    private static final int TICKS_PER_WHEEL = 512;
+
+    /**
+     * Reason reported to the event sink for sessions closed by the idle timeout.
+     */
+    static final String EXPIRED = "EXPIRED";
+
+    private final SockJs sockJs;
+
+    private final HashedWheelTimer timer;
+
+    private final AtomicLong expiredSessions = new AtomicLong();
+
+    public SessionReaper(SockJs sockJs) {
+        this.sockJs = sockJs;
+        this.timer = new HashedWheelTimer(TICK_DURATION_MS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    public void track(Connection connection) {
+        schedule(new ExpireTask(connection), nextCheckDelay(connection, System.currentTimeMillis()));
+    }
+
+    public long getExpiredSessions() {
+        return expiredSessions.get();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    private void schedule(ExpireTask task, long delayMs) {
+        timer.newTimeout(task, Math.max(delayMs, TICK_DURATION_MS), TimeUnit.MILLISECONDS);
+    }
+
+    private long nextCheckDelay(Connection connection, long now) {
+        EndpointInfo info = sockJs.getEndpointInfoOrDefault(connection.getBaseUrl());
+        long delay = Long.MAX_VALUE;
+
+        if (!connection.isAttached()) {
+            delay = info.getDisconnectDelay() - (now - connection.getDetachedSince());
+        }
+        if (info.getIdleTimeout() > 0) {
+            delay = Math.min(delay, info.getIdleTimeout() - (now - connection.getLastActivity()));
+        }
+        if (delay == Long.MAX_VALUE) {
+            // attached and idle timeout disabled, look again once the wheel turned around
+            delay = TICK_DURATION_MS * TICKS_PER_WHEEL;
+        }
+
+        return delay;
+    }
+
+    private class ExpireTask implements TimerTask {
+
+        private final Connection connection;
+
+        private ExpireTask(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void run(Timeout timeout)
+                throws Exception {
+            if (connection.isClosed()) {
+                return;
+            }
+
+            long delay = nextCheckDelay(connection, System.currentTimeMillis());
+            if (delay > 0) {
+                schedule(this, delay);
+                return;
+            }
+
+            boolean attached = connection.isAttached();
+            try {
+                if (sockJs.closeConnection(connection, EXPIRED)) {
+                    expiredSessions.incrementAndGet();
+                    EventSink.INSTANCE.sessionExpired(connection,
+                            System.currentTimeMillis() - connection.getLastActivity(), attached);
+                }
+            } catch (Exception ex) {
+                log.error("Failed to expire session " + connection.getSessionId(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session id to connection registry split into independent shards.
+ * <p/>
+ * Shard is chosen by a hash of the session id, so sessions created and looked up by different
+ * I/O workers rarely touch the same table, and resizing one shard never blocks the others.
+ * Lookups never take a lock.
+ */
+public class SessionRegistry {
+
+    private static final int DEFAULT_SHARDS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final ConcurrentHashMap<String, Connection>[] shards;
+
+    private final int shardMask;
+
+    public SessionRegistry() {
+        this(DEFAULT_SHARDS);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionRegistry(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shard count should be positive");
+        }
+        int size = Integer.highestOneBit(shardCount);
+        if (size < shardCount) {
+            size <<= 1;
+        }
+
+        shards = new ConcurrentHashMap[size];
+        for (int i = 0; i < size; i++) {
+            // each shard is written by few threads at a time
+            shards[i] = new ConcurrentHashMap<String, Connection>(64, 0.75f, 1);
+        }
+        shardMask = size - 1;
+    }
+
+    public Connection get(String sessionId) {
+        return shardFor(sessionId).get(sessionId);
+    }
+
+    public Connection put(String sessionId, Connection connection) {
+        return shardFor(sessionId).put(sessionId, connection);
+    }
+
+    public boolean remove(String sessionId, Connection connection) {
+        return shardFor(sessionId).remove(sessionId, connection);
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, Connection> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private ConcurrentHashMap<String, Connection> shardFor(String sessionId) {
+        int h = sessionId.hashCode();
+        // spread higher bits down, String hashes of similar ids differ mostly in low bits
+        h ^= (h >>> 16);
+        h ^= (h >>> 7);
+        return shards[h & shardMask];
+    }
+}
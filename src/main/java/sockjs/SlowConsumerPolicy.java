@@ -0,0 +1,35 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * What happens to a new message when the session already has more bytes waiting for the
+ * client than the endpoint high watermark.
+ *
+ * @see EndpointInfo#setHighWaterMark(int)
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Message is queued while it fits into the max queue size, producers are expected to wait
+     * for {@link Connection#getWritableFuture()} before sending more.
+     */
+    BLOCK,
+
+    /**
+     * Oldest queued messages are dropped to get below the high watermark.
+     */
+    DROP_OLDEST,
+
+    /**
+     * New message is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Session is closed with {@code c[3001,"Slow consumer"]} close frame.
+     */
+    DISCONNECT
+}
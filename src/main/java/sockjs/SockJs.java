@@ -4,11 +4,21 @@
  */
 package sockjs;
 
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.util.HashedWheelTimer;
+import sockjs.jfr.EventSink;
+import sockjs.metrics.MetricsMBean;
 import sockjs.netty.SockJsHandlerContext;
 import sockjs.transports.*;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SockJs {
 
@@ -28,23 +38,70 @@ public class SockJs {
 
     public static final String HTML_FILE = "htmlfile";
 
+    /**
+     * Transport name of sessions opened by plain websocket clients at {@code <base url>/websocket}.
+     */
+    public static final String RAW_WEBSOCKET_TRANSPORT = "raw_websocket";
+
     private static final EndpointInfo DEFAULT_INFO = new EndpointInfo();
 
     private ConcurrentHashMap<String, Set<ConnectionListener>> listeners;
 
-    private ConcurrentHashMap<String, Connection> sessionConnections;
+    private SessionRegistry sessionConnections;
 
     private ConcurrentHashMap<String, EndpointInfo> endpointInfos;
 
+    private ConcurrentHashMap<String, ConnectionGroup> endpointConnections;
+
+    private ConcurrentHashMap<String, ListenerDispatcher> listenerDispatchers;
+
     private Map<String, Transport> transports;
 
+    private String[] transportNames = new String[0];
+
+    private Transport[] transportList = new Transport[0];
+
+    private final SessionReaper sessionReaper;
+
+    private final TopicIndex topicIndex;
+
+    private final HeartbeatScheduler heartbeatScheduler;
+
+    private final BatchSizeHistogram batchSizes = new BatchSizeHistogram();
+
+    private HashedWheelTimer batchTimer;
+
+    private final AtomicLong highWaterMarkCrossings = new AtomicLong();
+
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    private final AtomicLong slowConsumerDisconnects = new AtomicLong();
+
+    private final SockJsMetrics metrics;
+
+    private final StallWatchdog stallWatchdog;
+
+    private volatile String metricsPath;
+
+    private ObjectName mbeanName;
+
+    private volatile Router router = Router.compile(Collections.<String>emptySet());
+
     private int maxStreamSize = 128 * 1024; // 128KiB
 
     public SockJs() {
         listeners = new ConcurrentHashMap<String, Set<ConnectionListener>>();
         transports = new HashMap<String, Transport>();
-        sessionConnections = new ConcurrentHashMap<String, Connection>();
+        sessionConnections = new SessionRegistry();
         endpointInfos = new ConcurrentHashMap<String, EndpointInfo>();
+        endpointConnections = new ConcurrentHashMap<String, ConnectionGroup>();
+        listenerDispatchers = new ConcurrentHashMap<String, ListenerDispatcher>();
+        sessionReaper = new SessionReaper(this);
+        topicIndex = new TopicIndex();
+        heartbeatScheduler = new HeartbeatScheduler();
+        metrics = new SockJsMetrics(this);
+        EventSink.load();
+        stallWatchdog = new StallWatchdog(metrics.getRegistry());
 
         addTransport(WEBSOCKET_TRANSPORT, new WebSocket(this));
         XHttpRequestPolling xhr_polling = new XHttpRequestPolling(this);
@@ -73,11 +130,13 @@ public class SockJs {
         }
 
         baseUrlListeners.add(listener);
+        rebuildRouter();
     }
 
     public void removeAllListeners(String baseUrl) {
         baseUrl = normalizeBaseUrl(baseUrl);
         listeners.remove(baseUrl);
+        rebuildRouter();
     }
 
     public void removeListener(String baseUrl, ConnectionListener listener) {
@@ -89,56 +148,220 @@ public class SockJs {
         }
     }
 
+    /**
+     * Splits request URI into SockJS parts using the longest registered base url.
+     *
+     * @return route or null if there is no listener for the URI
+     */
+    public Route route(String url) {
+        return router.route(url);
+    }
+
+    /**
+     * Same as {@link #route(String)} but reuses given route instead of creating a new one.
+     *
+     * @return false if there is no listener for the URI
+     */
+    public boolean route(String url, Route route) {
+        return router.route(url, route);
+    }
+
     public boolean hasListenerForRoute(String url) {
+        return router.route(url) != null;
+    }
 
-        for (String baseUrl : listeners.keySet()) {
-            if (url.indexOf(baseUrl) == 0) {
-                if (url.length() == baseUrl.length() || url.charAt(baseUrl.length()) == '/') {
-                    return true;
-                }
+    public String getBaseUrl(String url) {
+        Route route = router.route(url);
+        return route == null ? null : route.getBaseUrl();
+    }
+
+    public void notifyListeners(Connection connection, String message) {
+        notifyListeners(connection, message, connection.getChannel());
+    }
+
+    /**
+     * Passes message to the listeners of the connection endpoint, on the calling thread or
+     * on the one chosen by {@link EndpointInfo#getListenerDispatch()}.
+     *
+     * @param source channel the message was read from
+     */
+    public void notifyListeners(final Connection connection, final String message, Channel source) {
+        ListenerDispatcher dispatcher = getListenerDispatcher(connection.getBaseUrl());
+        if (dispatcher == null) {
+            fireMessage(connection, message);
+            return;
+        }
+
+        dispatcher.execute(connection, source, message.length() * 2, new Runnable() {
+            @Override
+            public void run() {
+                fireMessage(connection, message);
             }
+        });
+    }
+
+    public void notifyListenersAboutNewConnection(final Connection connection) {
+        ListenerDispatcher dispatcher = getListenerDispatcher(connection.getBaseUrl());
+        if (dispatcher == null) {
+            fireOpen(connection);
+            return;
         }
 
-        return false;
+        dispatcher.execute(connection, null, 0, new Runnable() {
+            @Override
+            public void run() {
+                fireOpen(connection);
+            }
+        });
     }
 
-    public String getBaseUrl(String url) {
-        for (String baseUrl : listeners.keySet()) {
-            if (url.indexOf(baseUrl) == 0) {
-                if (url.length() == baseUrl.length() || url.charAt(baseUrl.length()) == '/') {
-                    return baseUrl;
-                }
+    public void notifyListenersAboutClosedConnection(final Connection connection) {
+        ListenerDispatcher dispatcher = getListenerDispatcher(connection.getBaseUrl());
+        if (dispatcher == null) {
+            fireClose(connection);
+            return;
+        }
+
+        dispatcher.execute(connection, null, 0, new Runnable() {
+            @Override
+            public void run() {
+                fireClose(connection);
             }
+        });
+    }
+
+    /**
+     * @return memory held by inbound messages of the endpoint waiting for its listeners,
+     *         always 0 for {@link ListenerDispatch#INLINE} endpoints
+     */
+    public long getPendingListenerBytes(String baseUrl) {
+        ListenerDispatcher dispatcher = listenerDispatchers.get(normalizeBaseUrl(baseUrl));
+        return dispatcher == null ? 0 : dispatcher.getPendingBytes();
+    }
+
+    /**
+     * Sends message to the session from the listener thread of a {@link ListenerDispatch#RING}
+     * endpoint through its reply ring. For other endpoints it is the same as
+     * {@link Connection#sendToChannel(String)}.
+     */
+    public void sendReply(Connection connection, String message) {
+        ListenerDispatcher dispatcher = getListenerDispatcher(connection.getBaseUrl());
+        if (dispatcher instanceof RingDispatcher) {
+            ((RingDispatcher) dispatcher).reply(connection, message);
+        } else {
+            connection.sendToChannel(message);
         }
+    }
 
-        return null;
+    /**
+     * @return counters of the inbound ring or null if the endpoint does not use {@link ListenerDispatch#RING}
+     */
+    public RingStats getRingStats(String baseUrl) {
+        ListenerDispatcher dispatcher = listenerDispatchers.get(normalizeBaseUrl(baseUrl));
+        return dispatcher instanceof RingDispatcher ? ((RingDispatcher) dispatcher).getStats() : null;
     }
 
-    public void notifyListeners(Connection connection, String message) {
+    /**
+     * @return counters of the reply ring or null if the endpoint does not use {@link ListenerDispatch#RING}
+     *         or has not replied yet
+     */
+    public RingStats getReplyRingStats(String baseUrl) {
+        ListenerDispatcher dispatcher = listenerDispatchers.get(normalizeBaseUrl(baseUrl));
+        return dispatcher instanceof RingDispatcher ? ((RingDispatcher) dispatcher).getReplyStats() : null;
+    }
+
+    private void fireMessage(Connection connection, String message) {
         Collection<ConnectionListener> connectionListeners = listeners.get(connection.getBaseUrl());
 
         if (connectionListeners != null) {
-            for (ConnectionListener listener : connectionListeners) {
-                listener.onMessage(connection, message);
+            StallWatchdog.Probe probe = stallWatchdog.enter(connection.getBaseUrl(), connection.getSessionId(),
+                    "onMessage");
+            try {
+                for (ConnectionListener listener : connectionListeners) {
+                    Object event = EventSink.INSTANCE.beginListener();
+                    listener.onMessage(connection, message);
+                    EventSink.INSTANCE.endListener(event, connection, "onMessage", listener);
+                }
+            } finally {
+                stallWatchdog.exit(probe);
             }
         }
     }
 
-    public void notifyListenersAboutNewConnection(Connection connection) {
+    private void fireOpen(Connection connection) {
         Collection<ConnectionListener> connectionListeners = listeners.get(connection.getBaseUrl());
 
         if (connectionListeners != null) {
-            for (ConnectionListener listener : connectionListeners) {
-                listener.onOpen(connection);
+            StallWatchdog.Probe probe = stallWatchdog.enter(connection.getBaseUrl(), connection.getSessionId(),
+                    "onOpen");
+            try {
+                for (ConnectionListener listener : connectionListeners) {
+                    Object event = EventSink.INSTANCE.beginListener();
+                    listener.onOpen(connection);
+                    EventSink.INSTANCE.endListener(event, connection, "onOpen", listener);
+                }
+            } finally {
+                stallWatchdog.exit(probe);
             }
         }
     }
 
-    public boolean isRootOfBaseUrl(String url) {
-        if (url.endsWith("/")) {
-            url = url.substring(0, url.length() - 1);
+    private void fireClose(Connection connection) {
+        Collection<ConnectionListener> connectionListeners = listeners.get(connection.getBaseUrl());
+
+        if (connectionListeners != null) {
+            StallWatchdog.Probe probe = stallWatchdog.enter(connection.getBaseUrl(), connection.getSessionId(),
+                    "onClose");
+            try {
+                for (ConnectionListener listener : connectionListeners) {
+                    Object event = EventSink.INSTANCE.beginListener();
+                    listener.onClose(connection);
+                    EventSink.INSTANCE.endListener(event, connection, "onClose", listener);
+                }
+            } finally {
+                stallWatchdog.exit(probe);
+            }
         }
-        return listeners.containsKey(url);
+    }
+
+    /**
+     * @return dispatcher of the endpoint or null if callbacks run inline
+     */
+    private ListenerDispatcher getListenerDispatcher(String baseUrl) {
+        ListenerDispatcher dispatcher = listenerDispatchers.get(baseUrl);
+        if (dispatcher != null) {
+            return dispatcher;
+        }
+
+        EndpointInfo info = getEndpointInfoOrDefault(baseUrl);
+        if (info.getListenerDispatch() == ListenerDispatch.INLINE) {
+            return null;
+        }
+
+        switch (info.getListenerDispatch()) {
+            case RING:
+                dispatcher = new RingDispatcher(baseUrl, info.getRingSize(), info.getRingWaitStrategy(),
+                        info.getMaxPendingInboundBytes());
+                break;
+            case SESSION_THREAD:
+                dispatcher = new OrderedDispatcher(ListenerExecutors.newThreadPerTask(baseUrl,
+                        info.getMaxSessionThreads()), info.getMaxPendingInboundBytes());
+                break;
+            default:
+                dispatcher = new OrderedDispatcher(ListenerExecutors.newFixedPool(baseUrl,
+                        info.getListenerThreads()), info.getMaxPendingInboundBytes());
+        }
+        ListenerDispatcher oldDispatcher = listenerDispatchers.putIfAbsent(baseUrl, dispatcher);
+        if (oldDispatcher != null) {
+            dispatcher.shutdown();
+            return oldDispatcher;
+        }
+        return dispatcher;
+    }
+
+    public boolean isRootOfBaseUrl(String url) {
+        Route route = router.route(url);
+        return route != null && route.isRoot();
     }
 
     public String getInfoAsString(String baseUrl) {
@@ -154,12 +377,283 @@ public class SockJs {
         return transports.get(shortName);
     }
 
+    /**
+     * @return transport named by the last part of the route or null
+     */
+    public Transport getTransport(Route route) {
+        for (int i = 0; i < transportNames.length; i++) {
+            if (route.isTransport(transportNames[i])) {
+                return transportList[i];
+            }
+        }
+        return null;
+    }
+
     public Connection createConnection(SockJsHandlerContext handlerContext) {
-        Connection connection = new Connection(this, handlerContext.getBaseUrl());
+        Connection connection = new Connection(this, handlerContext.getBaseUrl(),
+                handlerContext.getSessionId(), handlerContext.getTransport());
         sessionConnections.put(handlerContext.getSessionId(), connection);
+        getEndpointConnections(connection.getBaseUrl()).add(connection);
+        sessionReaper.track(connection);
+        EventSink.INSTANCE.sessionOpened(connection);
         return connection;
     }
 
+    /**
+     * Removes session from the registry, drops its queued messages and notifies listeners.
+     * Listeners are notified only once even if the session is closed several times.
+     *
+     * @return true if the session was closed by this call
+     */
+    public boolean closeConnection(Connection connection) {
+        return closeConnection(connection, null);
+    }
+
+    /**
+     * @param reason why the session is closed, reported to the event sink if no close reason
+     *               was sent to the client
+     */
+    boolean closeConnection(Connection connection, String reason) {
+        if (!connection.markClosed(reason)) {
+            return false;
+        }
+        sessionConnections.remove(connection.getSessionId(), connection);
+        getEndpointConnections(connection.getBaseUrl()).remove(connection);
+        heartbeatScheduler.detach(connection);
+        for (String topic : connection.getTopics()) {
+            connection.unsubscribe(topic);
+        }
+        notifyListenersAboutClosedConnection(connection);
+        return true;
+    }
+
+    /**
+     * Sends message to every open session of the endpoint. Message is encoded once and
+     * written by the I/O workers of the receiving channels.
+     */
+    public void broadcast(String baseUrl, String message) {
+        ConnectionGroup connections = endpointConnections.get(normalizeBaseUrl(baseUrl));
+        if (connections != null) {
+            FanOut.send(connections, EncodedFrame.encode(message));
+        }
+    }
+
+    /**
+     * Sends message to every connection of the group. Message is encoded once and
+     * written by the I/O workers of the receiving channels.
+     */
+    public void broadcast(ConnectionGroup connections, String message) {
+        FanOut.send(connections, EncodedFrame.encode(message));
+    }
+
+    /**
+     * Sends message to every session subscribed to the topic with {@link Connection#subscribe(String)}.
+     * Message is encoded once and written by the I/O workers of the receiving channels.
+     *
+     * @return number of subscribers the message was sent to
+     */
+    public int publish(String topic, String message) {
+        Connection[] subscribers = topicIndex.getSubscribers(topic);
+        if (subscribers.length > 0) {
+            FanOut.send(subscribers, EncodedFrame.encode(message));
+        }
+        return subscribers.length;
+    }
+
+    public int getSubscriberCount(String topic) {
+        return topicIndex.getSubscriberCount(topic);
+    }
+
+    public int getTopicCount() {
+        return topicIndex.getTopicCount();
+    }
+
+    void subscribe(Connection connection, String topic) {
+        topicIndex.subscribe(topic, connection);
+    }
+
+    void unsubscribe(Connection connection, String topic) {
+        topicIndex.unsubscribe(topic, connection);
+    }
+
+    /**
+     * @return how many times sessions reached the high watermark of their endpoint
+     */
+    public long getHighWaterMarkCrossings() {
+        return highWaterMarkCrossings.get();
+    }
+
+    /**
+     * @return number of outbound messages dropped by slow consumer policies or full queues
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.get();
+    }
+
+    void onHighWaterMark(Connection connection) {
+        highWaterMarkCrossings.incrementAndGet();
+        Collection<ConnectionListener> connectionListeners = listeners.get(connection.getBaseUrl());
+        if (connectionListeners != null) {
+            for (ConnectionListener listener : connectionListeners) {
+                if (listener instanceof BackpressureListener) {
+                    ((BackpressureListener) listener).onHighWaterMark(connection);
+                }
+            }
+        }
+    }
+
+    void onLowWaterMark(Connection connection) {
+        Collection<ConnectionListener> connectionListeners = listeners.get(connection.getBaseUrl());
+        if (connectionListeners != null) {
+            for (ConnectionListener listener : connectionListeners) {
+                if (listener instanceof BackpressureListener) {
+                    ((BackpressureListener) listener).onLowWaterMark(connection);
+                }
+            }
+        }
+    }
+
+    void onMessageDropped(Connection connection) {
+        droppedMessages.incrementAndGet();
+    }
+
+    void onSlowConsumerDisconnected(Connection connection) {
+        slowConsumerDisconnects.incrementAndGet();
+    }
+
+    public int getLiveSessions() {
+        return sessionConnections.size();
+    }
+
+    public long getExpiredSessions() {
+        return sessionReaper.getExpiredSessions();
+    }
+
+    public long getSentHeartbeats() {
+        return heartbeatScheduler.getSentHeartbeats();
+    }
+
+    public SockJsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return time outbound messages of the endpoint sessions opened with the transport took from
+     *         the queue to the socket, null if there were no such sessions
+     */
+    public MessageLatency getMessageLatency(String baseUrl, String transport) {
+        return metrics.getMessageLatency(normalizeBaseUrl(baseUrl), transport);
+    }
+
+    /**
+     * @return time outbound messages of the endpoint took from the queue to the socket, by transport
+     */
+    public Map<String, MessageLatency> getMessageLatencies(String baseUrl) {
+        return metrics.getMessageLatencies(normalizeBaseUrl(baseUrl));
+    }
+
+    /**
+     * @return path answered with the metrics in the Prometheus text format or null if it is disabled
+     */
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * Serves the metrics in the Prometheus text format on the path, before any endpoint is
+     * looked up. Disabled by default, null disables it again.
+     */
+    public void setMetricsPath(String metricsPath) {
+        if (metricsPath != null && !metricsPath.startsWith("/")) {
+            throw new IllegalArgumentException("metrics path must start with /");
+        }
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, they are unregistered on {@link #shutdown()}.
+     *
+     * @param objectName name of the MBean, for example {@code sockjs:type=Metrics}
+     */
+    public synchronized void registerMBean(String objectName) {
+        if (mbeanName != null) {
+            throw new IllegalStateException("metrics are already registered as " + mbeanName);
+        }
+        try {
+            ObjectName name = new ObjectName(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(metrics.getRegistry()), name);
+            mbeanName = name;
+        } catch (JMException ex) {
+            throw new IllegalStateException("can not register metrics as " + objectName, ex);
+        }
+    }
+
+    /**
+     * @return watchdog of listener callbacks and transport handlers
+     */
+    public StallWatchdog getStallWatchdog() {
+        return stallWatchdog;
+    }
+
+    /**
+     * Reports threads blocked in listener callbacks or transport handlers for longer than
+     * the threshold, with their stacks, and starts measuring loop lag of the I/O workers.
+     *
+     * @param thresholdMillis 0 disables the watchdog, which is the default
+     */
+    public void setStallThreshold(long thresholdMillis) {
+        stallWatchdog.setThreshold(thresholdMillis);
+    }
+
+    void attachHeartbeat(Connection connection, Channel channel) {
+        heartbeatScheduler.attach(connection, channel);
+        stallWatchdog.watchLoop(channel);
+    }
+
+    /**
+     * @return number of messages sent to the clients per frame, for transports sending queued
+     *         messages as one array frame
+     */
+    public BatchSizeHistogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    /**
+     * @return timer ending batching delays, started by the first endpoint which batches messages
+     */
+    synchronized HashedWheelTimer getBatchTimer() {
+        if (batchTimer == null) {
+            batchTimer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 512);
+        }
+        return batchTimer;
+    }
+
+    /**
+     * Stops background session expiration, heartbeats, the stall watchdog and listener threads.
+     * Sessions are not closed.
+     */
+    public void shutdown() {
+        sessionReaper.stop();
+        heartbeatScheduler.stop();
+        stallWatchdog.stop();
+        synchronized (this) {
+            if (batchTimer != null) {
+                batchTimer.stop();
+            }
+            if (mbeanName != null) {
+                unregisterMBean(mbeanName);
+                mbeanName = null;
+            }
+        }
+        for (ListenerDispatcher dispatcher : listenerDispatchers.values()) {
+            dispatcher.shutdown();
+        }
+    }
+
     public Connection getConnectionForSession(String sessionId) {
         if (sessionId == null) {
             return null;
@@ -171,6 +665,11 @@ public class SockJs {
         return endpointInfos.get(endpoint);
     }
 
+    public EndpointInfo getEndpointInfoOrDefault(String endpoint) {
+        EndpointInfo endpointInfo = endpointInfos.get(endpoint);
+        return endpointInfo == null ? DEFAULT_INFO : endpointInfo;
+    }
+
     public void setEndpointInfo(String endpoint,EndpointInfo info) {
         endpointInfos.put(endpoint, info);
     }
@@ -186,8 +685,38 @@ public class SockJs {
         this.maxStreamSize = maxStreamSize;
     }
 
+    private static void unregisterMBean(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            // nothing to do about it while shutting down
+        }
+    }
+
+    ConnectionGroup getEndpointConnections(String baseUrl) {
+        ConnectionGroup connections = endpointConnections.get(baseUrl);
+        if (connections == null) {
+            connections = new ConnectionGroup();
+            ConnectionGroup oldGroup = endpointConnections.putIfAbsent(baseUrl, connections);
+            connections = oldGroup == null ? connections : oldGroup;
+        }
+        return connections;
+    }
+
+    private synchronized void rebuildRouter() {
+        router = Router.compile(listeners.keySet());
+    }
+
     private void addTransport(String shortName, Transport transport) {
         transports.put(shortName, transport);
+        transportNames = transports.keySet().toArray(new String[transports.size()]);
+        transportList = new Transport[transportNames.length];
+        for (int i = 0; i < transportNames.length; i++) {
+            transportList[i] = transports.get(transportNames[i]);
+        }
     }
 
     private String normalizeBaseUrl(String baseUrl) {
@@ -0,0 +1,252 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import sockjs.metrics.Counter;
+import sockjs.metrics.Gauge;
+import sockjs.metrics.LatencyRecorder;
+import sockjs.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server metrics: sessions, messages and bytes per endpoint and transport, queue depths per
+ * endpoint, websocket handshake failures, rejected second receivers and stream recycles along
+ * with the counters {@link SockJs} keeps itself. Per session counters are looked up once when
+ * the session is created, so sending and receiving only bump striped counters.
+ * <p/>
+ * Latencies of outbound messages are recorded per endpoint and transport by the I/O threads
+ * into their own shards and merged by {@link #getMessageLatency(String, String)}.
+ */
+public class SockJsMetrics {
+
+    /**
+     * Transport label of sessions created without a transport, by embedding code or tests.
+     */
+    public static final String UNKNOWN_TRANSPORT = "unknown";
+
+    private final SockJs sockJs;
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, SessionMetrics> sessionMetrics = new ConcurrentHashMap<String, SessionMetrics>();
+
+    private final ConcurrentHashMap<String, Boolean> endpoints = new ConcurrentHashMap<String, Boolean>();
+
+    SockJsMetrics(final SockJs sockJs) {
+        this.sockJs = sockJs;
+
+        registry.gauge("sockjs_live_sessions", "Sessions in the session registry", new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getLiveSessions();
+            }
+        });
+        registry.register("sockjs_expired_sessions_total", "Sessions closed after the disconnect delay",
+                MetricsRegistry.Type.COUNTER, new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getExpiredSessions();
+            }
+        });
+        registry.register("sockjs_heartbeats_sent_total", "Heartbeat frames sent to idle sessions",
+                MetricsRegistry.Type.COUNTER, new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getSentHeartbeats();
+            }
+        });
+        registry.register("sockjs_high_water_mark_crossings_total", "Times sessions reached the high watermark",
+                MetricsRegistry.Type.COUNTER, new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getHighWaterMarkCrossings();
+            }
+        });
+        registry.register("sockjs_dropped_messages_total", "Outbound messages dropped by slow consumer policies or full queues",
+                MetricsRegistry.Type.COUNTER, new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getDroppedMessages();
+            }
+        });
+        registry.register("sockjs_slow_consumer_disconnects_total", "Sessions closed as slow consumers",
+                MetricsRegistry.Type.COUNTER, new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getSlowConsumerDisconnects();
+            }
+        });
+        registry.histogram("sockjs_batch_size", "Messages sent to a client in one frame", sockJs.getBatchSizes());
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        return registry.toPrometheus();
+    }
+
+    /**
+     * @return counters shared by the sessions of the endpoint opened with the transport
+     */
+    SessionMetrics forSession(String baseUrl, String transport) {
+        if (transport == null) {
+            transport = UNKNOWN_TRANSPORT;
+        }
+        String key = baseUrl + ' ' + transport;
+        SessionMetrics metrics = sessionMetrics.get(key);
+        if (metrics == null) {
+            registerEndpoint(baseUrl);
+            metrics = new SessionMetrics(registry, baseUrl, transport);
+            SessionMetrics oldMetrics = sessionMetrics.putIfAbsent(key, metrics);
+            metrics = oldMetrics == null ? metrics : oldMetrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Counts websocket upgrade requests answered with an error.
+     *
+     * @param reason short name of the error: incorrect_upgrade, invalid_request or unsupported_version
+     */
+    public void onHandshakeFailed(String baseUrl, String reason) {
+        registry.counter("sockjs_websocket_handshake_failures_total", "Websocket upgrade requests answered with an error",
+                "endpoint", baseUrl, "reason", reason).increment();
+    }
+
+    /**
+     * Counts receiving requests closed with "Another connection still open" because the session
+     * already has a receiver.
+     */
+    public void onAlreadyOpened(String baseUrl, String transport) {
+        registry.counter("sockjs_already_opened_total", "Receiving requests rejected while the session has another one open",
+                "endpoint", baseUrl, "transport", transport == null ? UNKNOWN_TRANSPORT : transport).increment();
+    }
+
+    /**
+     * @return latency of messages sent to the sessions of the endpoint opened with the transport,
+     *         null if there were no such sessions
+     */
+    public MessageLatency getMessageLatency(String baseUrl, String transport) {
+        SessionMetrics metrics = sessionMetrics.get(baseUrl + ' ' + transport);
+        return metrics == null ? null : metrics.getLatency();
+    }
+
+    /**
+     * @return latency of messages sent to the sessions of the endpoint by transport name
+     */
+    public Map<String, MessageLatency> getMessageLatencies(String baseUrl) {
+        Map<String, MessageLatency> latencies = new TreeMap<String, MessageLatency>();
+        for (SessionMetrics metrics : sessionMetrics.values()) {
+            if (metrics.baseUrl.equals(baseUrl)) {
+                latencies.put(metrics.transport, metrics.getLatency());
+            }
+        }
+        return latencies;
+    }
+
+    private void registerEndpoint(final String baseUrl) {
+        if (endpoints.putIfAbsent(baseUrl, Boolean.TRUE) != null) {
+            return;
+        }
+        registry.gauge("sockjs_queued_messages", "Messages waiting in session queues for the clients", new Gauge() {
+            @Override
+            public long getValue() {
+                long messages = 0;
+                for (Connection connection : sockJs.getEndpointConnections(baseUrl)) {
+                    messages += connection.getQueuedMessages();
+                }
+                return messages;
+            }
+        }, "endpoint", baseUrl);
+        registry.gauge("sockjs_queued_bytes", "Bytes taken by messages waiting in session queues", new Gauge() {
+            @Override
+            public long getValue() {
+                long bytes = 0;
+                for (Connection connection : sockJs.getEndpointConnections(baseUrl)) {
+                    bytes += connection.getQueuedBytes();
+                }
+                return bytes;
+            }
+        }, "endpoint", baseUrl);
+        registry.gauge("sockjs_listener_pending_bytes", "Inbound messages waiting for the endpoint listeners",
+                new Gauge() {
+            @Override
+            public long getValue() {
+                return sockJs.getPendingListenerBytes(baseUrl);
+            }
+        }, "endpoint", baseUrl);
+    }
+
+    /**
+     * Counters of the sessions opened at one endpoint with one transport.
+     */
+    static class SessionMetrics {
+
+        final String baseUrl;
+
+        final String transport;
+
+        final Counter opened;
+
+        final Counter closed;
+
+        final Counter messagesIn;
+
+        final Counter messagesOut;
+
+        final Counter bytesIn;
+
+        final Counter bytesOut;
+
+        final Counter streamRecycles;
+
+        final LatencyRecorder queueLatency = new LatencyRecorder();
+
+        final LatencyRecorder encodeLatency = new LatencyRecorder();
+
+        final LatencyRecorder wireLatency = new LatencyRecorder();
+
+        final LatencyRecorder totalLatency = new LatencyRecorder();
+
+        SessionMetrics(MetricsRegistry registry, String baseUrl, String transport) {
+            this.baseUrl = baseUrl;
+            this.transport = transport;
+            opened = registry.counter("sockjs_sessions_opened_total", "Sessions opened",
+                    "endpoint", baseUrl, "transport", transport);
+            closed = registry.counter("sockjs_sessions_closed_total", "Sessions closed",
+                    "endpoint", baseUrl, "transport", transport);
+            messagesIn = registry.counter("sockjs_messages_in_total", "Messages received from the clients",
+                    "endpoint", baseUrl, "transport", transport);
+            messagesOut = registry.counter("sockjs_messages_out_total", "Messages written to the clients",
+                    "endpoint", baseUrl, "transport", transport);
+            bytesIn = registry.counter("sockjs_bytes_in_total", "Bytes of client frames carrying messages",
+                    "endpoint", baseUrl, "transport", transport);
+            bytesOut = registry.counter("sockjs_bytes_out_total", "Bytes of frames carrying messages to the clients",
+                    "endpoint", baseUrl, "transport", transport);
+            streamRecycles = registry.counter("sockjs_stream_recycles_total",
+                    "Streaming responses ended after reaching the max stream size",
+                    "endpoint", baseUrl, "transport", transport);
+            registry.gauge("sockjs_sessions_open", "Sessions opened and not closed yet", new Gauge() {
+                @Override
+                public long getValue() {
+                    return opened.getValue() - closed.getValue();
+                }
+            }, "endpoint", baseUrl, "transport", transport);
+        }
+
+        MessageLatency getLatency() {
+            return new MessageLatency(queueLatency.snapshot(), encodeLatency.snapshot(), wireLatency.snapshot(),
+                    totalLatency.snapshot());
+        }
+    }
+}
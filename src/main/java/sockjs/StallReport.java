@@ -0,0 +1,97 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+/**
+ * Thread found blocked in a listener callback or a transport handler for longer than
+ * the stall threshold, with the stack it was blocked in.
+ */
+public class StallReport {
+
+    private final long timestamp;
+
+    private final String threadName;
+
+    private final String endpoint;
+
+    private final String sessionId;
+
+    private final String activity;
+
+    private final long blockedMillis;
+
+    private final StackTraceElement[] stackTrace;
+
+    StallReport(long timestamp, String threadName, String endpoint, String sessionId, String activity,
+                long blockedMillis, StackTraceElement[] stackTrace) {
+        this.timestamp = timestamp;
+        this.threadName = threadName;
+        this.endpoint = endpoint;
+        this.sessionId = sessionId;
+        this.activity = activity;
+        this.blockedMillis = blockedMillis;
+        this.stackTrace = stackTrace;
+    }
+
+    /**
+     * @return time the stall was detected, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return base url of the endpoint or null if the request was not routed yet
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return session id or null if the request does not belong to a session
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return name of the listener callback or of the transport handling the channel event
+     */
+    public String getActivity() {
+        return activity;
+    }
+
+    /**
+     * @return time the thread had been blocked when the stall was detected, it may have been
+     *         blocked for longer
+     */
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    public StackTraceElement[] getStackTrace() {
+        return stackTrace;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(threadName).append(" blocked for ").append(blockedMillis).append(" ms in ").append(activity);
+        if (endpoint != null) {
+            sb.append(" at ").append(endpoint);
+        }
+        if (sessionId != null) {
+            sb.append(" session ").append(sessionId);
+        }
+        for (StackTraceElement element : stackTrace) {
+            sb.append("\n\tat ").append(element);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sockjs.metrics.Gauge;
+import sockjs.metrics.LatencyRecorder;
+import sockjs.metrics.LatencySnapshot;
+import sockjs.metrics.MetricsRegistry;
+import sockjs.netty.EventLoops;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds threads blocked in listener callbacks and transport handlers, and measures how late
+ * I/O workers run the tasks given to them.
+ * <p/>
+ * Watched code is wrapped into {@link #enter(String, String, String)} and {@link #exit(Probe)},
+ * which only stamp a probe owned by the calling thread. A timer looks at the probes twice per
+ * threshold and once a thread stays inside for longer than the threshold, logs its stack
+ * with the endpoint and session it works for. Every entry is reported once however long it
+ * blocks.
+ * <p/>
+ * Loop lag is the time between handing a task to a worker and the worker running it, probed
+ * every {@value #LAG_PROBE_PERIOD_MS} ms with one task at a time per worker.
+ * <p/>
+ * Disabled until {@link #setThreshold(long)} is given a positive value.
+ */
+public class StallWatchdog {
+
+    private static final Logger log = LoggerFactory.getLogger(StallWatchdog.class);
+
+    private static final long TICK_DURATION_MS = 10;
+
+    private static final long LAG_PROBE_PERIOD_MS = 100;
+
+    private static final int MAX_DEPTH = 4;
+
+    private static final int MAX_REPORTS = 32;
+
+    private final MetricsRegistry registry;
+
+    private volatile long thresholdNanos;
+
+    private HashedWheelTimer timer;
+
+    private volatile boolean stopped;
+
+    private final CopyOnWriteArrayList<Probe> probes = new CopyOnWriteArrayList<Probe>();
+
+    private final ThreadLocal<Probe> localProbe = new ThreadLocal<Probe>() {
+        @Override
+        protected Probe initialValue() {
+            Probe probe = new Probe(Thread.currentThread());
+            probes.add(probe);
+            return probe;
+        }
+    };
+
+    private final ConcurrentHashMap<Worker, LoopLag> loops = new ConcurrentHashMap<Worker, LoopLag>();
+
+    private final LinkedList<StallReport> reports = new LinkedList<StallReport>();
+
+    private final AtomicLong stalls = new AtomicLong();
+
+    StallWatchdog(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean isEnabled() {
+        return thresholdNanos > 0;
+    }
+
+    /**
+     * @return time a thread may stay in watched code before it is reported, 0 if disabled
+     */
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * @param thresholdMillis time a thread may stay in watched code before it is reported,
+     *                        0 disables the watchdog
+     */
+    public synchronized void setThreshold(long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("stall threshold can not be negative");
+        }
+        boolean wasEnabled = isEnabled();
+        if (thresholdMillis > 0 && timer == null) {
+            timer = new HashedWheelTimer(TICK_DURATION_MS, TimeUnit.MILLISECONDS, 512);
+        }
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        if (thresholdMillis > 0 && !wasEnabled && !stopped) {
+            timer.newTimeout(new CheckTask(), checkPeriod(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Marks the calling thread as running watched code until the matching {@link #exit(Probe)}.
+     * Calls may nest, the time is counted from the outermost one and the innermost one names
+     * what the thread is doing.
+     *
+     * @param endpoint  base url or null if not known yet
+     * @param sessionId session id or null
+     * @param activity  name of the callback or of the handler
+     * @return probe to pass to {@link #exit(Probe)}, null if the watchdog is disabled
+     */
+    public Probe enter(String endpoint, String sessionId, String activity) {
+        if (thresholdNanos == 0) {
+            return null;
+        }
+        Probe probe = localProbe.get();
+        probe.enter(endpoint, sessionId, activity);
+        return probe;
+    }
+
+    public void exit(Probe probe) {
+        if (probe != null) {
+            probe.exit();
+        }
+    }
+
+    /**
+     * Starts measuring loop lag of the I/O worker serving the channel, once per worker.
+     */
+    public void watchLoop(Channel channel) {
+        if (thresholdNanos == 0 || stopped) {
+            return;
+        }
+        Worker worker = EventLoops.workerOf(channel);
+        if (worker == null || loops.containsKey(worker)) {
+            return;
+        }
+        LoopLag loop = new LoopLag(worker);
+        if (loops.putIfAbsent(worker, loop) == null) {
+            loop.schedule();
+        }
+    }
+
+    /**
+     * @return number of stalls found so far
+     */
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    /**
+     * @return last stalls found, the oldest first
+     */
+    public List<StallReport> getRecentStalls() {
+        synchronized (reports) {
+            return new ArrayList<StallReport>(reports);
+        }
+    }
+
+    /**
+     * @return loop lag by the thread name of the worker, for workers probed at least once
+     */
+    public Map<String, LatencySnapshot> getLoopLag() {
+        Map<String, LatencySnapshot> lag = new TreeMap<String, LatencySnapshot>();
+        for (LoopLag loop : loops.values()) {
+            if (loop.threadName != null) {
+                lag.put(loop.threadName, loop.lag.snapshot());
+            }
+        }
+        return lag;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    private long checkPeriod() {
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 2, TICK_DURATION_MS);
+    }
+
+    private void check() {
+        long threshold = thresholdNanos;
+        long now = System.nanoTime();
+        for (Probe probe : probes) {
+            if (!probe.thread.isAlive()) {
+                probes.remove(probe);
+                continue;
+            }
+            int depth = probe.depth;
+            long since = probe.since;
+            if (depth == 0 || now - since < threshold || probe.reportedSince == since) {
+                continue;
+            }
+            probe.reportedSince = since;
+            int top = Math.min(depth, MAX_DEPTH) - 1;
+            report(new StallReport(System.currentTimeMillis(), probe.thread.getName(), probe.endpoints[top],
+                    probe.sessionIds[top], probe.activities[top], TimeUnit.NANOSECONDS.toMillis(now - since),
+                    probe.thread.getStackTrace()));
+        }
+    }
+
+    private void report(StallReport report) {
+        stalls.incrementAndGet();
+        registry.counter("sockjs_stalls_total", "Threads blocked in listeners or transport handlers over the threshold",
+                "endpoint", report.getEndpoint()).increment();
+        synchronized (reports) {
+            if (reports.size() == MAX_REPORTS) {
+                reports.removeFirst();
+            }
+            reports.addLast(report);
+        }
+        log.warn("Stall detected: " + report);
+    }
+
+    private class CheckTask implements TimerTask {
+        @Override
+        public void run(Timeout timeout) {
+            if (thresholdNanos == 0 || stopped) {
+                return;
+            }
+            try {
+                check();
+            } catch (Exception ex) {
+                log.error("Failed to check for stalls", ex);
+            }
+            timeout.getTimer().newTimeout(this, checkPeriod(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * What one thread is running, written by that thread only.
+     */
+    public static final class Probe {
+
+        private final Thread thread;
+
+        private final String[] endpoints = new String[MAX_DEPTH];
+
+        private final String[] sessionIds = new String[MAX_DEPTH];
+
+        private final String[] activities = new String[MAX_DEPTH];
+
+        private volatile long since;
+
+        private volatile int depth;
+
+        private volatile long reportedSince;
+
+        private Probe(Thread thread) {
+            this.thread = thread;
+        }
+
+        private void enter(String endpoint, String sessionId, String activity) {
+            int current = depth;
+            if (current < MAX_DEPTH) {
+                endpoints[current] = endpoint;
+                sessionIds[current] = sessionId;
+                activities[current] = activity;
+            }
+            if (current == 0) {
+                since = System.nanoTime();
+            }
+            depth = current + 1;
+        }
+
+        private void exit() {
+            int current = depth;
+            if (current > 0) {
+                depth = current - 1;
+            }
+        }
+    }
+
+    /**
+     * Probes one worker with a task at a time, the worker thread records how late it ran.
+     */
+    private class LoopLag implements TimerTask, Runnable {
+
+        private final Worker worker;
+
+        private final LatencyRecorder lag = new LatencyRecorder();
+
+        private volatile String threadName;
+
+        private volatile long submitted;
+
+        private LoopLag(Worker worker) {
+            this.worker = worker;
+        }
+
+        void schedule() {
+            if (!stopped && thresholdNanos > 0) {
+                timer.newTimeout(this, LAG_PROBE_PERIOD_MS, TimeUnit.MILLISECONDS);
+            } else {
+                loops.remove(worker, this);
+            }
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            submitted = System.nanoTime();
+            worker.executeInIoThread(this);
+        }
+
+        @Override
+        public void run() {
+            lag.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - submitted));
+            if (threadName == null) {
+                threadName = Thread.currentThread().getName();
+                registerGauges();
+            }
+            schedule();
+        }
+
+        private void registerGauges() {
+            String[] quantiles = {"0.5", "0.99", "0.999"};
+            for (String quantile : quantiles) {
+                final double percentile = Double.parseDouble(quantile) * 100;
+                registry.gauge("sockjs_loop_lag_micros", "Delay of tasks handed to I/O workers",
+                        new Gauge() {
+                    @Override
+                    public long getValue() {
+                        return lag.snapshot().getPercentileMicros(percentile);
+                    }
+                }, "worker", threadName, "quantile", quantile);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Topic to subscribers index. Subscribers of a topic are kept in a set, so subscribe and
+ * unsubscribe take constant time even during connect or disconnect storms. Publishing reads an
+ * array snapshot of the set without locks, the snapshot is dropped on every change and taken
+ * again by the next publish to the topic.
+ */
+class TopicIndex {
+
+    private static final Connection[] NO_SUBSCRIBERS = new Connection[0];
+
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<String, Topic>();
+
+    /**
+     * @return false if the connection is already subscribed
+     */
+    boolean subscribe(String topic, Connection connection) {
+        while (true) {
+            Topic current = topics.get(topic);
+            if (current == null) {
+                Topic created = new Topic();
+                current = topics.putIfAbsent(topic, created);
+                if (current == null) {
+                    current = created;
+                }
+            }
+            synchronized (current) {
+                // the last subscriber left and the topic was removed meanwhile
+                if (!current.removed) {
+                    return current.add(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the connection was not subscribed
+     */
+    boolean unsubscribe(String topic, Connection connection) {
+        Topic current = topics.get(topic);
+        if (current == null) {
+            return false;
+        }
+        synchronized (current) {
+            if (!current.remove(connection)) {
+                return false;
+            }
+            if (current.isEmpty()) {
+                current.removed = true;
+                topics.remove(topic, current);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return snapshot of topic subscribers, must not be modified
+     */
+    Connection[] getSubscribers(String topic) {
+        Topic current = topics.get(topic);
+        return current == null ? NO_SUBSCRIBERS : current.snapshot();
+    }
+
+    int getSubscriberCount(String topic) {
+        Topic current = topics.get(topic);
+        return current == null ? 0 : current.size();
+    }
+
+    int getTopicCount() {
+        return topics.size();
+    }
+
+    /**
+     * Subscribers of one topic, changed holding the topic lock.
+     */
+    private static final class Topic {
+
+        private final Set<Connection> connections = new LinkedHashSet<Connection>();
+
+        private volatile Connection[] snapshot;
+
+        private boolean removed;
+
+        boolean add(Connection connection) {
+            if (!connections.add(connection)) {
+                return false;
+            }
+            snapshot = null;
+            return true;
+        }
+
+        boolean remove(Connection connection) {
+            if (!connections.remove(connection)) {
+                return false;
+            }
+            snapshot = null;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return connections.isEmpty();
+        }
+
+        synchronized int size() {
+            return connections.size();
+        }
+
+        Connection[] snapshot() {
+            Connection[] current = snapshot;
+            if (current == null) {
+                synchronized (this) {
+                    current = snapshot;
+                    if (current == null) {
+                        current = connections.toArray(new Connection[connections.size()]);
+                        snapshot = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package sockjs;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
+import sockjs.transports.EncodedFrame;
 import sockjs.transports.Protocol;
 
 public interface Transport {
@@ -14,7 +16,20 @@ public interface Transport {
 
     void sendHeartbeat(Connection connection);
 
-    void sendMessage(Connection connection, String[] messagesToSend);
+    /**
+     * Sends SockJS frame to the client wrapped as the transport requires.
+     */
+    void sendMessage(Connection connection, ChannelBuffer frame);
+
+    /**
+     * Sends message encoded once for many connections, buffers of the frame are not modified.
+     */
+    void sendFrame(Connection connection, EncodedFrame frame);
+
+    /**
+     * Sends everything queued for the connection, called on the I/O thread of its channel.
+     */
+    void flushMessages(Connection connection);
 
     void handleCloseRequest(Connection connection, Protocol.CloseReason reason);
 }
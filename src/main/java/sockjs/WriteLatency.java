@@ -0,0 +1,82 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.util.List;
+
+/**
+ * Latency of messages taken from a session queue for one write. Queue wait and encoding are
+ * recorded when the messages are drained, the rest once the write future reports the bytes
+ * handed to the socket. Send futures whose last message is in the write complete along with it.
+ */
+class WriteLatency implements ChannelFutureListener {
+
+    private final SockJsMetrics.SessionMetrics metrics;
+
+    private final int[] enqueuedAt;
+
+    private final int count;
+
+    private final int encoded;
+
+    private List<SendBatch> sends;
+
+    /**
+     * @param enqueuedAt enqueue times of the messages as returned by {@link MessageQueue#micros()}
+     * @param drained    time the drain started
+     * @param sends      send futures done by this write or null
+     */
+    WriteLatency(SockJsMetrics.SessionMetrics metrics, int[] enqueuedAt, int count, int drained,
+                 List<SendBatch> sends) {
+        this.metrics = metrics;
+        this.sends = sends;
+        this.enqueuedAt = enqueuedAt;
+        this.count = count;
+        this.encoded = MessageQueue.micros();
+        for (int i = 0; i < count; i++) {
+            metrics.queueLatency.record(drained - enqueuedAt[i]);
+        }
+        metrics.encodeLatency.record(encoded - drained);
+    }
+
+    /**
+     * Takes over send futures of a write which never took place, they are written with this one.
+     */
+    void takeSends(WriteLatency previous) {
+        if (previous.sends == null) {
+            return;
+        }
+        if (sends != null) {
+            previous.sends.addAll(sends);
+        }
+        sends = previous.sends;
+        previous.sends = null;
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture future) {
+        if (!future.isSuccess()) {
+            if (sends != null) {
+                for (SendBatch send : sends) {
+                    send.setFailure(future.getCause());
+                }
+            }
+            return;
+        }
+        int written = MessageQueue.micros();
+        metrics.wireLatency.record(written - encoded);
+        for (int i = 0; i < count; i++) {
+            metrics.totalLatency.record(written - enqueuedAt[i]);
+        }
+        if (sends != null) {
+            for (SendBatch send : sends) {
+                send.setSuccess();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sockjs.Connection;
+
+/**
+ * Flight recorder events of the server: session lifecycle, websocket handshakes, queueing and
+ * flushing of outbound messages, slow listener callbacks and stream recycles.
+ * <p/>
+ * The methods of this class do nothing. {@link #INSTANCE} records the events into JFR when
+ * the JVM has it and {@code sockjs.jfr} system property is not set to false, otherwise it is
+ * a no-op sink. Each event checks that it is enabled in a running recording before reading
+ * anything from the session, so instrumented code pays one call while nothing is recorded.
+ * Duration events are started with a {@code begin} method returning a token, null if
+ * the event is off, and passed back to the matching {@code end} method.
+ */
+public abstract class EventSink {
+
+    private static final Logger log = LoggerFactory.getLogger(EventSink.class);
+
+    public static final EventSink INSTANCE = create();
+
+    /**
+     * Creates the sink if it is not created yet. The recorder sets up its metadata when
+     * the first event type is registered, which takes long enough to stall an I/O thread,
+     * so the server calls this on start rather than leaving it to the first session.
+     */
+    public static void load() {
+    }
+
+    public void sessionOpened(Connection connection) {
+    }
+
+    /**
+     * Called once per session, before the queued messages are dropped.
+     *
+     * @param reason name of the close reason sent to the client, EXPIRED for a session closed
+     *               by the idle timeout or null if neither applies
+     */
+    public void sessionClosed(Connection connection, String reason) {
+    }
+
+    /**
+     * @param idleMillis time since the last request or message of the session
+     * @param attached   session still had a receiving channel, so the idle timeout expired it
+     */
+    public void sessionExpired(Connection connection, long idleMillis, boolean attached) {
+    }
+
+    /**
+     * @param failure short name of the error or null if the upgrade succeeded
+     */
+    public void handshake(String baseUrl, String transport, String failure) {
+    }
+
+    /**
+     * @param size length of the message, in chars for text and in bytes for encoded messages
+     */
+    public void messageEnqueued(Connection connection, int size) {
+    }
+
+    public Object beginFlush() {
+        return null;
+    }
+
+    public void endFlush(Object token, Connection connection, int messages, int bytes) {
+    }
+
+    public Object beginListener() {
+        return null;
+    }
+
+    /**
+     * @param callback name of the {@link sockjs.ConnectionListener} method
+     */
+    public void endListener(Object token, Connection connection, String callback, Object listener) {
+    }
+
+    /**
+     * @param bytes bytes written to the stream which is ended
+     */
+    public void streamRecycled(Connection connection, int bytes) {
+    }
+
+    private static EventSink create() {
+        if ("false".equals(System.getProperty("sockjs.jfr"))) {
+            return new EventSink() {
+            };
+        }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventSink) Class.forName("sockjs.jfr.JfrEventSink").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            return disabled(ex);
+        } catch (LinkageError ex) {
+            return disabled(ex);
+        }
+    }
+
+    private static EventSink disabled(Throwable cause) {
+        log.debug("Flight recorder events are off: " + cause);
+        return new EventSink() {
+        };
+    }
+}
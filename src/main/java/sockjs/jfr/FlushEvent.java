@@ -0,0 +1,31 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.Flush")
+@Label("Flush")
+@Category("SockJS")
+@Description("Queued messages of a session encoded into one frame for a write")
+@StackTrace(false)
+class FlushEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Batch Size")
+    int messages;
+
+    @Label("Frame Size")
+    @DataAmount
+    int bytes;
+}
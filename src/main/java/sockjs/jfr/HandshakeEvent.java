@@ -0,0 +1,28 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.WebSocketHandshake")
+@Label("WebSocket Handshake")
+@Category("SockJS")
+@Description("Websocket upgrade request answered")
+@StackTrace(false)
+class HandshakeEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Failure")
+    @Description("Short name of the error, empty on success")
+    String failure;
+}
@@ -0,0 +1,158 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.FlightRecorder;
+import sockjs.Connection;
+import sockjs.SockJsMetrics;
+
+/**
+ * Records the events into JFR. Loaded by {@link EventSink} only if the JVM has jdk.jfr.
+ */
+class JfrEventSink extends EventSink {
+
+    JfrEventSink() {
+        FlightRecorder.register(SessionOpenedEvent.class);
+        FlightRecorder.register(SessionClosedEvent.class);
+        FlightRecorder.register(SessionExpiredEvent.class);
+        FlightRecorder.register(HandshakeEvent.class);
+        FlightRecorder.register(MessageEnqueuedEvent.class);
+        FlightRecorder.register(FlushEvent.class);
+        FlightRecorder.register(ListenerCallbackEvent.class);
+        FlightRecorder.register(StreamRecycleEvent.class);
+    }
+
+    @Override
+    public void sessionOpened(Connection connection) {
+        SessionOpenedEvent event = new SessionOpenedEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.transport = transport(connection);
+            event.commit();
+        }
+    }
+
+    @Override
+    public void sessionClosed(Connection connection, String reason) {
+        SessionClosedEvent event = new SessionClosedEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.transport = transport(connection);
+            event.reason = reason == null ? "" : reason;
+            event.queuedMessages = connection.getQueuedMessages();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void sessionExpired(Connection connection, long idleMillis, boolean attached) {
+        SessionExpiredEvent event = new SessionExpiredEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.transport = transport(connection);
+            event.idle = idleMillis;
+            event.attached = attached;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void handshake(String baseUrl, String transport, String failure) {
+        HandshakeEvent event = new HandshakeEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = baseUrl;
+            event.transport = transport;
+            event.success = failure == null;
+            event.failure = failure == null ? "" : failure;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void messageEnqueued(Connection connection, int size) {
+        MessageEnqueuedEvent event = new MessageEnqueuedEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.size = size;
+            event.queuedMessages = connection.getQueuedMessages();
+            event.queuedBytes = connection.getQueuedBytes();
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginFlush() {
+        FlushEvent event = new FlushEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endFlush(Object token, Connection connection, int messages, int bytes) {
+        if (token == null) {
+            return;
+        }
+        FlushEvent event = (FlushEvent) token;
+        event.end();
+        if (messages > 0 && event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.transport = transport(connection);
+            event.messages = messages;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginListener() {
+        ListenerCallbackEvent event = new ListenerCallbackEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endListener(Object token, Connection connection, String callback, Object listener) {
+        if (token == null) {
+            return;
+        }
+        ListenerCallbackEvent event = (ListenerCallbackEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.callback = callback;
+            event.listener = listener.getClass();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void streamRecycled(Connection connection, int bytes) {
+        StreamRecycleEvent event = new StreamRecycleEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = connection.getBaseUrl();
+            event.sessionId = connection.getSessionId();
+            event.transport = transport(connection);
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    private static String transport(Connection connection) {
+        String transport = connection.getTransportName();
+        return transport == null ? SockJsMetrics.UNKNOWN_TRANSPORT : transport;
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.SlowListener")
+@Label("Slow Listener Callback")
+@Category("SockJS")
+@Description("Connection listener callback which took longer than the threshold")
+@Threshold("20 ms")
+class ListenerCallbackEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Callback")
+    String callback;
+
+    @Label("Listener")
+    Class<?> listener;
+}
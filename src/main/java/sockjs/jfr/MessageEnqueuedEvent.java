@@ -0,0 +1,33 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.MessageEnqueued")
+@Label("Message Enqueued")
+@Category("SockJS")
+@Description("Outbound message added to a session queue, one event per message so disabled by default")
+@Enabled(false)
+@StackTrace(false)
+class MessageEnqueuedEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Message Size")
+    @Description("Length of the message, in chars for text and in bytes for encoded messages")
+    int size;
+
+    @Label("Queued Messages")
+    int queuedMessages;
+
+    @Label("Queued Bytes")
+    @DataAmount
+    int queuedBytes;
+}
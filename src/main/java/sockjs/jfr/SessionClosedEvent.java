@@ -0,0 +1,32 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.SessionClosed")
+@Label("Session Closed")
+@Category("SockJS")
+@Description("SockJS session removed from the registry")
+@StackTrace(false)
+class SessionClosedEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Close Reason")
+    @Description("Reason sent to the client or EXPIRED if the session timed out, empty otherwise")
+    String reason;
+
+    @Label("Queued Messages")
+    @Description("Messages dropped from the queue by closing")
+    int queuedMessages;
+}
@@ -0,0 +1,32 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.SessionExpired")
+@Label("Session Expired")
+@Category("SockJS")
+@Description("SockJS session closed after the disconnect delay or the idle timeout")
+@StackTrace(false)
+class SessionExpiredEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Idle Time")
+    @Timespan(Timespan.MILLISECONDS)
+    long idle;
+
+    @Label("Attached")
+    @Description("Session still had a receiving channel, so it expired by the idle timeout")
+    boolean attached;
+}
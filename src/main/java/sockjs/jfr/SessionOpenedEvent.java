@@ -0,0 +1,24 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.SessionOpened")
+@Label("Session Opened")
+@Category("SockJS")
+@Description("SockJS session created by its first receiving request")
+@StackTrace(false)
+class SessionOpenedEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Transport")
+    String transport;
+}
@@ -0,0 +1,28 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.*;
+
+@Name("sockjs.StreamRecycle")
+@Label("Stream Recycle")
+@Category("SockJS")
+@Description("Streaming response ended after reaching the max stream size, the client opens a new one")
+@StackTrace(false)
+class StreamRecycleEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Session Id")
+    String sessionId;
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    int bytes;
+}
@@ -0,0 +1,28 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter striped over cells, so I/O threads updating it at once do not contend.
+ */
+public class Counter implements Gauge {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    @Override
+    public long getValue() {
+        return value.sum();
+    }
+}
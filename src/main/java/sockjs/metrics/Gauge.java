@@ -0,0 +1,13 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+/**
+ * Value read when metrics are collected.
+ */
+public interface Gauge {
+
+    long getValue();
+}
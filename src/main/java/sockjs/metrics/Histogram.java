@@ -0,0 +1,28 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+/**
+ * Counts of observed values in buckets with ascending upper bounds, the last bucket is unbounded.
+ */
+public interface Histogram {
+
+    int getBucketCount();
+
+    /**
+     * @return largest value counted in the bucket, ignored for the last one
+     */
+    long getUpperBound(int bucket);
+
+    /**
+     * @return number of values counted in the bucket alone, not in the smaller ones
+     */
+    long getCount(int bucket);
+
+    /**
+     * @return sum of all observed values
+     */
+    long getSum();
+}
@@ -0,0 +1,69 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies in microseconds into a shard owned by the recording thread, so I/O workers
+ * never contend or wait on each other. Shards are merged into a {@link LatencySnapshot} on demand.
+ */
+public class LatencyRecorder {
+
+    private final CopyOnWriteArrayList<Shard> shards = new CopyOnWriteArrayList<Shard>();
+
+    private final ThreadLocal<Shard> localShard = new ThreadLocal<Shard>() {
+        @Override
+        protected Shard initialValue() {
+            Shard shard = new Shard();
+            shards.add(shard);
+            return shard;
+        }
+    };
+
+    public void record(long micros) {
+        localShard.get().record(micros < 0 ? 0 : micros);
+    }
+
+    /**
+     * @return distribution of everything recorded so far by all threads
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[LatencySnapshot.BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (Shard shard : shards) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += shard.counts.get(i);
+            }
+            sum += shard.sum.get();
+            max = Math.max(max, shard.max.get());
+        }
+        return new LatencySnapshot(counts, sum, max);
+    }
+
+    /**
+     * Written by its thread only, plain increments published with ordered stores are enough.
+     */
+    private static class Shard {
+
+        final AtomicLongArray counts = new AtomicLongArray(LatencySnapshot.BUCKETS);
+
+        final AtomicLong sum = new AtomicLong();
+
+        final AtomicLong max = new AtomicLong();
+
+        void record(long micros) {
+            int index = LatencySnapshot.index(micros);
+            counts.lazySet(index, counts.get(index) + 1);
+            sum.lazySet(sum.get() + micros);
+            if (micros > max.get()) {
+                max.lazySet(micros);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+/**
+ * Latency distribution in microseconds, merged from the shards of a {@link LatencyRecorder}.
+ * <p/>
+ * Values below 32 get a bucket each, above that every power of two is split into 16 buckets,
+ * so percentiles are within 6.25% of the recorded values. Values are counted up to about
+ * 70 minutes, larger ones fall into the last bucket.
+ */
+public class LatencySnapshot {
+
+    private static final int SUB_BUCKETS = 16;
+
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    static final int BUCKETS = LINEAR_LIMIT + 27 * SUB_BUCKETS;
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    LatencySnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        this.count = total;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return count == 0 ? 0 : sum / (double) count;
+    }
+
+    public long getMaxMicros() {
+        return max;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return highest value of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? max : Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) Math.max(0, micros);
+        }
+        // micros >> shift falls into [16, 32)
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 4;
+        int index = LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (micros >> shift) - SUB_BUCKETS;
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    private static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "{count: " + count + ", mean: " + Math.round(getMeanMicros()) + "us, p50: " + getPercentileMicros(50)
+                + "us, p99: " + getPercentileMicros(99) + "us, p999: " + getPercentileMicros(99.9)
+                + "us, max: " + max + "us}";
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named metric families, each with series told apart by label values. Counters are updated
+ * without locks, gauges and histograms are read only when the metrics are collected, in
+ * the Prometheus text format or as a flat snapshot.
+ * <p/>
+ * Labels are given as name and value pairs: {@code counter("sockjs_sessions_opened_total",
+ * "Sessions opened", "endpoint", "/echo", "transport", "xhr")}.
+ */
+public class MetricsRegistry {
+
+    public enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private final ConcurrentHashMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+
+    /**
+     * @return counter of the series, the same one for every call with the same name and labels
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Family family = family(name, help, Type.COUNTER);
+        String key = renderLabels(labels);
+        Object series = family.series.get(key);
+        if (series == null) {
+            Counter counter = new Counter();
+            series = family.series.putIfAbsent(key, counter);
+            if (series == null) {
+                return counter;
+            }
+        }
+        if (!(series instanceof Counter)) {
+            throw new IllegalArgumentException("metric " + name + key + " is not a counter");
+        }
+        return (Counter) series;
+    }
+
+    /**
+     * Registers a counter or a gauge whose value is kept elsewhere, replacing the previous
+     * one with the same name and labels.
+     */
+    public void register(String name, String help, Type type, Gauge gauge, String... labels) {
+        if (type == Type.HISTOGRAM) {
+            throw new IllegalArgumentException("histograms are registered with histogram()");
+        }
+        family(name, help, type).series.put(renderLabels(labels), gauge);
+    }
+
+    public void gauge(String name, String help, Gauge gauge, String... labels) {
+        register(name, help, Type.GAUGE, gauge, labels);
+    }
+
+    /**
+     * Registers a histogram, exported as cumulative {@code _bucket} series with the {@code le}
+     * label along with {@code _sum} and {@code _count}.
+     */
+    public void histogram(String name, String help, Histogram histogram, String... labels) {
+        family(name, help, Type.HISTOGRAM).series.put(renderLabels(labels), histogram);
+    }
+
+    /**
+     * Drops the series, for example when the object it reports on is gone.
+     */
+    public void remove(String name, String... labels) {
+        Family family = families.get(name);
+        if (family != null) {
+            family.series.remove(renderLabels(labels));
+        }
+    }
+
+    /**
+     * Writes every family in the Prometheus text exposition format 0.0.4, sorted by name.
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Family family : new TreeMap<String, Family>(families).values()) {
+            Map<String, Object> series = new TreeMap<String, Object>(family.series);
+            if (series.isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> entry : series.entrySet()) {
+                if (family.type == Type.HISTOGRAM) {
+                    writeHistogram(out, family.name, entry.getKey(), (Histogram) entry.getValue());
+                } else {
+                    writeSample(out, family.name, entry.getKey(), ((Gauge) entry.getValue()).getValue());
+                }
+            }
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        writePrometheus(out);
+        return out.toString();
+    }
+
+    /**
+     * @return current value of every sample, keyed by its name with labels as they are exported
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> samples = new TreeMap<String, Long>();
+        for (Family family : families.values()) {
+            for (Map.Entry<String, Object> entry : family.series.entrySet()) {
+                String labels = entry.getKey();
+                if (family.type == Type.HISTOGRAM) {
+                    Histogram histogram = (Histogram) entry.getValue();
+                    long cumulative = 0;
+                    for (int i = 0; i < histogram.getBucketCount(); i++) {
+                        cumulative += histogram.getCount(i);
+                        samples.put(family.name + "_bucket" + withLe(labels, histogram, i), cumulative);
+                    }
+                    samples.put(family.name + "_sum" + labels, histogram.getSum());
+                    samples.put(family.name + "_count" + labels, cumulative);
+                } else {
+                    samples.put(family.name + labels, ((Gauge) entry.getValue()).getValue());
+                }
+            }
+        }
+        return samples;
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.get(name);
+        if (family == null) {
+            Family newFamily = new Family(name, help, type);
+            family = families.putIfAbsent(name, newFamily);
+            if (family == null) {
+                return newFamily;
+            }
+        }
+        if (family.type != type) {
+            throw new IllegalArgumentException("metric " + name + " is already registered as "
+                    + family.type.name().toLowerCase());
+        }
+        return family;
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long cumulative = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            cumulative += histogram.getCount(i);
+            writeSample(out, name + "_bucket", withLe(labels, histogram, i), cumulative);
+        }
+        writeSample(out, name + "_sum", labels, histogram.getSum());
+        writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String withLe(String labels, Histogram histogram, int bucket) {
+        String le = bucket == histogram.getBucketCount() - 1 ? "+Inf" : String.valueOf(histogram.getUpperBound(bucket));
+        if (labels.isEmpty()) {
+            return "{le=\"" + le + "\"}";
+        }
+        return labels.substring(0, labels.length() - 1) + ",le=\"" + le + "\"}";
+    }
+
+    /**
+     * @return labels as they are written after the metric name, empty string if there are none
+     */
+    static String renderLabels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name and value pairs");
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                switch (c) {
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static class Family {
+
+        final String name;
+
+        final String help;
+
+        final Type type;
+
+        final ConcurrentHashMap<String, Object> series = new ConcurrentHashMap<String, Object>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
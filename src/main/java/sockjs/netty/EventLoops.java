@@ -0,0 +1,39 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.channel.socket.nio.NioSocketChannel;
+
+public class EventLoops {
+
+    private EventLoops() {
+    }
+
+    /**
+     * @return I/O worker serving the channel or null if the channel is not served by NIO workers
+     */
+    public static Worker workerOf(Channel channel) {
+        if (channel instanceof NioSocketChannel) {
+            return ((NioSocketChannel) channel).getWorker();
+        }
+        return null;
+    }
+
+    /**
+     * Runs the task on the I/O thread of the channel, right away when called on that thread.
+     * Unlike {@link org.jboss.netty.channel.ChannelPipeline#execute(Runnable)} no future is
+     * created for the task.
+     */
+    public static void execute(Channel channel, Runnable task) {
+        Worker worker = workerOf(channel);
+        if (worker != null) {
+            worker.executeInIoThread(task);
+        } else {
+            channel.getPipeline().execute(task);
+        }
+    }
+}
@@ -4,6 +4,7 @@
  */
 package sockjs.netty;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.http.*;
@@ -12,6 +13,7 @@ import org.jboss.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sockjs.EndpointInfo;
+import sockjs.Route;
 import sockjs.SockJs;
 import sockjs.Transport;
 import sockjs.transports.AbstractTransport;
@@ -24,6 +26,8 @@ public class HttpHandler extends SimpleChannelHandler {
 
     private final SockJs sockJs;
 
+    private final Route route = new Route();
+
     private boolean credentialAllowed = true;
 
     private int maxAge = 31536000;
@@ -47,12 +51,21 @@ public class HttpHandler extends SimpleChannelHandler {
 
     private void handleRequest(ChannelHandlerContext ctx, HttpRequest req) {
 
-        if (!sockJs.hasListenerForRoute(req.getUri())) {
+        if (isMetricsRequest(req.getUri())) {
+            if (req.getMethod() == HttpMethod.GET) {
+                sendMetrics(ctx);
+            } else {
+                HttpHelpers.sendMethodNotAllowed(ctx, "GET");
+            }
+            return;
+        }
+
+        if (!sockJs.route(req.getUri(), route)) {
             HttpHelpers.sendError(ctx, HttpResponseStatus.NOT_FOUND);
             return;
         }
 
-        if (sockJs.isRootOfBaseUrl(req.getUri())) {
+        if (route.isRoot()) {
             if (req.getMethod() == HttpMethod.GET) {
                 sendGreeting(ctx, req);
                 return;
@@ -62,8 +75,8 @@ public class HttpHandler extends SimpleChannelHandler {
             }
         }
 
-        String baseUrl = sockJs.getBaseUrl(req.getUri());
-        if (req.getUri().endsWith("/info")) {
+        String baseUrl = route.getBaseUrl();
+        if (route.isInfo()) {
             if (req.getMethod() == HttpMethod.GET) {
                 sendInfo(ctx, baseUrl);
             } else if (req.getMethod() == HttpMethod.OPTIONS) {
@@ -72,21 +85,19 @@ public class HttpHandler extends SimpleChannelHandler {
             return;
         }
 
-        if (req.getUri().matches(".*/iframe[\\d\\w\\.\\-_]*.html.*") && req.getMethod() == HttpMethod.GET) {
+        if (route.isIframe() && req.getMethod() == HttpMethod.GET) {
             HttpHelpers.sendIFrameHtml(ctx, req.getHeader(HttpHeaders.Names.IF_NONE_MATCH));
             return;
         }
 
 
-        String transportName = getTransport(req.getUri());
-        String suffix = req.getUri().substring(baseUrl.length(), req.getUri().lastIndexOf("/"));
-        if (!transportName.equals("websocket") && (suffix.contains(".") || !suffix.matches("/.+/.+"))) {
-            log.info("bad suffix: " + suffix);
+        if (!route.isTransport(SockJs.WEBSOCKET_TRANSPORT) && !route.isSessionPath()) {
+            log.info("bad suffix: " + req.getUri().substring(baseUrl.length()));
             HttpHelpers.sendError(ctx, HttpResponseStatus.NOT_FOUND);
             return;
         }
 
-        AbstractTransport transport = (AbstractTransport)sockJs.getTransport(transportName);
+        AbstractTransport transport = (AbstractTransport)sockJs.getTransport(route);
         if (transport == null) {
             HttpHelpers.sendError(ctx, HttpResponseStatus.NOT_FOUND);
             return;
@@ -99,11 +110,12 @@ public class HttpHandler extends SimpleChannelHandler {
             jsesssionId = jsesssionId != null ? jsesssionId : "dummy";
         }
 
-        String sessionId = getSessionId(req.getUri().substring(baseUrl.length() + 1));
+        String sessionId = route.getSessionId();
 
         SockJsHandlerContext sockJsHandlerContext = new SockJsHandlerContext();
         sockJsHandlerContext.setBaseUrl(baseUrl);
         sockJsHandlerContext.setSessionId(sessionId);
+        sockJsHandlerContext.setTransport(route.getTransport());
         sockJsHandlerContext.setConnection(sockJs.getConnectionForSession(sessionId));
         sockJsHandlerContext.setJSESSIONID(jsesssionId);
         ctx.getPipeline().replace(this, "handler", transport);
@@ -139,6 +151,22 @@ public class HttpHandler extends SimpleChannelHandler {
         }
     }
 
+    private boolean isMetricsRequest(String uri) {
+        String metricsPath = sockJs.getMetricsPath();
+        return metricsPath != null && uri.startsWith(metricsPath)
+                && (uri.length() == metricsPath.length() || uri.charAt(metricsPath.length()) == '?');
+    }
+
+    private void sendMetrics(ChannelHandlerContext ctx) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.setHeader(HttpHeaders.Names.CACHE_CONTROL, "no-store, no-cache, must-revalidate, max-age=0");
+        response.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain; version=0.0.4; charset=utf-8");
+        ChannelBuffer content = ChannelBuffers.copiedBuffer(sockJs.getMetrics().toPrometheus(), CharsetUtil.UTF_8);
+        response.setHeader(HttpHeaders.Names.CONTENT_LENGTH, content.readableBytes());
+        response.setContent(content);
+        ctx.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
     private void sendInfo(ChannelHandlerContext ctx, String baseUrl) {
         HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
         response.setHeader(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_CREDENTIALS, credentialAllowed);
@@ -150,21 +178,4 @@ public class HttpHandler extends SimpleChannelHandler {
         response.setContent(ChannelBuffers.copiedBuffer(info, CharsetUtil.UTF_8));
         ctx.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
     }
-
-    private String getTransport(String uri) {
-        int lastSlashIndex = uri.lastIndexOf("/");
-        if (lastSlashIndex > -1) {
-            int paramQSignIndex = uri.indexOf("?", lastSlashIndex);
-            return uri.substring(lastSlashIndex + 1, paramQSignIndex != -1 ? paramQSignIndex : uri.length());
-        }
-        return null;
-    }
-
-    private String getSessionId(String uri) {
-        String[] parsedUri = uri.split("/");
-        if (parsedUri.length > 2) {
-            return parsedUri[parsedUri.length - 2];
-        }
-        return null;
-    }
 }
@@ -15,10 +15,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.security.provider.MD5;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
@@ -38,10 +37,10 @@ public class HttpHelpers {
 
     static {
         try {
-            URL iframeResource =  Thread.currentThread().getContextClassLoader().getResource("sockjs_iframe.html");
-            File iframeHtmlFile = new File(iframeResource.getPath());
-            byte[] iframeContent = IOUtils.toByteArray(new FileInputStream(iframeHtmlFile));
-            String lastModified = new Date(iframeHtmlFile.lastModified()).toString();
+            URL iframeResource =  HttpHelpers.class.getClassLoader().getResource("sockjs_iframe.html");
+            URLConnection iframeConnection = iframeResource.openConnection();
+            byte[] iframeContent = IOUtils.toByteArray(iframeConnection.getInputStream());
+            String lastModified = new Date(iframeConnection.getLastModified()).toString();
 
             IFRAME_ETAG = initIFrameETag(iframeContent);
             IFRAME_HTML = initIFrameResponse(iframeContent, lastModified);
@@ -17,8 +17,11 @@ public class PipelineFactory implements ChannelPipelineFactory {
 
     SockJs sockJs;
 
+    private final StallWatchHandler stallWatchHandler;
+
     public PipelineFactory(SockJs sockJs) {
         this.sockJs = sockJs;
+        this.stallWatchHandler = new StallWatchHandler(sockJs.getStallWatchdog());
     }
 
     @Override
@@ -26,6 +29,8 @@ public class PipelineFactory implements ChannelPipelineFactory {
             throws Exception {
         ChannelPipeline pipeline = new DefaultChannelPipeline();
 
+        pipeline.addLast("latency", WriteLatencyHandler.INSTANCE);
+        pipeline.addLast("stall", stallWatchHandler);
         pipeline.addLast("decoder", new HttpRequestDecoder());
         //pipeline.addLast("aggregator", new HttpChunkAggregator(Short.MAX_VALUE));
         pipeline.addLast("encoder", new HttpResponseEncoder());
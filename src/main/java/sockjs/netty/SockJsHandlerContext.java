@@ -4,6 +4,7 @@
  */
 package sockjs.netty;
 
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketVersion;
 import sockjs.Connection;
 
 public class SockJsHandlerContext {
@@ -14,8 +15,12 @@ public class SockJsHandlerContext {
 
     private String sessionId;
 
+    private String transport;
+
     private String JSESSIONID;
 
+    private WebSocketVersion webSocketVersion;
+
     public String getBaseUrl() {
         return baseUrl;
     }
@@ -40,6 +45,17 @@ public class SockJsHandlerContext {
         this.sessionId = sessionId;
     }
 
+    /**
+     * @return name of the transport the request was routed to
+     */
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
     public String getJSESSIONID() {
         return JSESSIONID;
     }
@@ -47,4 +63,15 @@ public class SockJsHandlerContext {
     public void setJSESSIONID(String JSESSIONID) {
         this.JSESSIONID = JSESSIONID;
     }
+
+    /**
+     * @return protocol version of the websocket handshake, null if the request was not upgraded
+     */
+    public WebSocketVersion getWebSocketVersion() {
+        return webSocketVersion;
+    }
+
+    public void setWebSocketVersion(WebSocketVersion webSocketVersion) {
+        this.webSocketVersion = webSocketVersion;
+    }
 }
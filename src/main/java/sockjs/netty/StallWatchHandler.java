@@ -0,0 +1,49 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.netty;
+
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import sockjs.StallWatchdog;
+
+/**
+ * Sits in front of the decoders and marks every upstream event as watched code of
+ * the {@link StallWatchdog} for as long as the handlers after it, transports and inline
+ * listeners included, take to handle it.
+ */
+@ChannelHandler.Sharable
+public class StallWatchHandler implements ChannelUpstreamHandler {
+
+    private static final String HTTP_ACTIVITY = "http";
+
+    private final StallWatchdog watchdog;
+
+    public StallWatchHandler(StallWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+        if (!watchdog.isEnabled()) {
+            ctx.sendUpstream(e);
+            return;
+        }
+        StallWatchdog.Probe probe;
+        Object attachment = ctx.getChannel().getAttachment();
+        if (attachment instanceof SockJsHandlerContext) {
+            SockJsHandlerContext context = (SockJsHandlerContext) attachment;
+            probe = watchdog.enter(context.getBaseUrl(), context.getSessionId(), context.getTransport());
+        } else {
+            probe = watchdog.enter(null, null, HTTP_ACTIVITY);
+        }
+        try {
+            ctx.sendUpstream(e);
+        } finally {
+            watchdog.exit(probe);
+        }
+    }
+}
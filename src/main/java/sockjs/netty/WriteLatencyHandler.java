@@ -0,0 +1,37 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.netty;
+
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import sockjs.Connection;
+
+/**
+ * Sits next to the socket and hands the latency of messages a session drained for a write
+ * to the future of that write, which completes once the bytes are written to the socket.
+ */
+@ChannelHandler.Sharable
+public class WriteLatencyHandler extends SimpleChannelDownstreamHandler {
+
+    public static final WriteLatencyHandler INSTANCE = new WriteLatencyHandler();
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object attachment = ctx.getChannel().getAttachment();
+        if (attachment instanceof SockJsHandlerContext) {
+            Connection connection = ((SockJsHandlerContext) attachment).getConnection();
+            if (connection != null) {
+                ChannelFutureListener listener = connection.takeWriteListener();
+                if (listener != null) {
+                    e.getFuture().addListener(listener);
+                }
+            }
+        }
+        super.writeRequested(ctx, e);
+    }
+}
@@ -4,6 +4,7 @@
  */
 package sockjs.transports;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.http.*;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
@@ -15,7 +16,6 @@ import sockjs.Transport;
 import sockjs.netty.HttpHelpers;
 import sockjs.netty.events.SockJsCloseEvent;
 import sockjs.netty.SockJsHandlerContext;
-import sockjs.netty.events.SockJsSendEvent;
 
 public abstract class AbstractTransport extends SimpleChannelHandler implements Transport {
 
@@ -40,17 +40,26 @@ public abstract class AbstractTransport extends SimpleChannelHandler implements
         } else if (msg instanceof SockJsCloseEvent) {
             SockJsCloseEvent se = (SockJsCloseEvent)msg;
             handleCloseRequest(se.getConnection(), se.getReason());
-        } else if (msg instanceof SockJsSendEvent) {
-            SockJsSendEvent se = (SockJsSendEvent)msg;
-            String[] messagesToSend = se.getConnection().pollAllMessages();
-            if (messagesToSend.length > 0) {
-                sendMessage(se.getConnection(), messagesToSend);
-            }
         } else if (msg instanceof WebSocketFrame) {
             handle(ctx, (WebSocketFrame)msg);
         }
     }
 
+    /**
+     * Sends what was queued while the channel was above its write buffer high watermark.
+     */
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e)
+            throws Exception {
+        SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx);
+        Connection connection = sockJsHandlerContext == null ? null : sockJsHandlerContext.getConnection();
+        if (connection != null && connection.getChannel() == ctx.getChannel()
+                && ctx.getChannel().isWritable() && connection.hasMessages()) {
+            flushMessages(connection);
+        }
+        super.channelInterestChanged(ctx, e);
+    }
+
     @Override
     public void handleHttpRequest(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         HttpHelpers.sendError(ctx, HttpResponseStatus.NOT_IMPLEMENTED);
@@ -74,8 +83,39 @@ public abstract class AbstractTransport extends SimpleChannelHandler implements
     }
 
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
+    public void sendMessage(Connection connection, ChannelBuffer frame) {
+
+    }
+
+    @Override
+    public void sendFrame(Connection connection, EncodedFrame frame) {
+        sendMessage(connection, frame.getFrame());
+    }
+
+    /**
+     * Drains the queue straight into the transport envelope, so queued messages are copied
+     * once on their way to the channel.
+     */
+    @Override
+    public void flushMessages(Connection connection) {
+        ChannelBuffer content = connection.drainMessages(getFrameEnvelope());
+        if (content != null) {
+            sendEnveloped(connection, content);
+        }
+    }
+
+    /**
+     * @return what the transport writes around SockJS frames
+     */
+    protected FrameEnvelope getFrameEnvelope() {
+        return FrameEnvelope.NONE;
+    }
 
+    /**
+     * Writes content already wrapped into the transport envelope.
+     */
+    protected void sendEnveloped(Connection connection, ChannelBuffer content) {
+        sendMessage(connection, content);
     }
 
     @Override
@@ -88,6 +128,14 @@ public abstract class AbstractTransport extends SimpleChannelHandler implements
         channel.getPipeline().sendUpstream(event);
     }
 
+    /**
+     * @return transport currently handling the channel or null if request was not routed yet
+     */
+    public static Transport getTransport(Channel channel) {
+        ChannelHandler handler = channel.getPipeline().get("handler");
+        return handler instanceof Transport ? (Transport) handler : null;
+    }
+
     protected SockJsHandlerContext getSockJsHandlerContext(Channel channel) {
         return (SockJsHandlerContext) channel.getAttachment();
     }
@@ -95,4 +143,24 @@ public abstract class AbstractTransport extends SimpleChannelHandler implements
     protected SockJsHandlerContext getSockJsHandlerContext(ChannelHandlerContext ctx) {
         return getSockJsHandlerContext(ctx.getChannel());
     }
+
+    /**
+     * Hands decoded client messages to the session listeners.
+     */
+    protected static class ListenerHandler implements FrameDecoder.Handler {
+
+        private final Connection connection;
+
+        private final Channel source;
+
+        public ListenerHandler(Connection connection, Channel source) {
+            this.connection = connection;
+            this.source = source;
+        }
+
+        @Override
+        public void onMessage(String message) {
+            connection.sendToListeners(message, source);
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.transports;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Message encoded once for sending to many connections.
+ * <p/>
+ * Holds read-only buffers with the raw UTF-8 payload, the SockJS array frame and, on first
+ * request, the frame encoded as JSON string. Getters return independent views, so the same
+ * instance may be written to any number of channels from any thread.
+ */
+public class EncodedFrame {
+
+    private final ChannelBuffer payload;
+
+    private final ChannelBuffer frame;
+
+    private volatile ChannelBuffer jsonString;
+
+    private EncodedFrame(ChannelBuffer payload, ChannelBuffer frame) {
+        this.payload = ChannelBuffers.unmodifiableBuffer(payload);
+        this.frame = ChannelBuffers.unmodifiableBuffer(frame);
+    }
+
+    public static EncodedFrame encode(String message) {
+        ChannelBuffer payload = ChannelBuffers.dynamicBuffer(message.length() + 16);
+        Protocol.writeUtf8(payload, message);
+
+        ChannelBuffer frame = ChannelBuffers.dynamicBuffer(payload.readableBytes() + 16);
+        frame.writeByte(Protocol.DATA_FRAME.charAt(0));
+        frame.writeByte('[');
+        Protocol.writeJsonString(frame, payload, payload.readerIndex(), payload.readableBytes());
+        frame.writeByte(']');
+
+        return new EncodedFrame(payload, frame);
+    }
+
+    /**
+     * @return raw UTF-8 bytes of the message
+     */
+    public ChannelBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    /**
+     * @return SockJS array frame with the single message
+     */
+    public ChannelBuffer getFrame() {
+        return frame.duplicate();
+    }
+
+    /**
+     * @return SockJS frame encoded as JSON string for JSONP and htmlfile transports
+     */
+    public ChannelBuffer getJsonString() {
+        ChannelBuffer encoded = jsonString;
+        if (encoded == null) {
+            // racing threads produce equal buffers, keeping any of them is fine
+            encoded = ChannelBuffers.unmodifiableBuffer(Protocol.encodeJsonString(getFrame()));
+            jsonString = encoded;
+        }
+        return encoded.duplicate();
+    }
+}
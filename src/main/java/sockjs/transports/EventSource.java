@@ -24,11 +24,17 @@ public class EventSource extends XHttpRequest {
 
     private static final HttpChunk PRELUDE_CHUNK;
 
-    private static final ChannelFutureListener SEND_LAST_CHUNK;
+    private static final ChannelBuffer FRAME_PREFIX = ChannelBuffers.copiedBuffer("data: ", CharsetUtil.UTF_8);
+
+    private static final ChannelBuffer FRAME_SUFFIX = ChannelBuffers.copiedBuffer("\r\n\r\n", CharsetUtil.UTF_8);
+
+    private static final FrameEnvelope ENVELOPE = FrameEnvelope.of("data: ", "\r\n\r\n", false);
+
+    private static final HttpChunk HEARTBEAT_CHUNK = new DefaultHttpChunk(ChannelBuffers
+            .copiedBuffer("data: " + Protocol.HEARTBEAT_FRAME + "\r\n\r\n", CharsetUtil.UTF_8));
 
     static {
         PRELUDE_CHUNK = new DefaultHttpChunk(ChannelBuffers.copiedBuffer("\r\n", CharsetUtil.UTF_8));
-        SEND_LAST_CHUNK = new SendLastChunk();
 
     }
 
@@ -46,17 +52,20 @@ public class EventSource extends XHttpRequest {
     }
 
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
-        String message = Protocol.encodeMessageToString(messagesToSend);
-        ChannelBuffer content = ChannelBuffers
-                .copiedBuffer("data: " + message + "\r\n\r\n", CharsetUtil.UTF_8);
-        ChannelFuture writeFuture = connection.getChannel().write(new DefaultHttpChunk(content));
-        connection.incSentBytes(content.readableBytes());
-
-        if (connection.getSentBytes() > getSockJs().getMaxStreamSize()) {
-            connection.resetSentBytes();
-            writeFuture.addListener(SEND_LAST_CHUNK);
-        }
+    public void sendHeartbeat(Connection connection) {
+        // shared by all sessions, the encoder only reads the content
+        connection.getChannel().write(HEARTBEAT_CHUNK);
+    }
+
+    @Override
+    public void sendMessage(Connection connection, ChannelBuffer frame) {
+        sendEnveloped(connection, ChannelBuffers
+                .wrappedBuffer(FRAME_PREFIX.duplicate(), frame, FRAME_SUFFIX.duplicate()));
+    }
+
+    @Override
+    protected FrameEnvelope getFrameEnvelope() {
+        return ENVELOPE;
     }
 
     @Override
@@ -114,6 +123,7 @@ public class EventSource extends XHttpRequest {
                 Connection connection = sockJsHandlerContext.getConnection();
                 if (connection == null) {
                     connection = EventSource.this.getSockJs().createConnection(sockJsHandlerContext);
+                    sockJsHandlerContext.setConnection(connection);
                     connection.setJSESSIONID(sockJsHandlerContext.getJSESSIONID());
                 }
 
@@ -133,12 +143,4 @@ public class EventSource extends XHttpRequest {
         }
     }
 
-    private static class SendLastChunk implements ChannelFutureListener {
-        @Override
-        public void operationComplete(ChannelFuture future)
-                throws Exception {
-            future.getChannel().write(HttpChunk.LAST_CHUNK).addListener(CLOSE);
-        }
-    }
-
 }
@@ -0,0 +1,346 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.transports;
+
+import org.codehaus.jackson.JsonLocation;
+import org.codehaus.jackson.JsonParseException;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Reads messages sent by SockJS clients straight from the request or frame bytes.
+ * <p/>
+ * Payload is a JSON array of strings, a single JSON string or, for anything else, the raw text.
+ * Messages are handed to the handler one by one as soon as they are read, UTF-8 is decoded and
+ * checked in the same pass, malformed sequences become U+FFFD exactly as the JDK decoder of
+ * {@code new String(bytes, UTF_8)} replaces them. Array
+ * elements which are not strings are taken as their JSON text and null as null, the way Jackson
+ * reads them into String[]. Messages before a syntax error are delivered, the error is reported
+ * when it is reached.
+ */
+public class FrameDecoder {
+
+    public interface Handler {
+
+        void onMessage(String message);
+    }
+
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final ChannelBuffer buffer;
+
+    private final int end;
+
+    private int pos;
+
+    private char[] chars;
+
+    private FrameDecoder(ChannelBuffer buffer) {
+        this.buffer = buffer;
+        this.pos = buffer.readerIndex();
+        this.end = buffer.writerIndex();
+        this.chars = new char[Math.min(Math.max(end - pos, 16), 1024)];
+    }
+
+    /**
+     * Decodes readable bytes of the buffer, the buffer indexes are not changed.
+     *
+     * @return false if there is no payload at all
+     * @throws JsonParseException if payload looks like JSON but is malformed
+     */
+    public static boolean decode(ChannelBuffer buffer, Handler handler) throws JsonParseException {
+        if (!buffer.readable()) {
+            return false;
+        }
+
+        FrameDecoder decoder = new FrameDecoder(buffer);
+        byte first = buffer.getByte(decoder.pos);
+        if (first == '[') {
+            decoder.pos++;
+            decoder.readArray(handler);
+        } else if (first == '"') {
+            handler.onMessage(decoder.readString());
+        } else {
+            handler.onMessage(decoder.readText());
+        }
+        return true;
+    }
+
+    /**
+     * Decodes application/x-www-form-urlencoded bytes in place, '+' becomes space. The readable
+     * part of the buffer shrinks to the decoded bytes.
+     *
+     * @throws IllegalArgumentException on malformed percent escapes
+     */
+    public static void percentDecode(ChannelBuffer buffer) {
+        int end = buffer.writerIndex();
+        int write = buffer.readerIndex();
+        for (int read = write; read < end; read++) {
+            byte b = buffer.getByte(read);
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%') {
+                if (read + 2 >= end) {
+                    throw new IllegalArgumentException("incomplete percent escape");
+                }
+                int high = Character.digit(buffer.getByte(read + 1), 16);
+                int low = Character.digit(buffer.getByte(read + 2), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("illegal hex digits in percent escape");
+                }
+                b = (byte) ((high << 4) | low);
+                read += 2;
+            }
+            buffer.setByte(write++, b);
+        }
+        buffer.writerIndex(write);
+    }
+
+    /**
+     * @return true if readable bytes are whitespace only, as String.trim() sees it
+     */
+    public static boolean isBlank(ChannelBuffer buffer) {
+        for (int i = buffer.readerIndex(); i < buffer.writerIndex(); i++) {
+            if ((buffer.getByte(i) & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readArray(Handler handler) throws JsonParseException {
+        skipWhitespace();
+        if (pos < end && buffer.getByte(pos) == ']') {
+            return;
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (pos >= end) {
+                throw error("Unexpected end-of-input in array");
+            }
+            byte b = buffer.getByte(pos);
+            if (b == '"') {
+                handler.onMessage(readString());
+            } else if (b == 'n') {
+                readLiteral("null");
+                handler.onMessage(null);
+            } else if (b == 't') {
+                handler.onMessage(readLiteral("true"));
+            } else if (b == 'f') {
+                handler.onMessage(readLiteral("false"));
+            } else if (b == '-' || (b >= '0' && b <= '9')) {
+                handler.onMessage(readNumber());
+            } else {
+                throw error("Unexpected character '" + (char) b + "' in array");
+            }
+
+            skipWhitespace();
+            if (pos >= end) {
+                throw error("Unexpected end-of-input in array");
+            }
+            b = buffer.getByte(pos++);
+            if (b == ']') {
+                return;
+            } else if (b != ',') {
+                throw error("Unexpected character '" + (char) b + "', expected ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Reads quoted JSON string starting at pos.
+     */
+    private String readString() throws JsonParseException {
+        pos++;
+        int length = 0;
+        while (true) {
+            if (pos >= end) {
+                throw error("Unexpected end-of-input in string");
+            }
+            ensureChars(length + 2);
+            int b = buffer.getByte(pos) & 0xff;
+            if (b == '"') {
+                pos++;
+                return new String(chars, 0, length);
+            } else if (b == '\\') {
+                chars[length++] = readEscape();
+            } else if (b < 0x20) {
+                throw error("Illegal unquoted character " + b + " in string");
+            } else if (b < 0x80) {
+                chars[length++] = (char) b;
+                pos++;
+            } else {
+                length = readUtf8(length);
+            }
+        }
+    }
+
+    private String readText() {
+        int length = 0;
+        while (pos < end) {
+            ensureChars(length + 2);
+            int b = buffer.getByte(pos) & 0xff;
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+                pos++;
+            } else {
+                length = readUtf8(length);
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private char readEscape() throws JsonParseException {
+        if (pos + 1 >= end) {
+            throw error("Unexpected end-of-input in escape");
+        }
+        byte e = buffer.getByte(pos + 1);
+        pos += 2;
+        switch (e) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) e;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (pos + 4 > end) {
+                    throw error("Unexpected end-of-input in unicode escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(buffer.getByte(pos++), 16);
+                    if (digit < 0) {
+                        throw error("Illegal hex digit in unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Unrecognized escape '\\" + (char) e + "'");
+        }
+    }
+
+    /**
+     * Decodes one multi-byte UTF-8 sequence at pos into chars.
+     *
+     * @return new number of chars
+     */
+    private int readUtf8(int length) {
+        int b = buffer.getByte(pos) & 0xff;
+        int size;
+        int codePoint;
+        // the second byte tells overlong forms and code points past U+10FFFF apart
+        int secondMin = 0x80;
+        int secondMax = 0xbf;
+        if (b >= 0xc2 && b <= 0xdf) {
+            size = 2;
+            codePoint = b & 0x1f;
+        } else if (b >= 0xe0 && b <= 0xef) {
+            size = 3;
+            codePoint = b & 0x0f;
+            if (b == 0xe0) {
+                secondMin = 0xa0;
+            }
+        } else if (b >= 0xf0 && b <= 0xf4) {
+            size = 4;
+            codePoint = b & 0x07;
+            if (b == 0xf0) {
+                secondMin = 0x90;
+            } else if (b == 0xf4) {
+                secondMax = 0x8f;
+            }
+        } else {
+            pos++;
+            chars[length++] = REPLACEMENT_CHAR;
+            return length;
+        }
+
+        int i = 1;
+        for (; i < size && pos + i < end; i++) {
+            int c = buffer.getByte(pos + i) & 0xff;
+            if (i == 1 ? c < secondMin || c > secondMax : (c & 0xc0) != 0x80) {
+                break;
+            }
+            codePoint = (codePoint << 6) | (c & 0x3f);
+        }
+        if (i < size || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            // one replacement for the lead and the valid continuation bytes read so far, a lead
+            // with a bad second byte is replaced alone and an encoded surrogate as a whole, the
+            // way the JDK decoder does
+            pos += i;
+            chars[length++] = REPLACEMENT_CHAR;
+            return length;
+        }
+
+        pos += size;
+        if (codePoint >= 0x10000) {
+            chars[length++] = Character.highSurrogate(codePoint);
+            chars[length++] = Character.lowSurrogate(codePoint);
+        } else {
+            chars[length++] = (char) codePoint;
+        }
+        return length;
+    }
+
+    private String readLiteral(String literal) throws JsonParseException {
+        int length = literal.length();
+        for (int i = 0; i < length; i++) {
+            if (pos + i >= end || buffer.getByte(pos + i) != literal.charAt(i)) {
+                throw error("Unrecognized token, expected '" + literal + "'");
+            }
+        }
+        pos += length;
+        return literal;
+    }
+
+    private String readNumber() {
+        int start = pos;
+        while (pos < end) {
+            byte b = buffer.getByte(pos);
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        // ASCII only, no decoding needed
+        char[] digits = new char[pos - start];
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = (char) buffer.getByte(start + i);
+        }
+        return new String(digits);
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = buffer.getByte(pos);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void ensureChars(int capacity) {
+        if (capacity > chars.length) {
+            char[] grown = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, grown, 0, chars.length);
+            chars = grown;
+        }
+    }
+
+    private JsonParseException error(String message) {
+        return new JsonParseException(message, JsonLocation.NA);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.transports;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import sockjs.Connection;
+
+/**
+ * Writes SockJS frames straight into channel buffers: strings are escaped and encoded to UTF-8
+ * in one pass, together with the transport envelope.
+ * <p/>
+ * Output is byte to byte the same as Jackson's for the same strings: only '"', '\\' and control
+ * chars are escaped, with short escapes where JSON has them and upper case hex otherwise.
+ * Unpaired surrogates become '?' as String.getBytes does. Frames sent as JSON strings are
+ * escaped twice in the same pass.
+ */
+public class FrameEncoder {
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+    private FrameEncoder() {
+    }
+
+    /**
+     * @return messages as one SockJS array frame wrapped into the envelope
+     */
+    public static ChannelBuffer encode(FrameEnvelope envelope, Connection connection, String... messages) {
+        int estimatedSize = envelope.getOverhead(connection) + messages.length * 3 + 6;
+        for (String message : messages) {
+            estimatedSize += message.length();
+        }
+
+        ChannelBuffer dst = ChannelBuffers.dynamicBuffer(estimatedSize);
+        envelope.writePrefix(dst, connection);
+        writeArrayFrame(dst, messages, envelope.isJsonString());
+        envelope.writeSuffix(dst, connection);
+        return dst;
+    }
+
+    /**
+     * @return encoded SockJS frame copied into the envelope, escaped on the way if the envelope
+     *         takes JSON strings
+     */
+    public static ChannelBuffer encode(FrameEnvelope envelope, Connection connection, ChannelBuffer frame) {
+        int length = frame.readableBytes();
+        ChannelBuffer dst = ChannelBuffers.dynamicBuffer(envelope.getOverhead(connection) + length + 16);
+        envelope.writePrefix(dst, connection);
+        if (envelope.isJsonString()) {
+            writeJsonString(dst, frame, frame.readerIndex(), length, false);
+        } else {
+            dst.writeBytes(frame, frame.readerIndex(), length);
+        }
+        envelope.writeSuffix(dst, connection);
+        return dst;
+    }
+
+    /**
+     * Writes {@code a["msg1","msg2"]}, as a quoted JSON string if asJsonString is set.
+     */
+    public static void writeArrayFrame(ChannelBuffer dst, String[] messages, boolean asJsonString) {
+        if (asJsonString) {
+            dst.writeByte('"');
+        }
+        dst.writeByte(Protocol.DATA_FRAME.charAt(0));
+        dst.writeByte('[');
+        for (int i = 0; i < messages.length; i++) {
+            if (i > 0) {
+                dst.writeByte(',');
+            }
+            writeJsonString(dst, messages[i], asJsonString);
+        }
+        dst.writeByte(']');
+        if (asJsonString) {
+            dst.writeByte('"');
+        }
+    }
+
+    /**
+     * Writes chars as a quoted JSON string in UTF-8.
+     *
+     * @param nested true if the string goes inside another JSON string, quotes and escapes
+     *               are escaped once more then
+     */
+    public static void writeJsonString(ChannelBuffer dst, CharSequence chars, boolean nested) {
+        int length = chars.length();
+        dst.ensureWritableBytes(length + 4);
+        writeQuote(dst, nested);
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    dst.writeByte(c);
+                } else {
+                    writeEscape(dst, c, nested);
+                }
+            } else if (c < 0x800) {
+                dst.writeByte(0xc0 | (c >> 6));
+                dst.writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                dst.writeByte(0xf0 | (codePoint >> 18));
+                dst.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                dst.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                dst.writeByte(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                dst.writeByte('?');
+            } else {
+                dst.writeByte(0xe0 | (c >> 12));
+                dst.writeByte(0x80 | ((c >> 6) & 0x3f));
+                dst.writeByte(0x80 | (c & 0x3f));
+            }
+        }
+        writeQuote(dst, nested);
+    }
+
+    /**
+     * Writes UTF-8 text from src as a quoted JSON string, runs which need no escaping are
+     * copied in bulk and multi-byte sequences are copied as is.
+     *
+     * @param nested true if the string goes inside another JSON string
+     */
+    public static void writeJsonString(ChannelBuffer dst, ChannelBuffer src, int index, int length, boolean nested) {
+        dst.ensureWritableBytes(length + 4);
+        writeQuote(dst, nested);
+        int end = index + length;
+        int copyFrom = index;
+        for (int i = index; i < end; i++) {
+            int b = src.getByte(i) & 0xff;
+            if (b >= 0x20 && b != '"' && b != '\\') {
+                continue;
+            }
+            dst.writeBytes(src, copyFrom, i - copyFrom);
+            copyFrom = i + 1;
+            writeEscape(dst, b, nested);
+        }
+        dst.writeBytes(src, copyFrom, end - copyFrom);
+        writeQuote(dst, nested);
+    }
+
+    private static void writeQuote(ChannelBuffer dst, boolean nested) {
+        if (nested) {
+            dst.writeByte('\\');
+        }
+        dst.writeByte('"');
+    }
+
+    private static void writeEscape(ChannelBuffer dst, int c, boolean nested) {
+        // the escape backslash, escaped itself when nested
+        dst.writeByte('\\');
+        if (nested) {
+            dst.writeByte('\\');
+        }
+        switch (c) {
+            case '"':
+            case '\\':
+                if (nested) {
+                    dst.writeByte('\\');
+                }
+                dst.writeByte(c);
+                break;
+            case '\b':
+                dst.writeByte('b');
+                break;
+            case '\t':
+                dst.writeByte('t');
+                break;
+            case '\n':
+                dst.writeByte('n');
+                break;
+            case '\f':
+                dst.writeByte('f');
+                break;
+            case '\r':
+                dst.writeByte('r');
+                break;
+            default:
+                dst.writeByte('u');
+                dst.writeByte('0');
+                dst.writeByte('0');
+                dst.writeByte(HEX_DIGITS[c >> 4]);
+                dst.writeByte(HEX_DIGITS[c & 0xf]);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.transports;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.CharsetUtil;
+import sockjs.Connection;
+
+/**
+ * What a transport writes around every SockJS frame, like {@code data: ...\r\n\r\n} for
+ * eventsource. JSONP and htmlfile transports also send the frame itself as a JSON string.
+ * <p/>
+ * Encoders write the envelope and the frame into the same buffer, so a frame is never copied
+ * once more to be wrapped.
+ */
+public abstract class FrameEnvelope {
+
+    public static final FrameEnvelope NONE = of("", "", false);
+
+    private final boolean jsonString;
+
+    protected FrameEnvelope(boolean jsonString) {
+        this.jsonString = jsonString;
+    }
+
+    /**
+     * @return envelope with constant prefix and suffix
+     */
+    public static FrameEnvelope of(String prefix, String suffix, boolean jsonString) {
+        final byte[] prefixBytes = prefix.getBytes(CharsetUtil.UTF_8);
+        final byte[] suffixBytes = suffix.getBytes(CharsetUtil.UTF_8);
+        return new FrameEnvelope(jsonString) {
+            @Override
+            public void writePrefix(ChannelBuffer dst, Connection connection) {
+                dst.writeBytes(prefixBytes);
+            }
+
+            @Override
+            public void writeSuffix(ChannelBuffer dst, Connection connection) {
+                dst.writeBytes(suffixBytes);
+            }
+
+            @Override
+            public int getOverhead(Connection connection) {
+                return prefixBytes.length + suffixBytes.length;
+            }
+        };
+    }
+
+    public abstract void writePrefix(ChannelBuffer dst, Connection connection);
+
+    public abstract void writeSuffix(ChannelBuffer dst, Connection connection);
+
+    /**
+     * @return number of bytes prefix and suffix take for the connection, used to size buffers
+     */
+    public abstract int getOverhead(Connection connection);
+
+    /**
+     * @return true if the frame is sent as a quoted JSON string
+     */
+    public boolean isJsonString() {
+        return jsonString;
+    }
+}
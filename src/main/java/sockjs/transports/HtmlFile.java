@@ -20,10 +20,7 @@ import sockjs.SockJs;
 import sockjs.netty.*;
 import sockjs.netty.events.SockJsCloseEvent;
 import sockjs.netty.events.SockJsEvent;
-import sockjs.netty.events.SockJsSendEvent;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
@@ -34,13 +31,21 @@ public class HtmlFile extends XHttpRequest {
 
     private static final String htmlTemplate;
 
-    private static final String OPEN_FRAME = "\"o\"";
+    private static final ChannelBuffer OPEN_FRAME = ChannelBuffers.copiedBuffer(Protocol.OPEN_FRAME, CharsetUtil.UTF_8);
+
+    private static final ChannelBuffer FRAME_PREFIX = ChannelBuffers.copiedBuffer("<script>\np(", CharsetUtil.UTF_8);
+
+    private static final ChannelBuffer FRAME_SUFFIX = ChannelBuffers.copiedBuffer(");\n</script>\r\n", CharsetUtil.UTF_8);
+
+    private static final FrameEnvelope ENVELOPE = FrameEnvelope.of("<script>\np(", ");\n</script>\r\n", true);
+
+    private static final HttpChunk HEARTBEAT_CHUNK = new DefaultHttpChunk(ChannelBuffers
+            .copiedBuffer("<script>\np(\"" + Protocol.HEARTBEAT_FRAME + "\");\n</script>\r\n", CharsetUtil.UTF_8));
 
     static {
         try {
-            URL htmlfileResource =  Thread.currentThread().getContextClassLoader().getResource("htmlfile.html");
-            File htmlfile = new File(htmlfileResource.getPath());
-            String head = IOUtils.toString(new FileInputStream(htmlfile));
+            URL htmlfileResource =  HtmlFile.class.getClassLoader().getResource("htmlfile.html");
+            String head = IOUtils.toString(htmlfileResource.openStream(), "UTF-8");
             char[] spaces = new char[1024 - head.length() + 20];
             Arrays.fill(spaces, ' ');
 
@@ -75,22 +80,26 @@ public class HtmlFile extends XHttpRequest {
         SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx);
         if (sockJsHandlerContext != null) {
             Connection connection = sockJsHandlerContext.getConnection();
-            final SockJsEvent sendEvent;
+            final SockJsEvent closeEvent;
+            final Connection newConnection;
             if (connection == null) {
                 connection = getSockJs().createConnection(sockJsHandlerContext);
                 sockJsHandlerContext.setConnection(connection);
                 connection.setJsonpCallback(callbacks.get(0));
                 connection.setChannel(ctx.getChannel());
                 connection.setJSESSIONID(sockJsHandlerContext.getJSESSIONID());
-                connection.addMessageToBuffer(OPEN_FRAME);
-                sendEvent = new SockJsSendEvent(connection);
+                newConnection = connection;
+                closeEvent = null;
             } else if (connection.getCloseReason() != null) {
                 connection.setChannel(ctx.getChannel());
-                sendEvent = new SockJsCloseEvent(connection, connection.getCloseReason());
+                newConnection = null;
+                closeEvent = new SockJsCloseEvent(connection, connection.getCloseReason());
             } else {
                 connection.setChannel(ctx.getChannel());
-                sendEvent = new SockJsSendEvent(connection);
+                newConnection = null;
+                closeEvent = null;
             }
+            final Connection attachedConnection = connection;
 
             final String prelude = String.format(htmlTemplate, callbacks.get(0));
             HttpResponse response = createStreamingResponse(httpRequest);
@@ -107,9 +116,15 @@ public class HtmlFile extends XHttpRequest {
                         @Override
                         public void operationComplete(ChannelFuture future)
                                 throws Exception {
-                            if (sendEvent != null) {
+                            if (newConnection != null) {
+                                sendMessage(newConnection, OPEN_FRAME.duplicate());
+                                getSockJs().notifyListenersAboutNewConnection(newConnection);
+                            } else if (closeEvent != null) {
                                 ctx.getPipeline().sendUpstream(new UpstreamMessageEvent(ctx.getChannel(),
-                                        sendEvent, ctx.getChannel().getRemoteAddress()));
+                                        closeEvent, ctx.getChannel().getRemoteAddress()));
+                            } else {
+                                // write listeners run on the I/O thread of the channel
+                                flushMessages(attachedConnection);
                             }
                         }
                     });
@@ -126,32 +141,38 @@ public class HtmlFile extends XHttpRequest {
     }
 
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
-        String message;
-        if (!OPEN_FRAME.equals(messagesToSend[0])) {
-             message = Protocol.encodeToJSONString(messagesToSend);
-        } else {
-            message = messagesToSend[0];
-        }
+    public void sendHeartbeat(Connection connection) {
+        connection.getChannel().write(HEARTBEAT_CHUNK);
+    }
 
-        String encodedMessage = "<script>\np(" + message + ");\n</script>\r\n";
-        ChannelBuffer content = ChannelBuffers.copiedBuffer(encodedMessage, CharsetUtil.UTF_8);
-        HttpChunk httpChunk = new DefaultHttpChunk(content);
+    @Override
+    public void sendMessage(Connection connection, ChannelBuffer frame) {
+        sendEnveloped(connection, FrameEncoder.encode(ENVELOPE, connection, frame));
+    }
 
+    @Override
+    public void sendFrame(Connection connection, EncodedFrame frame) {
+        sendEnveloped(connection, ChannelBuffers.wrappedBuffer(FRAME_PREFIX.duplicate(),
+                frame.getJsonString(), FRAME_SUFFIX.duplicate()));
+    }
 
-        if (connection.getChannel().isWritable()) {
-            connection.getChannel().write(httpChunk);
-            connection.incSentBytes(content.readableBytes());
+    @Override
+    protected FrameEnvelope getFrameEnvelope() {
+        return ENVELOPE;
+    }
 
-            if (connection.getSentBytes() > getSockJs().getMaxStreamSize()) {
-                connection.resetSentBytes();
-                connection.getChannel().write(HttpChunk.LAST_CHUNK).addListener(ChannelFutureListener.CLOSE);
-                connection.setCloseReason(Protocol.CloseReason.NORMAL);
-            }
-        }
+    @Override
+    protected void sendEnveloped(Connection connection, ChannelBuffer content) {
+        HttpChunk httpChunk = new DefaultHttpChunk(content);
+
+        // content is already taken from the queue, Netty buffers it if the socket is congested
+        connection.getChannel().write(httpChunk);
+        connection.incSentBytes(content.readableBytes());
 
-        if (OPEN_FRAME.equals(message)) {
-            getSockJs().notifyListenersAboutNewConnection(connection);
+        if (connection.getSentBytes() > getSockJs().getMaxStreamSize()) {
+            connection.resetSentBytes();
+            connection.getChannel().write(HttpChunk.LAST_CHUNK).addListener(ChannelFutureListener.CLOSE);
+            connection.setCloseReason(Protocol.CloseReason.NORMAL);
         }
     }
 
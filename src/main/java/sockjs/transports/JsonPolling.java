@@ -17,14 +17,15 @@ import sockjs.Connection;
 import sockjs.SockJs;
 import sockjs.netty.*;
 
-import java.net.URLDecoder;
 import java.util.List;
 
 public class JsonPolling extends XHttpRequestPolling {
 
     private static final Logger log = LoggerFactory.getLogger(JsonPolling.class);
 
-    private static final String JSONP_OPEN_FRAME = "\"o\"";
+    private static final byte[] FORM_PREFIX = {'d', '='};
+
+    private static final ChannelBuffer FRAME_SUFFIX = ChannelBuffers.copiedBuffer(");\r\n", CharsetUtil.UTF_8);
 
     public JsonPolling(SockJs sockJs) {
         super(sockJs);
@@ -39,15 +40,45 @@ public class JsonPolling extends XHttpRequestPolling {
         }
     }
 
-    @Override
-    protected String encodeMessage(Connection connection, String[] messagesToSend) {
-        String encodedMessage;
-        if (!messagesToSend[0].equals(Protocol.OPEN_FRAME)) {
-            encodedMessage = Protocol.encodeToJSONString(messagesToSend);
-        } else {
-            encodedMessage = JSONP_OPEN_FRAME;
+    /**
+     * Wraps frames into the JSONP callback of the session.
+     */
+    private static final FrameEnvelope ENVELOPE = new FrameEnvelope(true) {
+        @Override
+        public void writePrefix(ChannelBuffer dst, Connection connection) {
+            Protocol.writeUtf8(dst, connection.getJsonpCallback());
+            dst.writeByte('(');
+        }
+
+        @Override
+        public void writeSuffix(ChannelBuffer dst, Connection connection) {
+            dst.writeBytes(FRAME_SUFFIX, FRAME_SUFFIX.readerIndex(), FRAME_SUFFIX.readableBytes());
         }
-        return connection.getJsonpCallback() + "(" + encodedMessage + ");\r\n";
+
+        @Override
+        public int getOverhead(Connection connection) {
+            return connection.getJsonpCallback().length() + 1 + FRAME_SUFFIX.readableBytes();
+        }
+    };
+
+    @Override
+    protected FrameEnvelope getFrameEnvelope() {
+        return ENVELOPE;
+    }
+
+    @Override
+    protected ChannelBuffer encodeFrame(Connection connection, ChannelBuffer frame) {
+        return FrameEncoder.encode(ENVELOPE, connection, frame);
+    }
+
+    @Override
+    protected ChannelBuffer encodeFrame(Connection connection, EncodedFrame frame) {
+        return wrapJsonString(connection, frame.getJsonString());
+    }
+
+    private static ChannelBuffer wrapJsonString(Connection connection, ChannelBuffer jsonString) {
+        ChannelBuffer prefix = ChannelBuffers.copiedBuffer(connection.getJsonpCallback() + "(", CharsetUtil.UTF_8);
+        return ChannelBuffers.wrappedBuffer(prefix, jsonString, FRAME_SUFFIX.duplicate());
     }
 
     @Override
@@ -63,36 +94,41 @@ public class JsonPolling extends XHttpRequestPolling {
     private void handleJsonPollingSend(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx.getChannel());
         if (sockJsHandlerContext != null) {
-            String message = httpRequest.getContent().toString(CharsetUtil.UTF_8);
-            if (message.startsWith("d=")) {
-                try {
-                    message = message.length() >= 5 ? URLDecoder.decode(message.substring(2), "UTF-8"): "";
-                } catch (Exception e) {
-                    HttpHelpers.sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, "Payload expected.");
-                    return;
+            ChannelBuffer content = httpRequest.getContent();
+            if (startsWith(content, FORM_PREFIX)) {
+                if (content.readableBytes() < 5) {
+                    content = ChannelBuffers.EMPTY_BUFFER;
+                } else {
+                    try {
+                        content.skipBytes(FORM_PREFIX.length);
+                        FrameDecoder.percentDecode(content);
+                    } catch (IllegalArgumentException e) {
+                        HttpHelpers.sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, "Payload expected.");
+                        return;
+                    }
                 }
-            } else if (!message.isEmpty() && !(message.charAt(0) == '[' || message.charAt(0) == '\"')) {
-                message = "";
+            } else if (content.readable() && content.getByte(content.readerIndex()) != '['
+                    && content.getByte(content.readerIndex()) != '\"') {
+                content = ChannelBuffers.EMPTY_BUFFER;
             }
 
-            if (message.trim().isEmpty()) {
+            if (FrameDecoder.isBlank(content)) {
                 HttpHelpers.sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, "Payload expected.");
                 return;
             }
 
-            log.info("Message received: " + message);
+            if (log.isDebugEnabled()) {
+                log.debug("Message received: " + content.toString(CharsetUtil.UTF_8));
+            }
             Connection connection = sockJsHandlerContext.getConnection();
             if (connection != null) {
+                connection.incReceivedBytes(content.readableBytes());
                 try {
-                    String[] messages = Protocol.decodeMessage(message);
-                    if (messages != null) {
+                    if (FrameDecoder.decode(content, new ListenerHandler(connection, ctx.getChannel()))) {
                         HttpResponse response = createResponse(ChannelBuffers.copiedBuffer("ok", CharsetUtil.UTF_8));
                         HttpHelpers.addJESSIONID(response, connection.getJSESSIONID());
                         response.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain;charset=UTF-8");
                         ctx.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
-                        for (String decodedMessage : messages) {
-                            connection.sendToListeners(decodedMessage);
-                        }
                     } else {
                         HttpHelpers.sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, "Payload expected.");
                     }
@@ -107,6 +143,18 @@ public class JsonPolling extends XHttpRequestPolling {
         }
     }
 
+    private static boolean startsWith(ChannelBuffer buffer, byte[] prefix) {
+        if (buffer.readableBytes() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.getByte(buffer.readerIndex() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     protected Connection createConnection(SockJsHandlerContext sockJsHandlerContext, HttpRequest
             httpRequest) {
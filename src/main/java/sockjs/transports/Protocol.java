@@ -5,7 +5,6 @@
 package sockjs.transports;
 
 import org.codehaus.jackson.JsonParseException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
@@ -16,7 +15,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sockjs.Message;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 public class Protocol {
 
@@ -34,12 +35,13 @@ public class Protocol {
 
     public static final TextWebSocketFrame WEB_SOCKET_HEARTBEAT_FRAME;
 
-    private static final ObjectMapper jsonObjectMapper;
+    private static final FrameEnvelope JSON_STRING = FrameEnvelope.of("", "", true);
 
     public enum CloseReason {
         NORMAL("c[3000,\"Go away!\"]"),
         ALREADY_OPENED("c[2010,\"Another connection still open\"]"),
-        INTERRUPTED("c[1002,\"Connection interrupted\"]");
+        INTERRUPTED("c[1002,\"Connection interrupted\"]"),
+        SLOW_CONSUMER("c[3001,\"Slow consumer\"]");
 
         public final String frame;
 
@@ -57,71 +59,108 @@ public class Protocol {
     static {
         WEB_SOCKET_HEARTBEAT_FRAME = new TextWebSocketFrame(HEARTBEAT_FRAME);
         WEB_SOCKET_OPEN_FRAME = new TextWebSocketFrame(OPEN_FRAME);
-        jsonObjectMapper = new ObjectMapper();
     }
 
     public static String encodeMessageToString(String payload) {
-        try {
-            String encodedPayload = jsonObjectMapper.writeValueAsString(payload);
-            return String.format("a[%s]", encodedPayload);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+        return encodeMessageToString(new String[] {payload});
     }
 
+    /**
+     * @return SockJS array frame encoded as JSON string, as JSONP and htmlfile transports send it
+     */
     public static String encodeToJSONString(String[] payload) {
-        try {
-            String encodedArray= jsonObjectMapper.writeValueAsString(payload);
-
-            String encodedPayload =  jsonObjectMapper.writeValueAsString(String
-                    .format("a%s", encodedArray));
-            return encodedPayload;
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+        return FrameEncoder.encode(JSON_STRING, null, payload).toString(CharsetUtil.UTF_8);
     }
 
     public static String encodeMessageToString(String[] payload) {
-            try {
-                String encodedPayload = jsonObjectMapper.writeValueAsString(payload);
-                return String.format("a%s", encodedPayload);
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        return FrameEncoder.encode(FrameEnvelope.NONE, null, payload).toString(CharsetUtil.UTF_8);
     }
 
     public static String encodeJsonpClose(CloseReason reason, String callback) {
-        try {
-            String encodedPayload = jsonObjectMapper.writeValueAsString(reason.frame);
-            return callback + String.format("(%s);\r\n\r\n", encodedPayload);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+        ChannelBuffer encoded = ChannelBuffers.dynamicBuffer(callback.length() + reason.frame.length() + 16);
+        writeUtf8(encoded, callback);
+        encoded.writeByte('(');
+        FrameEncoder.writeJsonString(encoded, reason.frame, false);
+        writeUtf8(encoded, ");\r\n\r\n");
+        return encoded.toString(CharsetUtil.UTF_8);
     }
 
     public static TextWebSocketFrame encodeMessageToWebSocketFrame(String[] message) {
         return new TextWebSocketFrame(encodeMessageToString(message));
     }
 
+    /**
+     * Writes chars as UTF-8, unpaired surrogates are replaced with '?' as String.getBytes does.
+     *
+     * @return number of bytes written
+     */
+    public static int writeUtf8(ChannelBuffer dst, CharSequence chars) {
+        int start = dst.writerIndex();
+        int length = chars.length();
+        dst.ensureWritableBytes(length);
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                dst.writeByte(c);
+            } else if (c < 0x800) {
+                dst.writeByte(0xc0 | (c >> 6));
+                dst.writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                dst.writeByte(0xf0 | (codePoint >> 18));
+                dst.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                dst.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                dst.writeByte(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                dst.writeByte('?');
+            } else {
+                dst.writeByte(0xe0 | (c >> 12));
+                dst.writeByte(0x80 | ((c >> 6) & 0x3f));
+                dst.writeByte(0x80 | (c & 0x3f));
+            }
+        }
+        return dst.writerIndex() - start;
+    }
+
+    /**
+     * Writes UTF-8 text from src as a quoted JSON string. Escaping matches what Jackson
+     * produces for the same String, multi-byte sequences are copied as is.
+     */
+    public static void writeJsonString(ChannelBuffer dst, ChannelBuffer src, int index, int length) {
+        FrameEncoder.writeJsonString(dst, src, index, length, false);
+    }
+
+    /**
+     * @return frame encoded as a JSON string, as JSONP and htmlfile transports send it
+     */
+    public static ChannelBuffer encodeJsonString(ChannelBuffer frame) {
+        ChannelBuffer encoded = ChannelBuffers.dynamicBuffer(frame.readableBytes() + 16);
+        writeJsonString(encoded, frame, frame.readerIndex(), frame.readableBytes());
+        return encoded;
+    }
+
+    /**
+     * Decodes client payload into an array, transports use {@link FrameDecoder} on the received
+     * bytes instead.
+     *
+     * @return messages or null if the payload is empty
+     */
     public static String[] decodeMessage(String message)
             throws JsonParseException {
-        if (message.isEmpty()) {
-            return null;
-        }
+        final List<String> messages = new ArrayList<String>();
         try {
-            if (message.startsWith("[")) {
-                return jsonObjectMapper.readValue(message, String[].class);
-            } else if (message.startsWith("\"")) {
-                String payload = jsonObjectMapper.readValue(message, String.class);
-                return new String[] {payload};
-            } else {
-                return  new String[] {message};
-            }
+            boolean decoded = FrameDecoder.decode(ChannelBuffers.copiedBuffer(message, CharsetUtil.UTF_8),
+                    new FrameDecoder.Handler() {
+                        @Override
+                        public void onMessage(String message) {
+                            messages.add(message);
+                        }
+                    });
+            return decoded ? messages.toArray(new String[messages.size()]) : null;
         } catch (JsonParseException ex) {
             log.info("Json parse error: ", ex);
             throw ex;
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
         }
     }
 }
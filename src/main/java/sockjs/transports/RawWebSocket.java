@@ -1,5 +1,6 @@
 package sockjs.transports;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.handler.codec.http.websocketx.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,9 +15,23 @@ public class RawWebSocket extends WebSocket {
         super(sockJs);
     }
 
+    /**
+     * Raw websocket clients know nothing about SockJS frames, they only get a ping.
+     */
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
-        for (String message : messagesToSend) {
+    public void sendHeartbeat(Connection connection) {
+        sendPing(connection);
+    }
+
+    @Override
+    public void sendFrame(Connection connection, EncodedFrame frame) {
+        connection.getChannel().write(new TextWebSocketFrame(frame.getPayload()));
+    }
+
+    @Override
+    public void flushMessages(Connection connection) {
+        ChannelBuffer message;
+        while ((message = connection.pollMessage()) != null) {
             connection.getChannel().write(new TextWebSocketFrame(message));
         }
     }
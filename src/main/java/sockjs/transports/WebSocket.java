@@ -16,10 +16,12 @@ import org.slf4j.LoggerFactory;
 import sockjs.Connection;
 import sockjs.SockJs;
 import sockjs.netty.HttpHelpers;
+import sockjs.jfr.EventSink;
 import sockjs.netty.SockJsHandlerContext;
 import sockjs.netty.WebSocketHandshakerFactory;
 
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.WEBSOCKET_PROTOCOL;
@@ -34,6 +36,10 @@ public class WebSocket extends AbstractTransport {
 
     public static final String ERR_INVALID_REQUEST = "Can \"Upgrade\" only to \"WebSocket\".";
 
+    private static final int PING_PAYLOAD_SIZE = 8;
+
+    private static final long MAX_PING_RTT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
     private final ChannelFutureListener INIT_CONNECTION = new InitConnection();
 
     private final ChannelFutureListener SEND_OPEN_FRAME = new SendOpenFrame();
@@ -64,6 +70,7 @@ public class WebSocket extends AbstractTransport {
 
         if (isWebSocketUpgrade(httpRequest)) {
             if (!isValidConnectionHeader(httpRequest)) {
+                onHandshakeFailed(ctx, "incorrect_upgrade");
                 HttpHelpers.sendError(ctx, HttpResponseStatus.BAD_REQUEST, ERR_INCORRECT_UPGRADE);
             } else {
                 // upgrade & handshake
@@ -71,10 +78,13 @@ public class WebSocket extends AbstractTransport {
                         getWebSocketLocation(httpRequest, "/"), null, false);
                 WebSocketServerHandshaker handshaker = wsFactory.newHandshaker(httpRequest);
                 if (handshaker == null) {
+                    onHandshakeFailed(ctx, "unsupported_version");
                     wsFactory.sendUnsupportedWebSocketVersionResponse(ctx.getChannel());
                 } else {
+                    getSockJsHandlerContext(ctx).setWebSocketVersion(handshaker.getVersion());
                     if (getSockJsHandlerContext(ctx).getSessionId() == null) {
                         getSockJsHandlerContext(ctx).setSessionId(UUID.randomUUID().toString());
+                        getSockJsHandlerContext(ctx).setTransport(SockJs.RAW_WEBSOCKET_TRANSPORT);
                         handshaker.handshake(ctx.getChannel(), httpRequest).addListener(INIT_CONNECTION);
                         ctx.getPipeline().replace(this, "handler", new RawWebSocket(getSockJs()));
                     } else {
@@ -83,10 +93,20 @@ public class WebSocket extends AbstractTransport {
                 }
             }
         } else {
+            onHandshakeFailed(ctx, "invalid_request");
             HttpHelpers.sendError(ctx, HttpResponseStatus.BAD_REQUEST, ERR_INVALID_REQUEST);
         }
     }
 
+    private void onHandshakeFailed(ChannelHandlerContext ctx, String reason) {
+        SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx);
+        if (sockJsHandlerContext != null) {
+            getSockJs().getMetrics().onHandshakeFailed(sockJsHandlerContext.getBaseUrl(), reason);
+            EventSink.INSTANCE.handshake(sockJsHandlerContext.getBaseUrl(), sockJsHandlerContext.getTransport(),
+                    reason);
+        }
+    }
+
     @Override
     public void handle(ChannelHandlerContext ctx, WebSocketFrame webSocketFrame) {
         SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx);
@@ -100,21 +120,21 @@ public class WebSocket extends AbstractTransport {
         }
 
         if (webSocketFrame instanceof TextWebSocketFrame) {
-            log.info("text frame received: " + webSocketFrame);
+            if (log.isDebugEnabled()) {
+                log.debug("text frame received: " + webSocketFrame);
+            }
+            sockJsHandlerContext.getConnection().incReceivedBytes(webSocketFrame.getBinaryData().readableBytes());
             try {
-                String[] messages = Protocol
-                        .decodeMessage(((TextWebSocketFrame) webSocketFrame).getText());
-                if (messages != null) {
-                    for (String message : messages) {
-                        sockJsHandlerContext.getConnection().sendToListeners(message);
-                    }
-                }
+                FrameDecoder.decode(webSocketFrame.getBinaryData(),
+                        new ListenerHandler(sockJsHandlerContext.getConnection(), ctx.getChannel()));
             } catch (JsonParseException ex) {
                 handleCloseRequest(sockJsHandlerContext
                         .getConnection(), Protocol.CloseReason.NORMAL);
             }
         } else if (webSocketFrame instanceof PingWebSocketFrame) {
             ctx.getChannel().write(new PongWebSocketFrame(webSocketFrame.getBinaryData()));
+        } else if (webSocketFrame instanceof PongWebSocketFrame) {
+            handlePong(sockJsHandlerContext.getConnection(), webSocketFrame.getBinaryData());
         } else if (webSocketFrame instanceof CloseWebSocketFrame) {
             sockJsHandlerContext.getConnection().setCloseReason(Protocol.CloseReason.NORMAL);
         } else {
@@ -125,13 +145,38 @@ public class WebSocket extends AbstractTransport {
     @Override
     public void sendHeartbeat(Connection connection) {
         connection.getChannel().write(Protocol.WEB_SOCKET_HEARTBEAT_FRAME);
+        sendPing(connection);
+    }
+
+    /**
+     * Sends a ping carrying the time it was sent, the client echoes it back in a pong which
+     * gives the round trip time. Hixie-76 websockets have no ping frames.
+     */
+    protected void sendPing(Connection connection) {
+        SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(connection.getChannel());
+        if (sockJsHandlerContext == null || sockJsHandlerContext.getWebSocketVersion() == null
+                || sockJsHandlerContext.getWebSocketVersion() == WebSocketVersion.V00) {
+            return;
+        }
+        ChannelBuffer payload = ChannelBuffers.buffer(PING_PAYLOAD_SIZE);
+        payload.writeLong(System.nanoTime());
+        connection.getChannel().write(new PingWebSocketFrame(payload));
+    }
+
+    private void handlePong(Connection connection, ChannelBuffer payload) {
+        if (payload.readableBytes() != PING_PAYLOAD_SIZE) {
+            // unsolicited pong
+            return;
+        }
+        long rtt = System.nanoTime() - payload.getLong(payload.readerIndex());
+        if (rtt >= 0 && rtt < MAX_PING_RTT_NANOS) {
+            connection.recordRtt(TimeUnit.NANOSECONDS.toMicros(rtt));
+        }
     }
 
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
-        String message = Protocol.encodeMessageToString(messagesToSend);
-        log.info("handling send message: " + message);
-        connection.getChannel().write( new TextWebSocketFrame(message));
+    public void sendMessage(Connection connection, ChannelBuffer frame) {
+        connection.getChannel().write(new TextWebSocketFrame(frame));
     }
 
     @Override
@@ -162,9 +207,8 @@ public class WebSocket extends AbstractTransport {
             if (sockJsHandlerContext != null) {
                 Connection connection = getSockJs().createConnection(sockJsHandlerContext);
                 connection.setChannel(future.getChannel());
-                connection.startHeartbeat();
                 sockJsHandlerContext.setConnection(connection);
-
+                EventSink.INSTANCE.handshake(connection.getBaseUrl(), connection.getTransportName(), null);
             } else {
                 log.error("no sockjs handler context for channel");
             }
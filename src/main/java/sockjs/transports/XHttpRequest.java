@@ -28,11 +28,15 @@ public class XHttpRequest extends AbstractTransport {
 
     private static final HttpChunk PRELUDE_CHUNK;
 
+    private static final ChannelBuffer FRAME_SUFFIX = ChannelBuffers.copiedBuffer("\n", CharsetUtil.UTF_8);
+
+    private static final FrameEnvelope ENVELOPE = FrameEnvelope.of("", "\n", false);
+
     private final ChannelFutureListener SEND_OPEN;
 
     private static final ChannelFutureListener SEND_LAST_CHUNK;
 
-    private static final ChannelFutureListener SEND_ALREADY_CONNECTED;
+    private final ChannelFutureListener SEND_ALREADY_CONNECTED;
 
     static {
         ChannelBuffer heartbeatContent = ChannelBuffers
@@ -48,12 +52,12 @@ public class XHttpRequest extends AbstractTransport {
         PRELUDE_CHUNK = new DefaultHttpChunk(preludeBuffer);
 
         SEND_LAST_CHUNK = new SendLastChunk();
-        SEND_ALREADY_CONNECTED = new SendCloseAlreadyConnected();
     }
 
     public XHttpRequest(SockJs sockJs) {
         super(sockJs);
         SEND_OPEN = new SendOpen();
+        SEND_ALREADY_CONNECTED = new SendCloseAlreadyConnected();
     }
 
 
@@ -77,9 +81,17 @@ public class XHttpRequest extends AbstractTransport {
     }
 
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
-        String message = Protocol.encodeMessageToString(messagesToSend);
-        ChannelBuffer content = ChannelBuffers.copiedBuffer(message + "\n", CharsetUtil.UTF_8);
+    public void sendMessage(Connection connection, ChannelBuffer frame) {
+        sendEnveloped(connection, ChannelBuffers.wrappedBuffer(frame, FRAME_SUFFIX.duplicate()));
+    }
+
+    @Override
+    protected FrameEnvelope getFrameEnvelope() {
+        return ENVELOPE;
+    }
+
+    @Override
+    protected void sendEnveloped(Connection connection, ChannelBuffer content) {
         ChannelFuture writeFuture = connection.getChannel().write(new DefaultHttpChunk(content));
         connection.incSentBytes(content.readableBytes());
 
@@ -87,7 +99,6 @@ public class XHttpRequest extends AbstractTransport {
             connection.resetSentBytes();
             writeFuture.addListener(SEND_LAST_CHUNK);
         }
-
     }
 
     @Override
@@ -102,7 +113,7 @@ public class XHttpRequest extends AbstractTransport {
             HttpHelpers.addJESSIONID(response, sockJsHandlerContext.getJSESSIONID());
             ChannelFutureListener nextListener;
             if (sockJsHandlerContext.getConnection() == null ||
-                !sockJsHandlerContext.getConnection().getChannel().isWritable()) {
+                !sockJsHandlerContext.getConnection().isAttached()) {
                 nextListener = SEND_OPEN;
             } else {
                 nextListener = SEND_ALREADY_CONNECTED;
@@ -118,17 +129,15 @@ public class XHttpRequest extends AbstractTransport {
         SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx.getChannel());
         String jsessionId = "dummy";
         if (sockJsHandlerContext != null) {
-            String message = httpRequest.getContent().toString(CharsetUtil.UTF_8);
-            log.info("Message received: " + message);
+            ChannelBuffer content = httpRequest.getContent();
+            if (log.isDebugEnabled()) {
+                log.debug("Message received: " + content.toString(CharsetUtil.UTF_8));
+            }
             Connection connection = sockJsHandlerContext.getConnection();
             if (connection != null) {
+                connection.incReceivedBytes(content.readableBytes());
                 try {
-                    String[] messages = Protocol.decodeMessage(message);
-                    if (messages != null) {
-                        for (String decodedMessage : messages) {
-                            connection.sendToListeners(decodedMessage);
-                        }
-                    } else {
+                    if (!FrameDecoder.decode(content, new ListenerHandler(connection, ctx.getChannel()))) {
                         HttpHelpers
                                 .sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR,
                                         "Payload expected.");
@@ -218,6 +227,7 @@ public class XHttpRequest extends AbstractTransport {
                 Connection connection = sockJsHandlerContext.getConnection();
                 if (connection == null) {
                     connection = XHttpRequest.this.getSockJs().createConnection(sockJsHandlerContext);
+                    sockJsHandlerContext.setConnection(connection);
                 }
                 connection.setJSESSIONID(sockJsHandlerContext.getJSESSIONID());
                 connection.setChannel(future.getChannel());
@@ -244,10 +254,15 @@ public class XHttpRequest extends AbstractTransport {
         }
     }
 
-    private static class SendCloseAlreadyConnected implements  ChannelFutureListener {
+    private class SendCloseAlreadyConnected implements  ChannelFutureListener {
         @Override
         public void operationComplete(ChannelFuture future)
                 throws Exception {
+            SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(future.getChannel());
+            if (sockJsHandlerContext != null) {
+                getSockJs().getMetrics().onAlreadyOpened(sockJsHandlerContext.getBaseUrl(),
+                        sockJsHandlerContext.getTransport());
+            }
             future.getChannel().write(Protocol.CloseReason.ALREADY_OPENED.httpChunk).addListener(SEND_LAST_CHUNK);
         }
     }
@@ -6,6 +6,7 @@ package sockjs.transports;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.UpstreamMessageEvent;
@@ -18,13 +19,18 @@ import sockjs.SockJs;
 import sockjs.netty.*;
 import sockjs.netty.events.SockJsCloseEvent;
 import sockjs.netty.events.SockJsEvent;
-import sockjs.netty.events.SockJsSendEvent;
 
 public class XHttpRequestPolling extends AbstractTransport{
 
     private static final Logger log = LoggerFactory.getLogger(XHttpRequestPolling.class);
 
-    private static final String OPEN_FRAME = "o";
+    private static final ChannelBuffer OPEN_FRAME = ChannelBuffers.copiedBuffer(Protocol.OPEN_FRAME, CharsetUtil.UTF_8);
+
+    private static final ChannelBuffer FRAME_SUFFIX = ChannelBuffers.copiedBuffer("\n", CharsetUtil.UTF_8);
+
+    private static final FrameEnvelope ENVELOPE = FrameEnvelope.of("", "\n", false);
+
+    private static final ChannelBuffer HEARTBEAT_FRAME = ChannelBuffers.copiedBuffer(Protocol.HEARTBEAT_FRAME, CharsetUtil.UTF_8);
 
     public XHttpRequestPolling(SockJs sockJs) {
         super(sockJs);
@@ -48,34 +54,40 @@ public class XHttpRequestPolling extends AbstractTransport{
         SockJsHandlerContext sockJsHandlerContext = getSockJsHandlerContext(ctx);
         if (sockJsHandlerContext != null) {
             Connection connection = sockJsHandlerContext.getConnection();
-            SockJsEvent sendEvent;
+            SockJsEvent closeEvent;
             if (connection == null) {
                 try {
                     connection = createConnection(sockJsHandlerContext, httpRequest);
                 } catch (HttpRequestException ex) {
                     HttpHelpers.sendError(ctx, ex.getResponseStatus(), ex.getMessage());
+                    return;
                 }
 
                 sockJsHandlerContext.setConnection(connection);
-                connection.addMessageToBuffer(OPEN_FRAME);
                 connection.setChannel(ctx.getChannel());
-                sendEvent = new SockJsSendEvent(connection);
+                sendMessage(connection, OPEN_FRAME.duplicate());
+                getSockJs().notifyListenersAboutNewConnection(connection);
+                return;
             } else if (connection.getCloseReason() != null) {
                 log.info("Connection is closed: " + connection.getCloseReason());
                 connection.setChannel(ctx.getChannel());
-                sendEvent = new SockJsCloseEvent(connection, connection.getCloseReason());
-            } else if (connection.getChannel() != null && connection.getChannel().isWritable()) {
+                closeEvent = new SockJsCloseEvent(connection, connection.getCloseReason());
+            } else if (connection.isAttached()) {
+                getSockJs().getMetrics().onAlreadyOpened(sockJsHandlerContext.getBaseUrl(),
+                        sockJsHandlerContext.getTransport());
                 ChannelBuffer content = ChannelBuffers.copiedBuffer(Protocol.CloseReason.ALREADY_OPENED.frame + "\n", CharsetUtil.UTF_8);
                 ctx.getChannel().write(createResponse(content)).addListener(ChannelFutureListener.CLOSE);
                 return;
             } else {
                 log.info("polling all messages we have to send");
                 connection.setChannel(ctx.getChannel());
-                sendEvent = new SockJsSendEvent(connection);
+                // already on the I/O thread of the channel, the queue is drained right away
+                flushMessages(connection);
+                return;
             }
 
             ctx.getPipeline().sendUpstream(new UpstreamMessageEvent(ctx.getChannel(),
-                    sendEvent, ctx.getChannel().getRemoteAddress()));
+                    closeEvent, ctx.getChannel().getRemoteAddress()));
         } else {
             HttpHelpers
                     .sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR,
@@ -91,23 +103,55 @@ public class XHttpRequestPolling extends AbstractTransport{
         return connection;
     }
 
+    /**
+     * Answers the pending poll with a heartbeat frame, the client polls again right after it,
+     * which gives the round trip time.
+     */
+    @Override
+    public void sendHeartbeat(Connection connection) {
+        connection.startRttProbe();
+        sendResponse(connection, encodeFrame(connection, HEARTBEAT_FRAME.duplicate()));
+    }
+
+    @Override
+    public void sendMessage(Connection connection, ChannelBuffer frame) {
+        sendResponse(connection, encodeFrame(connection, frame));
+    }
+
+    @Override
+    public void sendFrame(Connection connection, EncodedFrame frame) {
+        sendResponse(connection, encodeFrame(connection, frame));
+    }
+
+    @Override
+    protected FrameEnvelope getFrameEnvelope() {
+        return ENVELOPE;
+    }
+
     @Override
-    public void sendMessage(Connection connection, String[] messagesToSend) {
-        String encodedMessage = encodeMessage(connection, messagesToSend);
-        ChannelBuffer content = ChannelBuffers.copiedBuffer(encodedMessage, CharsetUtil.UTF_8);
+    protected void sendEnveloped(Connection connection, ChannelBuffer content) {
+        sendResponse(connection, content);
+    }
+
+    private void sendResponse(Connection connection, ChannelBuffer content) {
         HttpResponse response = createResponse(content);
         HttpHelpers.addJESSIONID(response, connection.getJSESSIONID());
-        if (connection.getChannel().isWritable()) {
-            connection.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
-        }
+        Channel channel = connection.getChannel();
+        // content is already taken from the queue, so it is written even if the socket is
+        // congested; one response per poll, messages sent meanwhile wait for the next one
+        connection.setChannel(null);
+        channel.write(response).addListener(ChannelFutureListener.CLOSE);
     }
 
-    protected String encodeMessage(Connection connection, String[] messagesToSend) {
-        if (!messagesToSend[0].equals(Protocol.OPEN_FRAME)) {
-            return Protocol.encodeMessageToString(messagesToSend) + '\n';
-        } else {
-            return messagesToSend[0] + '\n';
-        }
+    /**
+     * Wraps SockJS frame into the transport envelope.
+     */
+    protected ChannelBuffer encodeFrame(Connection connection, ChannelBuffer frame) {
+        return ChannelBuffers.wrappedBuffer(frame, FRAME_SUFFIX.duplicate());
+    }
+
+    protected ChannelBuffer encodeFrame(Connection connection, EncodedFrame frame) {
+        return encodeFrame(connection, frame.getFrame());
     }
 
     @Override
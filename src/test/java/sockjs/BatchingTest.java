@@ -0,0 +1,70 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class BatchingTest {
+
+    private SockJs sockJs;
+
+    private final List<String> writes = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        EndpointInfo info = new EndpointInfo();
+        info.setBatching(50, 3, 1024);
+        sockJs.setEndpointInfo("/echo", info);
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void messagesWithinDelayGoInOneFrame() throws InterruptedException {
+        Connection connection = createConnection();
+        connection.sendToChannel("first");
+        connection.sendToChannel("second");
+        assertTrue(writes.isEmpty());
+
+        waitForWrites(1);
+        assertEquals("a[\"first\",\"second\"]\n", writes.get(0));
+        assertEquals(1, sockJs.getBatchSizes().getCount(1));
+    }
+
+    @Test
+    public void fullBatchIsSentRightAway() {
+        Connection connection = createConnection();
+        connection.sendToChannel("1");
+        connection.sendToChannel("2");
+        connection.sendToChannel("3");
+
+        assertEquals(1, writes.size());
+        assertEquals("a[\"1\",\"2\",\"3\"]\n", writes.get(0));
+        assertEquals(1, sockJs.getBatchSizes().getCount(2));
+    }
+
+    private void waitForWrites(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writes.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, writes.size());
+    }
+
+    private Connection createConnection() {
+        return CapturingChannel.attach(sockJs, "xhr_streaming", writes);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Channel keeping the content of written chunks and responses instead of sending them. Tasks
+ * executed in the pipeline run right away unless the channel defers them until {@link #runTasks()}.
+ */
+class CapturingChannel extends AbstractChannel {
+
+    private static final SocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 0);
+
+    private final ChannelConfig config = new DefaultChannelConfig();
+
+    private volatile boolean writable = true;
+
+    CapturingChannel(ChannelPipeline pipeline, List<String> writes, boolean deferTasks) {
+        super(null, null, pipeline, new CapturingSink(writes, deferTasks));
+    }
+
+    /**
+     * Creates a connection of the endpoint attached to a capturing channel of the given transport.
+     */
+    static Connection attach(SockJs sockJs, String transport, List<String> writes, boolean deferTasks) {
+        ChannelPipeline pipeline = new DefaultChannelPipeline();
+        pipeline.addLast("handler", (ChannelHandler) sockJs.getTransport(transport));
+        Connection connection = new Connection(sockJs, "/echo", "session");
+        connection.setChannel(new CapturingChannel(pipeline, writes, deferTasks));
+        return connection;
+    }
+
+    static Connection attach(SockJs sockJs, String transport, List<String> writes) {
+        return attach(sockJs, transport, writes, false);
+    }
+
+    /**
+     * Runs the deferred tasks as the I/O thread of the channel would.
+     */
+    void runTasks() {
+        ((CapturingSink) getPipeline().getSink()).runTasks();
+    }
+
+    /**
+     * Makes the channel report a congested socket, writes are captured anyway.
+     */
+    void setWritable(boolean writable) {
+        this.writable = writable;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return writable && super.isWritable();
+    }
+
+    @Override
+    public ChannelConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public boolean isBound() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+
+    private static class CapturingSink extends AbstractChannelSink {
+
+        private final List<String> writes;
+
+        private final Queue<Runnable> tasks;
+
+        private CapturingSink(List<String> writes, boolean deferTasks) {
+            this.writes = writes;
+            this.tasks = deferTasks ? new ConcurrentLinkedQueue<Runnable>() : null;
+        }
+
+        @Override
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            if (e instanceof MessageEvent) {
+                Object message = ((MessageEvent) e).getMessage();
+                ChannelBuffer content = message instanceof HttpChunk ? ((HttpChunk) message).getContent()
+                        : ((HttpMessage) message).getContent();
+                writes.add(content.toString(CharsetUtil.UTF_8));
+            }
+            e.getFuture().setSuccess();
+        }
+
+        @Override
+        public ChannelFuture execute(ChannelPipeline pipeline, Runnable task) {
+            if (tasks == null) {
+                return super.execute(pipeline, task);
+            }
+            tasks.offer(task);
+            return Channels.succeededFuture(pipeline.getChannel());
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
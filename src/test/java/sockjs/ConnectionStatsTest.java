@@ -0,0 +1,66 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sockjs.netty.SockJsHandlerContext;
+
+import static org.junit.Assert.*;
+
+public class ConnectionStatsTest {
+
+    private SockJs sockJs;
+
+    private Connection connection;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        SockJsHandlerContext context = new SockJsHandlerContext();
+        context.setBaseUrl("/echo");
+        context.setSessionId("session1");
+        context.setTransport(SockJs.XHR_STREAMING_TRANSPORT);
+        connection = sockJs.createConnection(context);
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void countsSurviveStreamRecycle() {
+        connection.addMessageToBuffer("a");
+        connection.addMessageToBuffer("b");
+        assertNotNull(connection.drainMessages());
+        connection.addMessageToBuffer("c");
+        connection.incReceivedBytes(10);
+        connection.sendToListeners("x");
+        connection.incSentBytes(100);
+        connection.resetSentBytes();
+
+        ConnectionStats stats = connection.getStats();
+        assertEquals(SockJs.XHR_STREAMING_TRANSPORT, stats.getTransport());
+        assertEquals(2, stats.getMessagesOut());
+        assertEquals("a[\"a\",\"b\"]".length(), stats.getBytesOut());
+        assertEquals(1, stats.getMessagesIn());
+        assertEquals(10, stats.getBytesIn());
+        assertEquals(1, stats.getQueuedMessages());
+        assertEquals(1, stats.getStreamRecycles());
+        assertEquals(0, connection.getSentBytes());
+        assertEquals(-1, stats.getSmoothedRtt());
+    }
+
+    @Test
+    public void smoothsRoundTripTime() {
+        connection.recordRtt(8000);
+        assertEquals(8000, connection.getStats().getSmoothedRtt());
+
+        connection.recordRtt(16000);
+        assertEquals(9000, connection.getStats().getSmoothedRtt());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+import sockjs.transports.FrameEnvelope;
+import sockjs.transports.Protocol;
+
+import static org.junit.Assert.*;
+
+public class MessageQueueTest {
+
+    private static final String[] MESSAGES = new String[] {
+            "test",
+            "",
+            "{\"value\": 123}",
+            "back\\slash /slash",
+            "\b\t\n\f\r\u0000\u0001\u001f",
+            "\u00e9\u0416\u20ac\u2028",
+            "\ud83d\ude00 surrogate pair"
+    };
+
+    @Test
+    public void drainedFrameMatchesJacksonEncoding() {
+        MessageQueue queue = new MessageQueue(1024);
+        for (String message : MESSAGES) {
+            assertTrue(queue.offer(message));
+        }
+        assertEquals(MESSAGES.length, queue.size());
+
+        ChannelBuffer frame = queue.drainFrame();
+
+        assertEquals(Protocol.encodeMessageToString(MESSAGES), frame.toString(CharsetUtil.UTF_8));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.bytes());
+        assertNull(queue.drainFrame());
+    }
+
+    @Test
+    public void rejectsMessagesOverLimit() {
+        MessageQueue queue = new MessageQueue(16);
+
+        assertTrue(queue.offer("12345678"));
+        assertFalse(queue.offer("12345678"));
+        assertFalse(queue.offer("\u20ac\u20ac\u20ac"));
+        assertEquals(1, queue.size());
+        assertEquals(12, queue.bytes());
+
+        queue.drainFrame();
+        assertTrue(queue.offer("12345678"));
+    }
+
+    @Test
+    public void pollReturnsRawMessagesInOrder() {
+        MessageQueue queue = new MessageQueue(1024);
+        queue.offer("first \"quoted\"");
+        queue.offer("\u20ac");
+
+        assertEquals("first \"quoted\"", queue.poll().toString(CharsetUtil.UTF_8));
+        assertEquals("\u20ac", queue.poll().toString(CharsetUtil.UTF_8));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void keepsEnqueueTimesOfRemainingMessages() throws Exception {
+        MessageQueue queue = new MessageQueue(4096);
+        for (int i = 0; i < 40; i++) {
+            queue.offer("message " + i);
+        }
+        int first = queue.getOldestEnqueuedAt();
+        assertTrue(queue.dropOldest());
+        Thread.sleep(2);
+        int marker = MessageQueue.micros();
+        queue.offer("late");
+
+        int[] enqueuedAt = new int[queue.size()];
+        assertNotNull(queue.drainFrame(FrameEnvelope.NONE, null, enqueuedAt));
+        assertTrue(enqueuedAt[0] - first >= 0);
+        assertTrue(enqueuedAt[enqueuedAt.length - 1] - marker >= 0);
+        assertTrue(enqueuedAt[enqueuedAt.length - 2] - marker < 0);
+    }
+
+    @Test
+    public void bufferStaysBoundedWhenOldestMessagesAreDropped() {
+        MessageQueue queue = new MessageQueue(64 * 1024);
+        String message = "0123456789012345678901234567890123456789012345678901234567890123456789";
+        while (queue.offer(message)) {
+        }
+        int capacity = queue.capacity();
+
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(queue.dropOldest());
+            assertTrue(queue.offer(message));
+            if (i % 2 == 0) {
+                assertNotNull(queue.poll());
+                assertTrue(queue.offer(message));
+            }
+        }
+        // read bytes are discarded at half of the buffer, so it may double once but not more
+        assertTrue(queue.capacity() <= 2 * capacity);
+        assertTrue(queue.bytes() <= queue.getMaxBytes());
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OrderedDispatcherTest {
+
+    private SockJs sockJs;
+
+    private final List<String> fast = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<String> slow = Collections.synchronizedList(new ArrayList<String>());
+
+    private final CountDownLatch slowBlocked = new CountDownLatch(1);
+
+    private final CountDownLatch fastDone = new CountDownLatch(1);
+
+    private final CountDownLatch slowClosed = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        EndpointInfo info = new EndpointInfo();
+        info.setListenerDispatch(ListenerDispatch.ORDERED_POOL);
+        info.setListenerThreads(2);
+        sockJs.setEndpointInfo("/echo", info);
+        sockJs.addListener("/echo", new ConnectionListener() {
+            @Override
+            public void onOpen(Connection connection) {
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+                if (connection.getSessionId().equals("slow")) {
+                    slowClosed.countDown();
+                }
+            }
+
+            @Override
+            public void onMessage(Connection connection, String message) {
+                if (connection.getSessionId().equals("slow")) {
+                    if (message.equals("0")) {
+                        awaitQuietly(fastDone);
+                    }
+                    slow.add(message);
+                } else {
+                    fast.add(message);
+                    if (fast.size() == 100) {
+                        fastDone.countDown();
+                    }
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void slowSessionDoesNotBlockOthersAndKeepsOrder() throws InterruptedException {
+        Connection slowConnection = TestConnections.create(sockJs, "slow");
+        Connection fastConnection = TestConnections.create(sockJs, "fast");
+
+        for (int i = 0; i < 100; i++) {
+            slowConnection.sendToListeners(String.valueOf(i), null);
+        }
+        for (int i = 0; i < 100; i++) {
+            fastConnection.sendToListeners(String.valueOf(i), null);
+        }
+        sockJs.closeConnection(slowConnection);
+
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        assertTrue(slowClosed.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.valueOf(i), fast.get(i));
+            assertEquals(String.valueOf(i), slow.get(i));
+        }
+
+        // the last message is released right after its callback returns
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sockJs.getPendingListenerBytes("/echo") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, sockJs.getPendingListenerBytes("/echo"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
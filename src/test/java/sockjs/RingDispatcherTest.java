@@ -0,0 +1,188 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RingDispatcherTest {
+
+    private static final int PRODUCERS = 4;
+
+    private static final int MESSAGES = 20000;
+
+    private SockJs sockJs;
+
+    private final int[] lastReceived = new int[PRODUCERS];
+
+    private final Set<Thread> listenerThreads = new HashSet<Thread>();
+
+    private final CountDownLatch done = new CountDownLatch(PRODUCERS * MESSAGES);
+
+    private volatile boolean outOfOrder;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        EndpointInfo info = new EndpointInfo();
+        info.setListenerDispatch(ListenerDispatch.RING);
+        info.setRingSize(256);
+        info.setRingWaitStrategy(RingWaitStrategy.YIELD);
+        sockJs.setEndpointInfo("/echo", info);
+        sockJs.addListener("/echo", new ConnectionListener() {
+            @Override
+            public void onOpen(Connection connection) {
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+            }
+
+            @Override
+            public void onMessage(Connection connection, String message) {
+                // no locking, everything runs on the ring thread
+                listenerThreads.add(Thread.currentThread());
+                int producer = Integer.parseInt(connection.getSessionId());
+                int sequence = Integer.parseInt(message);
+                if (sequence != lastReceived[producer] + 1) {
+                    outOfOrder = true;
+                }
+                lastReceived[producer] = sequence;
+                done.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void deliversEventsOfAllProducersInOrderOnOneThread() throws InterruptedException {
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final Connection connection = TestConnections.create(sockJs, String.valueOf(p));
+            lastReceived[p] = -1;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < MESSAGES; i++) {
+                        connection.sendToListeners(String.valueOf(i), null);
+                    }
+                }
+            });
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(outOfOrder);
+        assertEquals(1, listenerThreads.size());
+
+        // counters are updated after the batch is handled
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sockJs.getRingStats("/echo").getEvents() < PRODUCERS * MESSAGES
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        RingStats stats = sockJs.getRingStats("/echo");
+        assertEquals(PRODUCERS * MESSAGES, stats.getEvents());
+        assertTrue(stats.getMaxBatchSize() <= 256);
+        assertNull(sockJs.getRingStats("/chat"));
+    }
+
+    @Test
+    public void queuesRepliesThroughReplyRing() throws InterruptedException {
+        Connection connection = TestConnections.create(sockJs, "0");
+        assertNull(sockJs.getReplyRingStats("/echo"));
+
+        sockJs.sendReply(connection, "first");
+        sockJs.sendReply(connection, "second");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connection.getQueuedMessages() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("a[\"first\",\"second\"]", connection.drainMessages().toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void listenerClosingSessionDoesNotWaitForItsOwnRing() throws InterruptedException {
+        EndpointInfo info = new EndpointInfo();
+        info.setListenerDispatch(ListenerDispatch.RING);
+        info.setRingSize(2);
+        info.setRingWaitStrategy(RingWaitStrategy.PARK);
+        sockJs.setEndpointInfo("/ring", info);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        sockJs.addListener("/ring", new ConnectionListener() {
+            @Override
+            public void onOpen(Connection connection) {
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+                closed.countDown();
+            }
+
+            @Override
+            public void onMessage(Connection connection, String message) {
+                if ("close".equals(message)) {
+                    blocked.countDown();
+                    awaitQuietly(release);
+                    // published into the full ring by its own consumer thread
+                    sockJs.closeConnection(connection);
+                }
+            }
+        });
+        final Connection connection = TestConnections.create(sockJs, "/ring", "ring");
+
+        connection.sendToListeners("close", null);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                connection.sendToListeners("first", null);
+                connection.sendToListeners("second", null);
+            }
+        });
+        producer.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sockJs.getRingStats("/ring").getPending() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, sockJs.getRingStats("/ring").getPending());
+        assertTrue(sockJs.getPendingListenerBytes("/ring") > 0);
+
+        release.countDown();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        producer.join(5000);
+        deadline = System.currentTimeMillis() + 5000;
+        while (sockJs.getPendingListenerBytes("/ring") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, sockJs.getPendingListenerBytes("/ring"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
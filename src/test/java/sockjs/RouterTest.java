@@ -0,0 +1,73 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RouterTest {
+
+    private final Router router = Router.compile(Arrays.asList("/echo", "/echo/nested", "/chat", "/e"));
+
+    @Test
+    public void matchesLongestBaseUrl() {
+        assertEquals("/echo", router.route("/echo/000/abc/xhr").getBaseUrl());
+        assertEquals("/echo/nested", router.route("/echo/nested/000/abc/xhr").getBaseUrl());
+        assertEquals("/e", router.route("/e/info").getBaseUrl());
+        assertNull(router.route("/echo32"));
+        assertNull(router.route("/ec/000/abc/xhr"));
+        assertNull(router.route("/battle"));
+    }
+
+    @Test
+    public void splitsSessionPath() {
+        Route route = router.route("/chat/000/abc/jsonp?c=callback");
+        assertTrue(route.isSessionPath());
+        assertEquals("000", route.getServerId());
+        assertEquals("abc", route.getSessionId());
+        assertEquals("jsonp", route.getTransport());
+        assertEquals("c=callback", route.getQuery());
+    }
+
+    @Test
+    public void recognizesShortPaths() {
+        assertTrue(router.route("/chat").isRoot());
+        assertTrue(router.route("/chat/").isRoot());
+
+        Route websocket = router.route("/chat/websocket");
+        assertEquals("websocket", websocket.getTransport());
+        assertNull(websocket.getSessionId());
+        assertFalse(websocket.isSessionPath());
+
+        assertFalse(router.route("/chat/000/a.b/xhr").isSessionPath());
+        assertFalse(router.route("/chat/000//xhr").isSessionPath());
+        assertFalse(router.route("/chat/1/000/abc/xhr").isSessionPath());
+    }
+
+    @Test
+    public void reusesRouteForNextUri() {
+        Route route = new Route();
+        assertTrue(router.route("/echo/000/first/xhr", route));
+        assertEquals("first", route.getSessionId());
+
+        assertTrue(router.route("/echo/info?t=1", route));
+        assertTrue(route.isInfo());
+        assertNull(route.getSessionId());
+        assertEquals("t=1", route.getQuery());
+
+        assertTrue(router.route("/echo/iframe-0.3.4.html?t=1", route));
+        assertTrue(route.isIframe());
+        assertTrue(router.route("/echo/iframe.html", route));
+        assertTrue(route.isIframe());
+        assertTrue(router.route("/echo/iframe.htm", route));
+        assertFalse(route.isIframe());
+
+        assertFalse(router.route("/battle/info", route));
+        assertEquals("/echo/iframe.htm", route.getUri());
+    }
+}
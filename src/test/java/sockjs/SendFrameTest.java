@@ -0,0 +1,77 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sockjs.transports.EncodedFrame;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class SendFrameTest {
+
+    private SockJs sockJs;
+
+    private final List<String> writes = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.setEndpointInfo("/echo", new EndpointInfo());
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void framesKeepOrderWithQueuedMessages() {
+        Connection connection = CapturingChannel.attach(sockJs, "xhr_streaming", writes, true);
+        connection.sendFrame(EncodedFrame.encode("first"));
+        connection.sendToChannel("second");
+        connection.sendFrame(EncodedFrame.encode("third"));
+        assertTrue(writes.isEmpty());
+
+        ((CapturingChannel) connection.getChannel()).runTasks();
+        assertEquals("a[\"first\",\"second\",\"third\"]\n", join());
+    }
+
+    @Test
+    public void singleFrameIsWrittenAsEncoded() {
+        Connection connection = CapturingChannel.attach(sockJs, "xhr_streaming", writes, true);
+        EncodedFrame frame = EncodedFrame.encode("only");
+        assertTrue(connection.queueFrame(frame, true));
+        connection.writeFrame(frame);
+
+        assertEquals(1, writes.size());
+        assertEquals("a[\"only\"]\n", writes.get(0));
+        assertFalse(connection.hasMessages());
+    }
+
+    @Test
+    public void frameQueuedBehindMessageIsDrained() {
+        Connection connection = CapturingChannel.attach(sockJs, "xhr_streaming", writes, true);
+        EncodedFrame frame = EncodedFrame.encode("frame");
+        assertTrue(connection.queueFrame(frame, true));
+        connection.sendToChannel("message");
+        connection.writeFrame(frame);
+
+        assertEquals("a[\"frame\",\"message\"]\n", join());
+        assertFalse(connection.hasMessages());
+    }
+
+    private String join() {
+        StringBuilder sb = new StringBuilder();
+        for (String write : writes) {
+            sb.append(write);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SendFutureTest {
+
+    private SockJs sockJs;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void messagesDrainedTogetherShareFutureDoneByTheWrite() throws Exception {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        ChannelFuture first = connection.sendWithFuture("a");
+        ChannelFuture second = connection.sendWithFuture("b");
+        assertSame(first, second);
+
+        assertNotNull(connection.drainMessages());
+        ChannelFuture third = connection.sendWithFuture("c");
+        assertNotSame(first, third);
+        assertFalse(first.isDone());
+
+        write(connection, true);
+        assertTrue(first.isSuccess());
+        assertFalse(third.isDone());
+    }
+
+    @Test
+    public void polledBatchIsDoneWithItsLastMessage() throws Exception {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        ChannelFuture future = connection.sendWithFuture("a");
+        connection.sendWithFuture("b");
+
+        assertNotNull(connection.pollMessage());
+        write(connection, true);
+        assertFalse(future.isDone());
+
+        assertNotNull(connection.pollMessage());
+        write(connection, true);
+        assertTrue(future.isSuccess());
+    }
+
+    @Test
+    public void failedWriteFailsFuture() throws Exception {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        ChannelFuture future = connection.sendWithFuture("a");
+        connection.drainMessages();
+
+        write(connection, false);
+        assertTrue(future.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void closeFailsQueuedFutures() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        ChannelFuture future = connection.sendWithFuture("a");
+
+        sockJs.closeConnection(connection);
+        assertTrue(future.getCause() instanceof ClosedChannelException);
+        assertTrue(connection.sendWithFuture("b").getCause() instanceof ClosedChannelException);
+    }
+
+    @Test
+    public void droppedMessagesFailFutures() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.DROP_OLDEST);
+        ChannelFuture oldest = connection.sendWithFuture(message());
+        connection.drainMessages();
+        ChannelFuture dropped = connection.sendWithFuture(message());
+        while (!connection.isAboveHighWaterMark()) {
+            connection.addMessageToBuffer(message());
+        }
+        ChannelFuture newest = connection.sendWithFuture(message());
+
+        assertFalse(oldest.isDone());
+        assertTrue(dropped.getCause() instanceof MessageDroppedException);
+        assertFalse(newest.isDone());
+
+        Connection full = TestConnections.create(sockJs, SlowConsumerPolicy.DROP_NEWEST);
+        while (!full.isAboveHighWaterMark()) {
+            full.addMessageToBuffer(message());
+        }
+        assertTrue(full.sendWithFuture(message()).getCause() instanceof MessageDroppedException);
+    }
+
+    @Test
+    public void droppedHeadFailsBatchAndKeepsTheRestQueued() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.DROP_OLDEST);
+        ChannelFuture batch = connection.sendWithFuture("a" + message());
+        assertSame(batch, connection.sendWithFuture("b" + message()));
+        assertSame(batch, connection.sendWithFuture("c" + message()));
+        while (!connection.isAboveHighWaterMark()) {
+            connection.addMessageToBuffer(message());
+        }
+        ChannelFuture next = connection.sendWithFuture("d");
+
+        assertTrue(batch.getCause() instanceof MessageDroppedException);
+        assertNotSame(batch, next);
+        String frame = connection.drainMessages().toString(CharsetUtil.UTF_8);
+        assertFalse(frame.contains("ax"));
+        assertTrue(frame.contains("bx"));
+        assertTrue(frame.contains("cx"));
+    }
+
+    @Test
+    public void drainedMessagesAreWrittenToCongestedChannel() {
+        for (String transport : new String[]{"htmlfile", "xhr"}) {
+            List<String> writes = new ArrayList<String>();
+            Connection connection = CapturingChannel.attach(sockJs, transport, writes);
+            ((CapturingChannel) connection.getChannel()).setWritable(false);
+            connection.sendWithFuture("congested");
+
+            sockJs.getTransport(transport).flushMessages(connection);
+            assertFalse(connection.hasMessages());
+            assertEquals(1, writes.size());
+            assertTrue(writes.get(0), writes.get(0).contains("congested"));
+        }
+    }
+
+    private static void write(Connection connection, boolean success) throws Exception {
+        ChannelFutureListener listener = connection.takeWriteListener();
+        assertNotNull(listener);
+        DefaultChannelFuture write = new DefaultChannelFuture(null, false);
+        if (success) {
+            write.setSuccess();
+        } else {
+            write.setFailure(new ClosedChannelException());
+        }
+        listener.operationComplete(write);
+    }
+
+    private static String message() {
+        char[] chars = new char[96];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sockjs.netty.SockJsHandlerContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SessionReaperTest {
+
+    private SockJs sockJs;
+
+    private CountingListener listener;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        listener = new CountingListener();
+        sockJs.addListener("/echo", listener);
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void detachedSessionExpiresAfterDisconnectDelay() throws Exception {
+        EndpointInfo info = new EndpointInfo();
+        info.setDisconnectDelay(0);
+        sockJs.setEndpointInfo("/echo", info);
+
+        sockJs.createConnection(createContext("session1"));
+        assertEquals(1, sockJs.getLiveSessions());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sockJs.getLiveSessions() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, sockJs.getLiveSessions());
+        assertEquals(1, sockJs.getExpiredSessions());
+        assertNull(sockJs.getConnectionForSession("session1"));
+        assertEquals(1, listener.closed.get());
+    }
+
+    @Test
+    public void sessionIsClosedOnlyOnce() {
+        Connection connection = sockJs.createConnection(createContext("session2"));
+
+        assertTrue(sockJs.closeConnection(connection));
+        assertFalse(sockJs.closeConnection(connection));
+
+        assertTrue(connection.isClosed());
+        assertEquals(0, sockJs.getLiveSessions());
+        assertEquals(1, listener.closed.get());
+    }
+
+    private static SockJsHandlerContext createContext(String sessionId) {
+        SockJsHandlerContext context = new SockJsHandlerContext();
+        context.setBaseUrl("/echo");
+        context.setSessionId(sessionId);
+        return context;
+    }
+
+    private static class CountingListener implements ConnectionListener {
+
+        private final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public void onOpen(Connection connection) {
+        }
+
+        @Override
+        public void onClose(Connection connection) {
+            closed.incrementAndGet();
+        }
+
+        @Override
+        public void onMessage(Connection connection, String message) {
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionRegistryTest {
+
+    private SockJs sockJs;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void putGetRemove() {
+        SessionRegistry registry = new SessionRegistry(4);
+        Connection first = new Connection(sockJs, "/echo", "session");
+        Connection second = new Connection(sockJs, "/echo", "session");
+
+        assertNull(registry.put("session", first));
+        assertSame(first, registry.get("session"));
+        assertSame(first, registry.put("session", second));
+        assertEquals(1, registry.size());
+
+        assertFalse(registry.remove("session", first));
+        assertSame(second, registry.get("session"));
+        assertTrue(registry.remove("session", second));
+        assertNull(registry.get("session"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void sessionsSpreadOverShardsAreAllFound() {
+        SessionRegistry registry = new SessionRegistry(4);
+        Connection[] connections = new Connection[1000];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection(sockJs, "/echo", "session" + i);
+            registry.put("session" + i, connections[i]);
+        }
+        assertEquals(connections.length, registry.size());
+
+        for (int i = 0; i < connections.length; i++) {
+            assertSame(connections[i], registry.get("session" + i));
+        }
+        for (int i = 0; i < connections.length; i += 2) {
+            assertTrue(registry.remove("session" + i, connections[i]));
+        }
+        assertEquals(connections.length / 2, registry.size());
+        assertNull(registry.get("session0"));
+        assertSame(connections[1], registry.get("session1"));
+    }
+
+    @Test
+    public void shardCountIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new SessionRegistry(1).getShardCount());
+        assertEquals(8, new SessionRegistry(5).getShardCount());
+        assertEquals(16, new SessionRegistry(16).getShardCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shardCountMustBePositive() {
+        new SessionRegistry(0);
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SlowConsumerPolicyTest {
+
+    private static final String MESSAGE;
+
+    static {
+        char[] chars = new char[96];
+        Arrays.fill(chars, 'x');
+        MESSAGE = new String(chars);
+    }
+
+    private SockJs sockJs;
+
+    private int highWaterMarks;
+
+    private int lowWaterMarks;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.addListener("/echo", new Listener());
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void blockCompletesFutureAtLowWaterMark() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        assertTrue(connection.getWritableFuture().isSuccess());
+
+        fillAboveHighWaterMark(connection);
+        assertTrue(connection.isAboveHighWaterMark());
+        assertTrue(connection.addMessageToBuffer(MESSAGE));
+        ChannelFuture future = connection.getWritableFuture();
+        assertFalse(future.isDone());
+        assertEquals(1, highWaterMarks);
+
+        connection.drainMessages();
+        assertTrue(future.isSuccess());
+        assertFalse(connection.isAboveHighWaterMark());
+        assertEquals(1, lowWaterMarks);
+        assertEquals(0, sockJs.getDroppedMessages());
+    }
+
+    @Test
+    public void blockDropsMessagesPastMaxQueueSize() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        int sent = 0;
+        while (connection.sendToChannel(MESSAGE)) {
+            sent++;
+        }
+        assertTrue(sent > new EndpointInfo().getMaxQueueSize() / (2 * MESSAGE.length()));
+        assertEquals(sent, connection.getQueuedMessages());
+        assertEquals(1, sockJs.getDroppedMessages());
+    }
+
+    @Test
+    public void blockFailsFutureOnClose() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.BLOCK);
+        fillAboveHighWaterMark(connection);
+        ChannelFuture future = connection.getWritableFuture();
+
+        sockJs.closeConnection(connection);
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccess());
+    }
+
+    @Test
+    public void dropNewestKeepsQueuedMessages() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.DROP_NEWEST);
+        int queued = fillAboveHighWaterMark(connection);
+
+        assertFalse(connection.addMessageToBuffer("newest"));
+        assertEquals(queued, connection.getQueuedMessages());
+        assertEquals(1, sockJs.getDroppedMessages());
+    }
+
+    @Test
+    public void dropOldestMakesRoomForNewMessage() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.DROP_OLDEST);
+        connection.addMessageToBuffer("oldest");
+        fillAboveHighWaterMark(connection);
+
+        assertTrue(connection.addMessageToBuffer("newest"));
+        String frame = connection.drainMessages().toString(CharsetUtil.UTF_8);
+        assertFalse(frame.contains("oldest"));
+        assertTrue(frame.endsWith("\"newest\"]"));
+        assertTrue(sockJs.getDroppedMessages() > 0);
+    }
+
+    @Test
+    public void disconnectClosesSession() {
+        Connection connection = TestConnections.create(sockJs, SlowConsumerPolicy.DISCONNECT);
+        fillAboveHighWaterMark(connection);
+
+        assertFalse(connection.addMessageToBuffer(MESSAGE));
+        assertTrue(connection.isClosed());
+        assertFalse(connection.hasMessages());
+        assertNull(sockJs.getConnectionForSession(SlowConsumerPolicy.DISCONNECT.name()));
+        assertEquals(1, sockJs.getSlowConsumerDisconnects());
+    }
+
+    private int fillAboveHighWaterMark(Connection connection) {
+        while (!connection.isAboveHighWaterMark()) {
+            assertTrue(connection.addMessageToBuffer(MESSAGE));
+        }
+        return connection.getQueuedMessages();
+    }
+
+    private class Listener implements ConnectionListener, BackpressureListener {
+
+        @Override
+        public void onOpen(Connection connection) {
+        }
+
+        @Override
+        public void onClose(Connection connection) {
+        }
+
+        @Override
+        public void onMessage(Connection connection, String message) {
+        }
+
+        @Override
+        public void onHighWaterMark(Connection connection) {
+            highWaterMarks++;
+        }
+
+        @Override
+        public void onLowWaterMark(Connection connection) {
+            lowWaterMarks++;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sockjs.metrics.MetricsRegistry;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StallWatchdogTest {
+
+    private StallWatchdog watchdog;
+
+    @Before
+    public void setUp() {
+        watchdog = new StallWatchdog(new MetricsRegistry());
+        watchdog.setThreshold(50);
+    }
+
+    @After
+    public void tearDown() {
+        watchdog.stop();
+    }
+
+    @Test
+    public void reportsBlockedThreadOnceWithInnermostContext() throws Exception {
+        StallWatchdog.Probe outer = watchdog.enter("/echo", "session1", "xhr_send");
+        StallWatchdog.Probe inner = watchdog.enter("/echo", "session1", "onMessage");
+        Thread.sleep(300);
+        watchdog.exit(inner);
+        watchdog.exit(outer);
+        Thread.sleep(100);
+
+        List<StallReport> stalls = watchdog.getRecentStalls();
+        assertEquals(1, stalls.size());
+        StallReport stall = stalls.get(0);
+        assertEquals("/echo", stall.getEndpoint());
+        assertEquals("session1", stall.getSessionId());
+        assertEquals("onMessage", stall.getActivity());
+        assertEquals(Thread.currentThread().getName(), stall.getThreadName());
+        assertTrue(stall.getBlockedMillis() >= 50);
+        boolean inTest = false;
+        for (StackTraceElement element : stall.getStackTrace()) {
+            inTest |= element.getMethodName().equals("reportsBlockedThreadOnceWithInnermostContext");
+        }
+        assertTrue(inTest);
+    }
+
+    @Test
+    public void ignoresShortCalls() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            StallWatchdog.Probe probe = watchdog.enter("/echo", "session1", "onMessage");
+            Thread.sleep(5);
+            watchdog.exit(probe);
+        }
+        Thread.sleep(100);
+
+        assertEquals(0, watchdog.getStalls());
+    }
+
+    @Test
+    public void doesNothingWhenDisabled() {
+        watchdog.setThreshold(0);
+
+        assertNull(watchdog.enter("/echo", "session1", "onMessage"));
+    }
+}
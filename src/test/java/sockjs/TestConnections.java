@@ -0,0 +1,39 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import sockjs.netty.SockJsHandlerContext;
+
+/**
+ * Creates sessions of an endpoint the way a transport does, without a channel attached.
+ */
+final class TestConnections {
+
+    private TestConnections() {
+    }
+
+    static Connection create(SockJs sockJs, String baseUrl, String sessionId) {
+        SockJsHandlerContext context = new SockJsHandlerContext();
+        context.setBaseUrl(baseUrl);
+        context.setSessionId(sessionId);
+        return sockJs.createConnection(context);
+    }
+
+    static Connection create(SockJs sockJs, String sessionId) {
+        return create(sockJs, "/echo", sessionId);
+    }
+
+    /**
+     * Creates a session of the "/echo" endpoint with 1 KiB and 4 KiB watermarks and the policy,
+     * the session is named after the policy.
+     */
+    static Connection create(SockJs sockJs, SlowConsumerPolicy policy) {
+        EndpointInfo info = new EndpointInfo();
+        info.setWaterMarks(1024, 4096);
+        info.setSlowConsumerPolicy(policy);
+        sockJs.setEndpointInfo("/echo", info);
+        return create(sockJs, "/echo", policy.name());
+    }
+}
@@ -18,6 +18,8 @@ public class TestStandaloneServer {
 
         SockJs sockJs = new SockJs();
         sockJs.setMaxStreamSize(4096);
+        sockJs.setMetricsPath("/metrics");
+        sockJs.setStallThreshold(100);
         EndpointInfo chatEndpointInfo = new EndpointInfo();
         chatEndpointInfo.setWebSocketEnabled(false);
         sockJs.setEndpointInfo("/chat", chatEndpointInfo);
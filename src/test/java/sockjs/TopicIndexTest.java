@@ -0,0 +1,80 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs;
+
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TopicIndexTest {
+
+    private SockJs sockJs;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void publishReachesOnlySubscribers() {
+        Connection first = TestConnections.create(sockJs, "first");
+        Connection second = TestConnections.create(sockJs, "second");
+
+        assertTrue(first.subscribe("news"));
+        assertFalse(first.subscribe("news"));
+        assertTrue(second.subscribe("sports"));
+
+        assertEquals(1, sockJs.publish("news", "hello \"world\""));
+
+        assertEquals("a[\"hello \\\"world\\\"\"]", first.drainMessages().toString(CharsetUtil.UTF_8));
+        assertFalse(second.hasMessages());
+    }
+
+    @Test
+    public void snapshotIsTakenAgainAfterChange() {
+        TopicIndex index = new TopicIndex();
+        Connection first = TestConnections.create(sockJs, "first");
+        Connection second = TestConnections.create(sockJs, "second");
+        index.subscribe("news", first);
+
+        Connection[] snapshot = index.getSubscribers("news");
+        assertSame(snapshot, index.getSubscribers("news"));
+        index.subscribe("news", second);
+        assertArrayEquals(new Connection[]{first}, snapshot);
+        assertArrayEquals(new Connection[]{first, second}, index.getSubscribers("news"));
+
+        index.unsubscribe("news", first);
+        assertArrayEquals(new Connection[]{second}, index.getSubscribers("news"));
+        assertEquals(1, index.getSubscriberCount("news"));
+    }
+
+    @Test
+    public void unsubscribeAndCloseCleanIndex() {
+        Connection first = TestConnections.create(sockJs, "first");
+        Connection second = TestConnections.create(sockJs, "second");
+        first.subscribe("news");
+        second.subscribe("news");
+        second.subscribe("sports");
+        assertEquals(2, sockJs.getSubscriberCount("news"));
+
+        assertTrue(first.unsubscribe("news"));
+        assertFalse(first.unsubscribe("news"));
+        assertEquals(1, sockJs.getSubscriberCount("news"));
+
+        sockJs.closeConnection(second);
+        assertEquals(0, sockJs.getSubscriberCount("news"));
+        assertEquals(0, sockJs.getTopicCount());
+        assertEquals(0, sockJs.publish("news", "nobody listens"));
+        assertFalse(second.subscribe("news"));
+    }
+}
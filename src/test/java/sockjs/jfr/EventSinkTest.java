@@ -0,0 +1,149 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sockjs.Connection;
+import sockjs.ConnectionListener;
+import sockjs.EndpointInfo;
+import sockjs.SockJs;
+import sockjs.netty.SockJsHandlerContext;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EventSinkTest {
+
+    private SockJs sockJs;
+
+    @Before
+    public void setUp() {
+        sockJs = new SockJs();
+        sockJs.addListener("/echo", new ConnectionListener() {
+            @Override
+            public void onOpen(Connection connection) {
+            }
+
+            @Override
+            public void onMessage(Connection connection, String message) {
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        sockJs.shutdown();
+    }
+
+    @Test
+    public void recordsSessionEvents() throws Exception {
+        assertTrue(EventSink.INSTANCE instanceof JfrEventSink);
+
+        File file = File.createTempFile("sockjs", ".jfr");
+        Recording recording = new Recording();
+        try {
+            for (String name : new String[]{"sockjs.SessionOpened", "sockjs.SessionClosed", "sockjs.MessageEnqueued",
+                    "sockjs.Flush", "sockjs.SlowListener", "sockjs.StreamRecycle"}) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            SockJsHandlerContext context = new SockJsHandlerContext();
+            context.setBaseUrl("/echo");
+            context.setSessionId("session1");
+            context.setTransport("xhr_streaming");
+            Connection connection = sockJs.createConnection(context);
+            connection.addMessageToBuffer("a");
+            connection.addMessageToBuffer("bc");
+            connection.drainMessages();
+            connection.incSentBytes(100);
+            connection.resetSentBytes();
+            sockJs.closeConnection(connection);
+
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally {
+            recording.close();
+        }
+
+        Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+        int enqueued = 0;
+        try {
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if ("session1".equals(event.getString("sessionId"))) {
+                    String name = event.getEventType().getName();
+                    events.put(name, event);
+                    if (name.equals("sockjs.MessageEnqueued")) {
+                        enqueued++;
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+
+        assertEquals("xhr_streaming", events.get("sockjs.SessionOpened").getString("transport"));
+        assertEquals(2, enqueued);
+        assertEquals(2, events.get("sockjs.Flush").getInt("messages"));
+        assertEquals(100, events.get("sockjs.StreamRecycle").getInt("bytes"));
+        assertEquals("onClose", events.get("sockjs.SlowListener").getString("callback"));
+        assertEquals("/echo", events.get("sockjs.SessionClosed").getString("endpoint"));
+        assertEquals("", events.get("sockjs.SessionClosed").getString("reason"));
+    }
+
+    @Test
+    public void expiredSessionIsClosedWithReason() throws Exception {
+        EndpointInfo info = new EndpointInfo();
+        info.setDisconnectDelay(0);
+        sockJs.setEndpointInfo("/echo", info);
+
+        File file = File.createTempFile("sockjs", ".jfr");
+        Recording recording = new Recording();
+        try {
+            recording.enable("sockjs.SessionClosed").withThreshold(Duration.ZERO);
+            recording.start();
+
+            SockJsHandlerContext context = new SockJsHandlerContext();
+            context.setBaseUrl("/echo");
+            context.setSessionId("expired");
+            sockJs.createConnection(context);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sockJs.getLiveSessions() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally {
+            recording.close();
+        }
+
+        String reason = null;
+        try {
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().equals("sockjs.SessionClosed")
+                        && "expired".equals(event.getString("sessionId"))) {
+                    reason = event.getString("reason");
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        assertEquals("EXPIRED", reason);
+    }
+}
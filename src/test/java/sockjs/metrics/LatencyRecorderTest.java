@@ -0,0 +1,53 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void mergesShardsOfAllThreads() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= 1000; i++) {
+                        recorder.record(i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencySnapshot snapshot = recorder.snapshot();
+        assertEquals(4000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMaxMicros());
+        assertEquals(500.5, snapshot.getMeanMicros(), 0.001);
+        assertEquals(500, snapshot.getPercentileMicros(50), 500 / 16);
+        assertEquals(990, snapshot.getPercentileMicros(99), 990 / 16);
+        assertEquals(1000, snapshot.getPercentileMicros(100));
+    }
+
+    @Test
+    public void countsSmallValuesExactlyAndHugeOnesInTheLastBucket() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.record(-5);
+        recorder.record(7);
+        recorder.record(Long.MAX_VALUE / 2);
+
+        LatencySnapshot snapshot = recorder.snapshot();
+        assertEquals(0, snapshot.getPercentileMicros(10));
+        assertEquals(7, snapshot.getPercentileMicros(60));
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getPercentileMicros(100));
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.metrics;
+
+import org.junit.Test;
+import sockjs.BatchSizeHistogram;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void writesCountersAndGaugesSortedWithLabels() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests", "path", "/b").add(2);
+        registry.counter("requests_total", "Requests", "path", "/a").increment();
+        registry.counter("requests_total", "Requests", "path", "/a").increment();
+        registry.gauge("open", "Open \"things\"", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        }, "name", "say \"hi\"");
+
+        assertEquals("# HELP open Open \"things\"\n"
+                + "# TYPE open gauge\n"
+                + "open{name=\"say \\\"hi\\\"\"} 7\n"
+                + "# HELP requests_total Requests\n"
+                + "# TYPE requests_total counter\n"
+                + "requests_total{path=\"/a\"} 2\n"
+                + "requests_total{path=\"/b\"} 2\n", registry.toPrometheus());
+    }
+
+    @Test
+    public void writesCumulativeHistogramBuckets() {
+        BatchSizeHistogram batchSizes = new BatchSizeHistogram();
+        batchSizes.record(1);
+        batchSizes.record(3);
+        batchSizes.record(2000);
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("batch_size", "Batch sizes", batchSizes, "endpoint", "/echo");
+
+        String output = registry.toPrometheus();
+        assertTrue(output.contains("# TYPE batch_size histogram\n"));
+        assertTrue(output.contains("batch_size_bucket{endpoint=\"/echo\",le=\"1\"} 1\n"));
+        assertTrue(output.contains("batch_size_bucket{endpoint=\"/echo\",le=\"2\"} 1\n"));
+        assertTrue(output.contains("batch_size_bucket{endpoint=\"/echo\",le=\"4\"} 2\n"));
+        assertTrue(output.contains("batch_size_bucket{endpoint=\"/echo\",le=\"1024\"} 2\n"));
+        assertTrue(output.contains("batch_size_bucket{endpoint=\"/echo\",le=\"+Inf\"} 3\n"));
+        assertTrue(output.contains("batch_size_sum{endpoint=\"/echo\"} 2004\n"));
+        assertTrue(output.contains("batch_size_count{endpoint=\"/echo\"} 3\n"));
+
+        Map<String, Long> snapshot = registry.snapshot();
+        assertEquals(Long.valueOf(3), snapshot.get("batch_size_count{endpoint=\"/echo\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFamilyOfAnotherType() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("sessions", "Sessions");
+        registry.gauge("sessions", "Sessions", new Counter());
+    }
+}
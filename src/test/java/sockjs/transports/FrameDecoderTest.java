@@ -0,0 +1,136 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.transports;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+
+    private static final String[] MESSAGES = {
+            "",
+            "plain",
+            "{\"value\": 123}",
+            "back\\slash and /slash",
+            "controls \u0000\u0001\b\t\n\u000b\f\r\u001f\u007f",
+            "unicode \u00e9\u0416\u20ac\u2028\u2029\ufeff",
+            "pair \ud83d\ude00 end"
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void decodesWhatJacksonEncodes() throws Exception {
+        assertArrayEquals(MESSAGES, decode(mapper.writeValueAsString(MESSAGES)));
+        assertArrayEquals(new String[] {"a\"b"}, decode("\"a\\\"b\""));
+        assertArrayEquals(new String[] {"x", "/", "\u00e9"}, decode("[ \"x\" ,\"\\/\", \"\\u00E9\" ] "));
+        assertArrayEquals(new String[0], decode("[]"));
+        assertArrayEquals(new String[] {"not json"}, decode("not json"));
+        assertNull(decode(""));
+    }
+
+    @Test
+    public void scalarsAreReadAsJacksonReadsThemIntoStrings() throws Exception {
+        String json = "[1, -2.5e3, true, false, null]";
+        assertArrayEquals(mapper.readValue(json, String[].class), decode(json));
+    }
+
+    @Test
+    public void malformedJsonIsRejected() {
+        for (String json : new String[] {"[\"x\"", "[\"x", "[\"x\" \"y\"]", "[x]", "[\"\\q\"]", "[\"\\u12\"]",
+                "\"unterminated", "[\"raw\ncontrol\"]", "[nul]"}) {
+            try {
+                decode(json);
+                fail("accepted " + json);
+            } catch (JsonParseException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void malformedUtf8IsReplacedAsStringDecodingDoes() throws Exception {
+        byte[][] samples = {
+                {'[', '"', 'a', (byte) 0xff, 'b', '"', ']'},
+                {'[', '"', (byte) 0xc3, '"', ']'},
+                {'[', '"', (byte) 0xe2, (byte) 0x82, 'x', '"', ']'},
+                {'[', '"', (byte) 0xc0, (byte) 0xaf, '"', ']'},
+                {'[', '"', (byte) 0xe0, (byte) 0x80, (byte) 0xaf, '"', ']'},
+                {'[', '"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"', ']'},
+                {'[', '"', (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80, '"', ']'},
+                {'[', '"', (byte) 0xf0, (byte) 0x9f, (byte) 0x98, '"', ']'},
+                {'[', '"', (byte) 0xf0, (byte) 0x9f, (byte) 0x98, (byte) 0x80, '"', ']'}
+        };
+        for (byte[] sample : samples) {
+            String expected = mapper.readValue(new String(sample, CharsetUtil.UTF_8), String[].class)[0];
+            assertEquals(expected, decode(ChannelBuffers.wrappedBuffer(sample))[0]);
+        }
+    }
+
+    @Test
+    public void rawTextIsReplacedAsStringDecodingDoes() throws Exception {
+        // leads, continuation boundaries and bytes which never start a sequence
+        int[] alphabet = {0x41, 0x80, 0x8f, 0x90, 0x9f, 0xa0, 0xbf, 0xc0, 0xc1, 0xc2, 0xdf,
+                0xe0, 0xe1, 0xed, 0xef, 0xf0, 0xf1, 0xf4, 0xf5, 0xff};
+        byte[] sample = new byte[5];
+        sample[0] = 'x';
+        for (int length = 1; length < sample.length; length++) {
+            int combinations = (int) Math.pow(alphabet.length, length);
+            for (int n = 0; n < combinations; n++) {
+                for (int i = 1, rest = n; i <= length; i++, rest /= alphabet.length) {
+                    sample[i] = (byte) alphabet[rest % alphabet.length];
+                }
+                ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(sample, 0, length + 1);
+                assertEquals(new String(sample, 0, length + 1, CharsetUtil.UTF_8), decode(buffer)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void percentDecodesInPlace() throws Exception {
+        String payload = mapper.writeValueAsString(MESSAGES);
+        String form = URLEncoder.encode(payload, "UTF-8").replace("%20", "+");
+        ChannelBuffer buffer = ChannelBuffers.copiedBuffer(form, CharsetUtil.UTF_8);
+
+        FrameDecoder.percentDecode(buffer);
+        assertEquals(URLDecoder.decode(form, "UTF-8"), buffer.toString(CharsetUtil.UTF_8));
+        assertArrayEquals(MESSAGES, decode(buffer));
+
+        for (String broken : new String[] {"%", "%4", "%zz"}) {
+            try {
+                FrameDecoder.percentDecode(ChannelBuffers.copiedBuffer(broken, CharsetUtil.UTF_8));
+                fail("accepted " + broken);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static String[] decode(String payload) throws JsonParseException {
+        return decode(ChannelBuffers.copiedBuffer(payload, CharsetUtil.UTF_8));
+    }
+
+    private static String[] decode(ChannelBuffer payload) throws JsonParseException {
+        final List<String> messages = new ArrayList<String>();
+        boolean decoded = FrameDecoder.decode(payload, new FrameDecoder.Handler() {
+            @Override
+            public void onMessage(String message) {
+                messages.add(message);
+            }
+        });
+        return decoded ? messages.toArray(new String[messages.size()]) : null;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * @author Sergey Chernov
+ *         See LICENSE file in the root of the project
+ */
+package sockjs.transports;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+import sockjs.Connection;
+import sockjs.MessageQueue;
+import sockjs.SockJs;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frames must stay byte to byte the same as the ones built with Jackson before.
+ */
+public class FrameEncoderTest {
+
+    private static final String[] MESSAGES = {
+            "",
+            "plain",
+            "{\"value\": 123}",
+            "back\\slash and /slash",
+            "controls \u0000\u0001\b\t\n\u000b\f\r\u001f\u007f",
+            "unicode \u00e9\u0416\u20ac\u2028\u2029\ufeff",
+            "pair \ud83d\ude00 end",
+            "lone \ud83d and \ude00",
+            "</script><script>alert(1)</script>"
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void arrayFrameMatchesJackson() throws Exception {
+        for (String message : MESSAGES) {
+            String[] messages = {message};
+            assertBytes("a" + mapper.writeValueAsString(messages),
+                    FrameEncoder.encode(FrameEnvelope.NONE, null, messages));
+        }
+        assertBytes("a" + mapper.writeValueAsString(MESSAGES), FrameEncoder.encode(FrameEnvelope.NONE, null, MESSAGES));
+    }
+
+    @Test
+    public void jsonStringFrameMatchesJackson() throws Exception {
+        FrameEnvelope jsonp = FrameEnvelope.of("cb(", ");\r\n", true);
+        for (String message : MESSAGES) {
+            String[] messages = {message};
+            String expected = "cb(" + mapper.writeValueAsString("a" + mapper.writeValueAsString(messages)) + ");\r\n";
+            assertBytes(expected, FrameEncoder.encode(jsonp, null, messages));
+        }
+    }
+
+    @Test
+    public void encodedFrameIsEscapedOnce() throws Exception {
+        FrameEnvelope htmlFile = FrameEnvelope.of("<script>\np(", ");\n</script>\r\n", true);
+        String frame = "a" + mapper.writeValueAsString(MESSAGES);
+        String expected = "<script>\np(" + mapper.writeValueAsString(frame) + ");\n</script>\r\n";
+        assertBytes(expected, FrameEncoder.encode(htmlFile, null, utf8(frame)));
+    }
+
+    @Test
+    public void drainedQueueMatchesJackson() throws Exception {
+        FrameEnvelope eventSource = FrameEnvelope.of("data: ", "\r\n\r\n", false);
+        FrameEnvelope jsonp = FrameEnvelope.of("cb(", ");\r\n", true);
+
+        MessageQueue queue = new MessageQueue(64 * 1024);
+        for (String message : MESSAGES) {
+            queue.offer(message);
+        }
+        assertBytes("data: a" + mapper.writeValueAsString(MESSAGES) + "\r\n\r\n", queue.drainFrame(eventSource, null));
+
+        for (String message : MESSAGES) {
+            queue.offer(message);
+        }
+        String expected = "cb(" + mapper.writeValueAsString("a" + mapper.writeValueAsString(MESSAGES)) + ");\r\n";
+        assertBytes(expected, queue.drainFrame(jsonp, null));
+    }
+
+    @Test
+    public void jsonpEnvelopeUsesSessionCallback() throws Exception {
+        SockJs sockJs = new SockJs();
+        try {
+            Connection connection = new Connection(sockJs, "/echo", "session");
+            connection.setJsonpCallback("callback");
+            connection.addMessageToBuffer("hi \"there\"");
+
+            JsonPolling transport = new JsonPolling(sockJs);
+            String expected = "callback(" + mapper.writeValueAsString("a" + mapper.writeValueAsString(
+                    new String[] {"hi \"there\""})) + ");\r\n";
+            assertBytes(expected, connection.drainMessages(transport.getFrameEnvelope()));
+        } finally {
+            sockJs.shutdown();
+        }
+    }
+
+    @Test
+    public void jsonpCloseMatchesJackson() throws Exception {
+        for (Protocol.CloseReason reason : Protocol.CloseReason.values()) {
+            assertEquals("cb(" + mapper.writeValueAsString(reason.frame) + ");\r\n\r\n",
+                    Protocol.encodeJsonpClose(reason, "cb"));
+        }
+    }
+
+    private static ChannelBuffer utf8(String text) {
+        return ChannelBuffers.copiedBuffer(text, CharsetUtil.UTF_8);
+    }
+
+    private static void assertBytes(String expected, ChannelBuffer actual) {
+        byte[] actualBytes = new byte[actual.readableBytes()];
+        actual.getBytes(actual.readerIndex(), actualBytes);
+        byte[] expectedBytes = expected.getBytes(CharsetUtil.UTF_8);
+        if (!Arrays.equals(expectedBytes, actualBytes)) {
+            assertEquals(expected, new String(actualBytes, CharsetUtil.UTF_8));
+            fail("bytes differ");
+        }
+    }
+}
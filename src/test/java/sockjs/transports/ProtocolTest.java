@@ -16,7 +16,7 @@ public class ProtocolTest {
 
         assertEquals("a[\"test\"]", Protocol.encodeMessageToString("test"));
 
-        assertEquals("a[\"{\\\"value\\\": 123}\"]", Protocol.encodeMessageToString("test"));
+        assertEquals("a[\"{\\\"value\\\": 123}\"]", Protocol.encodeMessageToString("{\"value\": 123}"));
     }
 
     @Test